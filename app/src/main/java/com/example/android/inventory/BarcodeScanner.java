@@ -0,0 +1,52 @@
+package com.example.android.inventory;
+
+import android.app.Activity;
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
+import android.widget.Toast;
+
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+/**
+ * Scans the barcode of an item with a barcode scanner app, such as ZXing Barcode Scanner, through
+ * its scan intent, so the app doesn't need a camera or a scanning library of its own. Hardware
+ * scanners need nothing from here, they type the barcode into the focused field like a keyboard.
+ */
+final class BarcodeScanner {
+
+    /**
+     * The scan intent, answered by ZXing Barcode Scanner and the apps compatible with it
+     */
+    private static final String ACTION_SCAN = "com.google.zxing.client.android.SCAN";
+
+    /**
+     * Result extra holding the text of the scanned barcode
+     */
+    private static final String EXTRA_SCAN_RESULT = "SCAN_RESULT";
+
+    // Not meant to be instantiated
+    private BarcodeScanner() {
+    }
+
+    /**
+     * Start the scanner app. The barcode comes back to onActivityResult of the activity with the
+     * given request code, see {@link #getSku}. Tell the user if there is no scanner app.
+     */
+    static void scan(Activity activity, int requestCode) {
+        try {
+            activity.startActivityForResult(new Intent(ACTION_SCAN), requestCode);
+        } catch (ActivityNotFoundException e) {
+            Toast.makeText(activity, R.string.scan_unavailable, Toast.LENGTH_LONG).show();
+        }
+    }
+
+    /**
+     * Return the SKU read from the result of the scanner app, or null if nothing was scanned.
+     */
+    static String getSku(int resultCode, Intent data) {
+        if (resultCode != Activity.RESULT_OK || data == null) {
+            return null;
+        }
+        return InventoryEntry.normalizeSku(data.getStringExtra(EXTRA_SCAN_RESULT));
+    }
+}
@@ -1,32 +1,94 @@
 package com.example.android.inventory;
 
 import android.app.LoaderManager;
+import android.app.ProgressDialog;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
-import android.content.CursorLoader;
+import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.Toast;
 
-import com.example.android.inventory.data.InventoryContract;
 import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryImporter;
+import com.example.android.inventory.data.InventorySnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Displays list of inventory that was entered and stored in the app.
  */
-public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<InventoryItem>> {
     public static final int INVENTORY_LOADER = 0;
-    private InventoryCursorAdapter adapter;
+    /**
+     * Number of rows left below the visible ones when the next page is read
+     */
+    private static final int PREFETCH_DISTANCE = InventoryPageLoader.PAGE_SIZE / 2;
+    /**
+     * Loader argument holding the search query
+     */
+    private static final String ARG_SEARCH_QUERY = "search_query";
+    /**
+     * Request code of the picker choosing the CSV file to import
+     */
+    private static final int REQUEST_IMPORT_CSV = 1;
+    /**
+     * Request code of the picker choosing the snapshot to restore
+     */
+    private static final int REQUEST_RESTORE_SNAPSHOT = 2;
+    /**
+     * Request code of the barcode scanner reading the SKU of the item to sell
+     */
+    private static final int REQUEST_SCAN_SALE = 3;
+    /**
+     * Name of the snapshot file saved in the external files directory of the app
+     */
+    private static final String SNAPSHOT_FILE_NAME = "inventory.snapshot";
+    /**
+     * Number of rejected lines of an import written to the log, the others are only counted
+     */
+    private static final int MAX_LOGGED_REJECTED_LINES = 20;
+    private InventoryAdapter adapter;
+
+    /**
+     * Holds the sell taps until they are written to the provider
+     */
+    private SalesBuffer salesBuffer;
+
+    /**
+     * Shown instead of the list when there are no items
+     */
+    private View emptyView;
+
+    /**
+     * The text the catalog is filtered by, or null to show all items
+     */
+    private String searchQuery;
+
+    /**
+     * Shows the progress of the running import or restore, or null
+     */
+    private ProgressDialog progressDialog;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,32 +105,373 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        // Find the ListView which will be populated with the inventory data
-        ListView inventoryListView = (ListView) findViewById(R.id.list);
+        // Find the RecyclerView which will be populated with the inventory data
+        RecyclerView inventoryListView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        inventoryListView.setLayoutManager(layoutManager);
+
+        // Find the empty view, so that it only shows when the list has 0 items.
+        emptyView = findViewById(R.id.empty_view);
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        inventoryListView.setEmptyView(emptyView);
+        // Set up adapter to create list item for each row of inventory data, and to respond to
+        // the user's selected item
+        salesBuffer = SalesBuffer.getInstance(this);
+        adapter = new InventoryAdapter(this, salesBuffer, new InventoryAdapter.Listener() {
+            @Override
+            public void onItemPressed(long id) {
+                prefetchItem(id);
+            }
 
-        // Set up adapter to create list item for each row of inventory data in the cursor
-        adapter = new InventoryCursorAdapter(this, null);
+            @Override
+            public void onItemClick(InventoryItem item) {
+                // Hand the row over, so the editor shows it before its loader has read the item.
+                startActivity(EditorActivity.buildEditIntent(CatalogActivity.this, item));
+            }
 
-        // Set up OnItemClickListener to respond to the user's selected item
-        inventoryListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
-                // Form content uri that represents which item was selected.
-                Uri currentItemUri = ContentUris.withAppendedId(InventoryContract.InventoryEntry.CONTENT_URI, id);
-                intent.setData(currentItemUri);
-                startActivity(intent);
+            public void onSellClick(InventoryItem item) {
+                // Show the sale right away, the buffer writes it to the provider shortly after.
+                salesBuffer.sell(item);
             }
         });
-        // Attach adapter to listView
+        // Attach adapter to the RecyclerView
         inventoryListView.setAdapter(adapter);
 
+        // Read the next page of items when the user scrolls close to the end of the list
+        inventoryListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = adapter.getItemCount();
+                if (totalItemCount > 0
+                        && layoutManager.findLastVisibleItemPosition() >= totalItemCount - PREFETCH_DISTANCE) {
+                    Loader<List<InventoryItem>> loader = getLoaderManager().getLoader(INVENTORY_LOADER);
+                    if (loader != null) {
+                        ((InventoryPageLoader) loader).loadNextPage();
+                    }
+                }
+            }
+        });
+
+        // Restore the search the user was running before a configuration change
+        if (savedInstanceState != null) {
+            searchQuery = savedInstanceState.getString(ARG_SEARCH_QUERY);
+        }
+
         // Initialize the loader
-        getLoaderManager().initLoader(INVENTORY_LOADER, null, this);
+        getLoaderManager().initLoader(INVENTORY_LOADER, buildLoaderArgs(), this);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Show the sales tapped but not written yet, including the ones tapped before a rotation
+        salesBuffer.setListener(new SalesBuffer.Listener() {
+            @Override
+            public void onDisplayedQuantityChanged(long id) {
+                adapter.refreshItem(id);
+            }
+        });
+        adapter.notifyDataSetChanged();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Don't keep sales waiting while the user is elsewhere.
+        salesBuffer.flush();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        salesBuffer.setListener(null);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The import or restore goes on, its result is shown once it is done.
+        if (progressDialog != null) {
+            progressDialog.dismiss();
+            progressDialog = null;
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(ARG_SEARCH_QUERY, searchQuery);
+    }
+
+    /**
+     * Build the loader arguments for the current search query.
+     */
+    private Bundle buildLoaderArgs() {
+        Bundle args = new Bundle();
+        args.putString(ARG_SEARCH_QUERY, searchQuery);
+        return args;
+    }
+
+    /**
+     * Filter the catalog by the given text as the user types. Restarting the loader cancels the
+     * query for the previous text if it is still running.
+     */
+    private void search(String query) {
+        query = query == null ? null : query.trim();
+        if (TextUtils.isEmpty(query)) {
+            query = null;
+        }
+        if (TextUtils.equals(query, searchQuery)) {
+            return;
+        }
+        searchQuery = query;
+        getLoaderManager().restartLoader(INVENTORY_LOADER, buildLoaderArgs(), this);
+    }
+
+    /**
+     * Read an item in the background, so the provider has it cached when the editor asks for it.
+     */
+    private void prefetchItem(long id) {
+        final ContentResolver contentResolver = getContentResolver();
+        final Uri itemUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Cursor cursor = contentResolver.query(itemUri, EditorActivity.PROJECTION, null, null, null);
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Let the user pick the CSV file to import, see {@link #onActivityResult}.
+     */
+    private void pickCsvFile() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("text/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(intent, REQUEST_IMPORT_CSV);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_IMPORT_CSV && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            importCsv(data.getData());
+            return;
+        }
+        if (requestCode == REQUEST_RESTORE_SNAPSHOT && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            restoreSnapshot(data.getData());
+            return;
+        }
+        if (requestCode == REQUEST_SCAN_SALE) {
+            String sku = BarcodeScanner.getSku(resultCode, data);
+            if (sku != null) {
+                sellScannedItem(sku);
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
+
+    /**
+     * Sell one unit of the item with the scanned SKU in the background. The provider finds the
+     * item with a single probe of the SKU index and sells it in the same transaction. Only when
+     * the sale is refused is the SKU read again, to tell an unknown barcode from an empty shelf.
+     */
+    private void sellScannedItem(final String sku) {
+        final Context appContext = getApplicationContext();
+        final ContentResolver contentResolver = getContentResolver();
+        final Handler handler = new Handler();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                int message;
+                try {
+                    if (contentResolver.update(InventoryEntry.buildSkuSellUri(sku), null, null, null) != 0) {
+                        message = R.string.scan_sold;
+                    } else {
+                        Cursor cursor = contentResolver.query(InventoryEntry.buildSkuUri(sku),
+                                new String[]{InventoryEntry._ID}, null, null, null);
+                        boolean known = cursor != null && cursor.getCount() != 0;
+                        if (cursor != null) {
+                            cursor.close();
+                        }
+                        message = known ? R.string.scan_out_of_stock : R.string.scan_unknown_sku;
+                    }
+                } catch (RuntimeException e) {
+                    Log.e("CatalogActivity", "Failed to sell " + sku, e);
+                    message = R.string.scan_sale_failed;
+                }
+                final int finalMessage = message;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(appContext, appContext.getString(finalMessage, sku), Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Import the items of a CSV file in the background, showing how many items were imported so
+     * far. The list shows the items of each chunk once it is committed.
+     */
+    private void importCsv(final Uri source) {
+        progressDialog = new ProgressDialog(this);
+        progressDialog.setIndeterminate(true);
+        progressDialog.setCancelable(false);
+        progressDialog.setMessage(getString(R.string.import_progress, 0));
+        progressDialog.show();
+
+        final Context appContext = getApplicationContext();
+        final Handler handler = new Handler();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                InventoryImporter.Result result = null;
+                try {
+                    result = new InventoryImporter(appContext).importCsv(source, new InventoryImporter.Listener() {
+                        private int rejectedLines;
+
+                        @Override
+                        public void onProgress(long linesRead, final long itemsImported) {
+                            handler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (progressDialog != null) {
+                                        progressDialog.setMessage(getString(R.string.import_progress, itemsImported));
+                                    }
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onLineRejected(long lineNumber, String reason) {
+                            if (++rejectedLines <= MAX_LOGGED_REJECTED_LINES) {
+                                Log.w("CatalogActivity", "Line " + lineNumber + " of " + source + " rejected: " + reason);
+                            }
+                        }
+                    }, null);
+                } catch (IOException e) {
+                    Log.e("CatalogActivity", "Failed to import " + source, e);
+                } catch (RuntimeException e) {
+                    Log.e("CatalogActivity", "Failed to import " + source, e);
+                }
+                final InventoryImporter.Result finalResult = result;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (progressDialog != null) {
+                            progressDialog.dismiss();
+                            progressDialog = null;
+                        }
+                        if (finalResult == null) {
+                            Toast.makeText(appContext, R.string.import_failed, Toast.LENGTH_LONG).show();
+                        } else {
+                            Toast.makeText(appContext, appContext.getString(R.string.import_finished,
+                                    finalResult.itemsImported, finalResult.linesRejected), Toast.LENGTH_LONG).show();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Save a snapshot of the inventory in the background, to the external files directory of the
+     * app where it can be copied off the device.
+     */
+    private void saveSnapshot() {
+        final Context appContext = getApplicationContext();
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            Toast.makeText(appContext, R.string.snapshot_save_failed, Toast.LENGTH_LONG).show();
+            return;
+        }
+        final File file = new File(directory, SNAPSHOT_FILE_NAME);
+        final Handler handler = new Handler();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                InventorySnapshot.Result result = null;
+                try {
+                    result = new InventorySnapshot(appContext).write(Uri.fromFile(file));
+                } catch (IOException e) {
+                    Log.e("CatalogActivity", "Failed to save snapshot to " + file, e);
+                } catch (RuntimeException e) {
+                    Log.e("CatalogActivity", "Failed to save snapshot to " + file, e);
+                }
+                final InventorySnapshot.Result finalResult = result;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (finalResult == null) {
+                            Toast.makeText(appContext, R.string.snapshot_save_failed, Toast.LENGTH_LONG).show();
+                        } else {
+                            Toast.makeText(appContext, appContext.getString(R.string.snapshot_saved,
+                                    finalResult.items, file.getPath()), Toast.LENGTH_LONG).show();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Let the user pick the snapshot to restore, see {@link #onActivityResult}.
+     */
+    private void pickSnapshotFile() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(intent, REQUEST_RESTORE_SNAPSHOT);
+    }
+
+    /**
+     * Replace the inventory with the one of a snapshot in the background. The list shows the
+     * restored items once the restore has committed.
+     */
+    private void restoreSnapshot(final Uri source) {
+        progressDialog = new ProgressDialog(this);
+        progressDialog.setIndeterminate(true);
+        progressDialog.setCancelable(false);
+        progressDialog.setMessage(getString(R.string.snapshot_restore_progress));
+        progressDialog.show();
+
+        final Context appContext = getApplicationContext();
+        final Handler handler = new Handler();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                InventorySnapshot.Result result = null;
+                try {
+                    result = new InventorySnapshot(appContext).restore(source);
+                } catch (IOException e) {
+                    Log.e("CatalogActivity", "Failed to restore " + source, e);
+                } catch (RuntimeException e) {
+                    Log.e("CatalogActivity", "Failed to restore " + source, e);
+                }
+                final InventorySnapshot.Result finalResult = result;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (progressDialog != null) {
+                            progressDialog.dismiss();
+                            progressDialog = null;
+                        }
+                        if (finalResult == null) {
+                            Toast.makeText(appContext, R.string.snapshot_restore_failed, Toast.LENGTH_LONG).show();
+                        } else {
+                            Toast.makeText(appContext, appContext.getString(R.string.snapshot_restored,
+                                    finalResult.items), Toast.LENGTH_LONG).show();
+                        }
+                    }
+                });
+            }
+        });
     }
 
     private void insertItem() {
@@ -76,24 +479,44 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         // and Galaxy Smartwatch attributes are the values.
         ContentValues values = new ContentValues();
         values.put(InventoryEntry.COLUMN_PRODUCT_NAME, getString(R.string.dummy_data_product_name));
-        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, getString(R.string.dummy_data_product_price));
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+                InventoryEntry.parsePriceCents(getString(R.string.dummy_data_product_price)));
         values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, getString(R.string.dummy_data_product_quantity));
         values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME, getString(R.string.dummy_data_product_supplier_name));
         values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, getString(R.string.dummy_data_product_supplier_phone_number));
 
-        // Insert a new row for Toto into the provider using the ContentResolver.
+        // Insert a new row for Toto into the provider in the background.
         // Use the {@link InventoryEntry#CONTENT_URI} to indicate that we want to insert
         // into the inventory database table.
-        // Receive the new content URI that will allow us to access this data in the future.
-        Uri newUri = getContentResolver().insert(InventoryEntry.CONTENT_URI, values);
+        final Context appContext = getApplicationContext();
+        InventoryWriter.getInstance(this).insert(InventoryEntry.CONTENT_URI, values, new InventoryWriter.Callback() {
+            @Override
+            public void onWriteFinished(Uri newUri, int rowCount) {
+                if (newUri == null) {
+                    Toast.makeText(appContext, R.string.editor_insert_item_failed, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
     }
 
     /**
-     * Helper method to delete all inventory in the database.
+     * Helper method to delete all inventory in the database. The rows are deleted in the
+     * background, the list empties once they are gone.
      */
     private void deleteAllItems() {
-        int rowsDeleted = getContentResolver().delete(InventoryEntry.CONTENT_URI, null, null);
-        Log.v("CatalogActivity", rowsDeleted + " rows deleted from inventory database");
+        final Context appContext = getApplicationContext();
+        InventoryWriter.getInstance(this).delete(InventoryEntry.CONTENT_URI, null, null, new InventoryWriter.Callback() {
+            @Override
+            public void onWriteFinished(Uri uri, int rowsDeleted) {
+                Log.v("CatalogActivity", rowsDeleted + " rows deleted from inventory database");
+                if (rowsDeleted < 0) {
+                    Toast.makeText(appContext, R.string.catalog_delete_all_failed, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(appContext, appContext.getResources().getQuantityString(
+                            R.plurals.catalog_delete_all_successful, rowsDeleted, rowsDeleted), Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
     }
 
     @Override
@@ -101,6 +524,27 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+
+        // Search as the user types
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        if (searchQuery != null) {
+            MenuItemCompat.expandActionView(searchItem);
+            searchView.setQuery(searchQuery, false);
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText);
+                return true;
+            }
+        });
         return true;
     }
 
@@ -108,11 +552,27 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
+            // Respond to a click on the "Scan sale" menu option
+            case R.id.action_scan_sale:
+                BarcodeScanner.scan(this, REQUEST_SCAN_SALE);
+                return true;
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                 // Do nothing for now
                 insertItem();
                 return true;
+            // Respond to a click on the "Import CSV" menu option
+            case R.id.action_import_csv:
+                pickCsvFile();
+                return true;
+            // Respond to a click on the "Save snapshot" menu option
+            case R.id.action_save_snapshot:
+                saveSnapshot();
+                return true;
+            // Respond to a click on the "Restore snapshot" menu option
+            case R.id.action_restore_snapshot:
+                pickSnapshotFile();
+                return true;
             // Respond to a click on the "Delete all entries" menu option
             case R.id.action_delete_all_entries:
                 deleteAllItems();
@@ -122,37 +582,26 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // Define a projection that specifies which columns from the database
-        // you will actually use after this query.
-        String[] projection = {
-                InventoryEntry._ID,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_PRICE,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_QUANTITY,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER
-        };
-
-
-        // Perform a query on the provider using ContentResolver
-        return new CursorLoader(this,
-                InventoryEntry.CONTENT_URI,             // The content URI
-                projection,                       // The columns to return for each row
-                null,                     // Selection criteria
-                null,                 // Selection criteria
-                null);                  // Sort order for returned columns
+    public Loader<List<InventoryItem>> onCreateLoader(int i, Bundle bundle) {
+        // Search the inventory if the user typed something, otherwise show all of it
+        String query = bundle == null ? null : bundle.getString(ARG_SEARCH_QUERY);
+        Uri uri = query == null ? InventoryEntry.CONTENT_URI : InventoryEntry.buildSearchUri(query);
+
+        // Perform a paged query on the provider using ContentResolver. The list doesn't show
+        // the supplier, so the supplier columns aren't looked up (see InventoryItem#PROJECTION).
+        return new InventoryPageLoader(this, uri);
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Update with this new cursor containing updated inventory data.
-        adapter.swapCursor(data);
+    public void onLoadFinished(Loader<List<InventoryItem>> loader, List<InventoryItem> data) {
+        // Update with the new inventory data. Only the rows that changed are bound again.
+        adapter.setItems(data);
+        emptyView.setVisibility(data.isEmpty() ? View.VISIBLE : View.GONE);
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<List<InventoryItem>> loader) {
         // Callback called when data needs to be deleted.
-        adapter.swapCursor(null);
+        adapter.setItems(Collections.<InventoryItem>emptyList());
     }
 }
\ No newline at end of file
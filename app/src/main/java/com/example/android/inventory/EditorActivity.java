@@ -18,7 +18,9 @@ package com.example.android.inventory;
 import android.annotation.SuppressLint;
 import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -26,6 +28,7 @@ import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.AppCompatActivity;
 import android.telephony.PhoneNumberFormattingTextWatcher;
@@ -41,12 +44,65 @@ import android.widget.Toast;
 
 import com.example.android.inventory.data.InventoryContract;
 import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryContract.MovementEntry;
 
 /**
  * Allows user to create a new item or edit an existing one.
  */
 public class EditorActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+    private static final String LOG_TAG = EditorActivity.class.getSimpleName();
+
+    /**
+     * Since the editor shows all item attributes, the projection contains all columns from the
+     * item table. The catalog reads it ahead when a row is touched, so the item is cached by the
+     * provider by the time the editor asks for it.
+     */
+    static final String[] PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_SKU,
+            InventoryEntry.COLUMN_REORDER_THRESHOLD,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER};
+
+    /**
+     * Intent extras holding the item as the catalog shows it, so the editor doesn't wait for the
+     * loader to show it
+     */
+    private static final String EXTRA_PRODUCT_NAME = "product_name";
+    private static final String EXTRA_PRODUCT_PRICE_CENTS = "product_price_cents";
+    private static final String EXTRA_PRODUCT_QUANTITY = "product_quantity";
+
+    /**
+     * Intent extra holding the {@link SystemClock#uptimeMillis()} the item was opened at
+     */
+    private static final String EXTRA_OPEN_TIME = "open_time";
+
+    /**
+     * Saved state key for {@link #loadedQuantity}
+     */
+    private static final String STATE_LOADED_QUANTITY = "loaded_quantity";
+
+    /**
+     * Request code of the barcode scanner reading the SKU
+     */
+    private static final int REQUEST_SCAN_SKU = 1;
+
     private boolean itemHasChanged = false;
+
+    /**
+     * When the item was opened, or 0 if unknown. Cleared once the loader confirmed the item.
+     */
+    private long openTime;
+
+    /**
+     * The quantity of the item the quantity field started from, or -1 if unknown. Saving records
+     * the difference as a stock movement, so the units sold while the item was open are kept.
+     */
+    private int loadedQuantity = -1;
+
     // OnTouchListener that listens for any user touches on a View, implying that they are modifying
     // the view, and we change the mItemHasChanged boolean to true.
 
@@ -75,6 +131,16 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
      */
     private EditText editTextProductQuantity;
 
+    /**
+     * EditText field to enter or scan the SKU
+     */
+    private EditText editTextProductSku;
+
+    /**
+     * EditText field to enter the quantity below which the item is running low
+     */
+    private EditText editTextReorderThreshold;
+
     /**
      * EditText field to enter the supplier name
      */
@@ -110,6 +176,8 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         editTextProductName = (EditText) findViewById(R.id.edit_product_name);
         editTextProductPrice = (EditText) findViewById(R.id.edit_product_price);
         editTextProductQuantity = (EditText) findViewById(R.id.edit_text_product_quantity);
+        editTextProductSku = (EditText) findViewById(R.id.edit_text_product_sku);
+        editTextReorderThreshold = (EditText) findViewById(R.id.edit_text_reorder_threshold);
         editTextSupplierName = (EditText) findViewById(R.id.edit_text_supplier_name);
         editTextSupplierPhone = (EditText) findViewById(R.id.edit_text_supplier_phone);
         editTextSupplierPhone.addTextChangedListener(new PhoneNumberFormattingTextWatcher());
@@ -134,18 +202,64 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             buttonDeleteItem.setVisibility(View.VISIBLE);
             buttonOrderItems.setVisibility(View.VISIBLE);
             setTitle(getString(R.string.editor_activity_title_edit_item));
+            openTime = intent.getLongExtra(EXTRA_OPEN_TIME, 0);
+
+            // Show the item the catalog handed over right away. The loader only confirms it is
+            // still current. After a configuration change, the fields restore their own text.
+            if (savedInstanceState == null && intent.hasExtra(EXTRA_PRODUCT_NAME)) {
+                editTextProductName.setText(intent.getStringExtra(EXTRA_PRODUCT_NAME));
+                editTextProductPrice.setText(InventoryEntry.formatPrice(intent.getLongExtra(EXTRA_PRODUCT_PRICE_CENTS, 0)));
+                loadedQuantity = intent.getIntExtra(EXTRA_PRODUCT_QUANTITY, 0);
+                editTextProductQuantity.setText(String.valueOf(loadedQuantity));
+                updateDecrementButton();
+                logOpenLatency("shown from the catalog");
+            } else if (savedInstanceState != null) {
+                loadedQuantity = savedInstanceState.getInt(STATE_LOADED_QUANTITY, -1);
+            }
             getLoaderManager().initLoader(CatalogActivity.INVENTORY_LOADER, null, this);
         }
 
         editTextProductName.setOnTouchListener(mTouchListener);
         editTextProductPrice.setOnTouchListener(mTouchListener);
         editTextProductQuantity.setOnTouchListener(mTouchListener);
+        editTextProductSku.setOnTouchListener(mTouchListener);
+        editTextReorderThreshold.setOnTouchListener(mTouchListener);
         editTextSupplierName.setOnTouchListener(mTouchListener);
         editTextSupplierPhone.setOnTouchListener(mTouchListener);
         buttonIncrement.setOnTouchListener(mTouchListener);
         buttonDecrement.setOnTouchListener(mTouchListener);
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_LOADED_QUANTITY, loadedQuantity);
+    }
+
+    /**
+     * Build the intent opening an item of the catalog in the editor. The editor shows the values
+     * of the given row until its loader has read the item.
+     */
+    static Intent buildEditIntent(Context context, InventoryItem item) {
+        Intent intent = new Intent(context, EditorActivity.class);
+        // Form content uri that represents which item was selected.
+        intent.setData(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, item.getId()));
+        intent.putExtra(EXTRA_PRODUCT_NAME, item.getName());
+        intent.putExtra(EXTRA_PRODUCT_PRICE_CENTS, item.getPriceCents());
+        intent.putExtra(EXTRA_PRODUCT_QUANTITY, item.getQuantity());
+        intent.putExtra(EXTRA_OPEN_TIME, SystemClock.uptimeMillis());
+        return intent;
+    }
+
+    /**
+     * Log how long after the item was opened its fields were filled in.
+     */
+    private void logOpenLatency(String event) {
+        if (BuildConfig.DEBUG && openTime != 0) {
+            Log.d(LOG_TAG, "Item " + event + " " + (SystemClock.uptimeMillis() - openTime) + " ms after opening");
+        }
+    }
+
     /**
      * Get user input from editor and save new item into database.
      */
@@ -155,18 +269,50 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         String productNameString = editTextProductName.getText().toString().trim();
         String productPriceString = editTextProductPrice.getText().toString().trim();
         String productQuantityString = editTextProductQuantity.getText().toString().trim();
+        // No SKU is stored as null, the SKU of every item must be unique
+        String productSku = InventoryEntry.normalizeSku(editTextProductSku.getText().toString());
+        String reorderThresholdString = editTextReorderThreshold.getText().toString().trim();
         String productSupplierName = editTextSupplierName.getText().toString().trim();
         String productSupplierPhone = editTextSupplierPhone.getText().toString().trim();
 
+        // Prices are stored as a whole number of cents, -1 if the text isn't a valid price
+        long productPriceCents;
+        try {
+            productPriceCents = InventoryEntry.parsePriceCents(productPriceString);
+        } catch (NumberFormatException e) {
+            productPriceCents = -1;
+        }
+
+        // -1 if the text isn't a valid quantity
+        int productQuantity;
+        try {
+            productQuantity = Integer.parseInt(productQuantityString);
+        } catch (NumberFormatException e) {
+            productQuantity = -1;
+        }
+
+        // No threshold is 0, which never alerts. -1 if the text isn't a valid threshold
+        int reorderThreshold = 0;
+        if (!TextUtils.isEmpty(reorderThresholdString)) {
+            try {
+                reorderThreshold = Integer.parseInt(reorderThresholdString);
+            } catch (NumberFormatException e) {
+                reorderThreshold = -1;
+            }
+        }
+
         if (TextUtils.isEmpty(productNameString)) { // validate data in editText fields
             Toast.makeText(this, R.string.error_product_name_string, Toast.LENGTH_SHORT).show();
             return false;
-        } else if (TextUtils.isEmpty(productPriceString)) {
+        } else if (TextUtils.isEmpty(productPriceString) || productPriceCents < 0) {
             Toast.makeText(this, R.string.error_product_price_string, Toast.LENGTH_SHORT).show();
             return false;
-        } else if (TextUtils.isEmpty(productQuantityString)) {
+        } else if (TextUtils.isEmpty(productQuantityString) || productQuantity < 0) {
             Toast.makeText(this, R.string.error_product_quantity_string, Toast.LENGTH_SHORT).show();
             return false;
+        } else if (reorderThreshold < 0) {
+            Toast.makeText(this, R.string.error_reorder_threshold_string, Toast.LENGTH_SHORT).show();
+            return false;
         } else if (TextUtils.isEmpty(productSupplierName)) {
             Toast.makeText(this, R.string.error_product_supplier_name_string, Toast.LENGTH_SHORT).show();
             return false;
@@ -187,30 +333,31 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 // and item attributes from the editor are the values.
                 ContentValues values = new ContentValues();
                 values.put(InventoryEntry.COLUMN_PRODUCT_NAME, productNameString);
-                values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, productPriceString);
+                values.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, productPriceCents);
                 values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, productQuantityString);
+                values.put(InventoryEntry.COLUMN_PRODUCT_SKU, productSku);
+                values.put(InventoryEntry.COLUMN_REORDER_THRESHOLD, reorderThreshold);
                 values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME, productSupplierName);
                 values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, productSupplierPhone);
 
-                double price = 0.0f;
-                if (!TextUtils.isEmpty(productPriceString)) { // if user enters a price value > 0
-                    price = Double.parseDouble(productPriceString); // parse int and store as double price
-                }
-                values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, price);
-
-                // Insert a new item into the provider, returning the content URI for the new item.
-                Uri newUri = getContentResolver().insert(InventoryEntry.CONTENT_URI, values);
-
-                // Show a toast message depending on whether or not the insertion was successful
-                if (newUri == null) {
-                    // If the new content URI is null, then there was an error with insertion.
-                    Toast.makeText(this, getString(R.string.editor_insert_item_failed),
-                            Toast.LENGTH_SHORT).show();
-                } else {
-                    // Otherwise, the insertion was successful and we can display a toast.
-                    Toast.makeText(this, getString(R.string.editor_insert_item_successful),
-                            Toast.LENGTH_SHORT).show();
-                }
+                // Insert a new item into the provider in the background. The toast message is
+                // shown once the insertion is done, the editor may be closed by then.
+                final Context appContext = getApplicationContext();
+                InventoryWriter.getInstance(this).insert(InventoryEntry.CONTENT_URI, values, new InventoryWriter.Callback() {
+                    @Override
+                    public void onWriteFinished(Uri newUri, int rowCount) {
+                        // Show a toast message depending on whether or not the insertion was successful
+                        if (newUri == null) {
+                            // If the new content URI is null, then there was an error with insertion.
+                            Toast.makeText(appContext, appContext.getString(R.string.editor_insert_item_failed),
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            // Otherwise, the insertion was successful and we can display a toast.
+                            Toast.makeText(appContext, appContext.getString(R.string.editor_insert_item_successful),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
             } else
 
             { // if the user is editing an item
@@ -225,29 +372,52 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 // and item attributes from the editor are the values.
                 ContentValues values = new ContentValues();
                 values.put(InventoryEntry.COLUMN_PRODUCT_NAME, productNameString);
-                values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, productPriceString);
-                values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, productQuantityString);
+                values.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, productPriceCents);
+                values.put(InventoryEntry.COLUMN_PRODUCT_SKU, productSku);
+                values.put(InventoryEntry.COLUMN_REORDER_THRESHOLD, reorderThreshold);
                 values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME, productSupplierName);
                 values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, productSupplierPhone);
-
-                double price = 0.0f;
-                if (!TextUtils.isEmpty(productPriceString)) { // if user enters a price value > 0
-                    price = Double.parseDouble(productPriceString); // parse int and store as double price
+                if (loadedQuantity < 0) {
+                    // Don't know what the field started from, set the quantity as it is.
+                    values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, productQuantity);
                 }
-                values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, price);
-
-                // Save an existing item into the provider, returning the content URI for the new item.
-                int rowsAffected = getContentResolver().update(currentItemUri, values, null, null);
-
-                // Show a toast message depending on whether or not the update was successful.
-                if (rowsAffected == 0) {
-                    // If no rows were affected, then there was an error with the update.
-                    Toast.makeText(this, getString(R.string.editor_insert_item_failed),
-                            Toast.LENGTH_SHORT).show();
-                } else {
-                    // Otherwise, the update was successful and we can display a toast.
-                    Toast.makeText(this, getString(R.string.editor_insert_item_successful),
-                            Toast.LENGTH_SHORT).show();
+
+                // Save an existing item into the provider in the background.
+                final Context appContext = getApplicationContext();
+                InventoryWriter.getInstance(this).update(currentItemUri, values, null, null, new InventoryWriter.Callback() {
+                    @Override
+                    public void onWriteFinished(Uri uri, int rowsAffected) {
+                        // Show a toast message depending on whether or not the update was successful.
+                        if (rowsAffected <= 0) {
+                            // If no rows were affected, then there was an error with the update.
+                            Toast.makeText(appContext, appContext.getString(R.string.editor_insert_item_failed),
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            // Otherwise, the update was successful and we can display a toast.
+                            Toast.makeText(appContext, appContext.getString(R.string.editor_insert_item_successful),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+
+                // Add the units added or taken away with the +/- buttons or typed in to the stock
+                // movements of the item, on top of whatever was sold in the meantime.
+                if (loadedQuantity >= 0 && productQuantity != loadedQuantity) {
+                    ContentValues movement = new ContentValues();
+                    movement.put(MovementEntry.COLUMN_KIND, MovementEntry.KIND_ADJUSTMENT);
+                    movement.put(MovementEntry.COLUMN_DELTA, productQuantity - loadedQuantity);
+                    InventoryWriter.getInstance(this).insert(
+                            InventoryEntry.buildMovementsUri(ContentUris.parseId(currentItemUri)), movement,
+                            new InventoryWriter.Callback() {
+                                @Override
+                                public void onWriteFinished(Uri uri, int rowCount) {
+                                    // Refused if more units were taken away than are left
+                                    if (uri == null) {
+                                        Toast.makeText(appContext, appContext.getString(R.string.editor_quantity_failed),
+                                                Toast.LENGTH_SHORT).show();
+                                    }
+                                }
+                            });
                 }
             }
 
@@ -309,20 +479,10 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // Since the editor shows all item attributes, define a projection that contains
-        // all columns from the item table
-        String[] projection = {
-                InventoryContract.InventoryEntry._ID,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_PRICE,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_QUANTITY,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER};
-
         // This loader will execute the ContentProvider's query method on a background thread
         return new CursorLoader(this,   // Parent activity context
                 currentItemUri,         // Query the content URI for the current item
-                projection,             // Columns to include in the resulting Cursor
+                PROJECTION,             // Columns to include in the resulting Cursor
                 null,                   // No selection clause
                 null,                   // No selection arguments
                 null);                  // Default sort order
@@ -337,35 +497,68 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         if (cursor.moveToFirst()) {
             // Find the columns of item attributes that we're interested in
             int columnIndexProductName = cursor.getColumnIndex(InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME);
-            int columnIndexProductPrice = cursor.getColumnIndex(InventoryContract.InventoryEntry.COLUMN_PRODUCT_PRICE);
+            int columnIndexProductPrice = cursor.getColumnIndex(InventoryContract.InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS);
             int columnIndexProductQuantity = cursor.getColumnIndex(InventoryContract.InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+            int columnIndexProductSku = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_SKU);
+            int columnIndexReorderThreshold = cursor.getColumnIndex(InventoryEntry.COLUMN_REORDER_THRESHOLD);
             int columnIndexSupplierName = cursor.getColumnIndex(InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
             int columnIndexSupplierPhone = cursor.getColumnIndex(InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
 
             // Extract out the value from the Cursor for the given column index
             String productName = cursor.getString(columnIndexProductName);
-            double productPrice = cursor.getDouble(columnIndexProductPrice);
+            long productPriceCents = cursor.getLong(columnIndexProductPrice);
             int productQuantity = cursor.getInt(columnIndexProductQuantity);
+            String productSku = cursor.getString(columnIndexProductSku);
+            int reorderThreshold = cursor.getInt(columnIndexReorderThreshold);
             String supplierName = cursor.getString(columnIndexSupplierName);
             String supplierPhone = cursor.getString(columnIndexSupplierPhone);
 
-            // Update the views on the screen with the values from the database
-            editTextProductName.setText(productName);
-            editTextProductPrice.setText(String.valueOf(productPrice));
-            editTextProductQuantity.setText(String.valueOf(productQuantity));
-            editTextSupplierName.setText(supplierName);
-            editTextSupplierPhone.setText(supplierPhone);
+            // Update the views on the screen with the values from the database. The fields shown
+            // from the catalog are only touched if the item changed since.
+            showLoadedValue(editTextProductName, productName);
+            showLoadedValue(editTextProductPrice, InventoryEntry.formatPrice(productPriceCents));
+            if (showLoadedValue(editTextProductQuantity, String.valueOf(productQuantity))) {
+                loadedQuantity = productQuantity;
+            }
+            showLoadedValue(editTextProductSku, productSku);
+            showLoadedValue(editTextReorderThreshold, reorderThreshold == 0 ? "" : String.valueOf(reorderThreshold));
+            showLoadedValue(editTextSupplierName, supplierName);
+            showLoadedValue(editTextSupplierPhone, supplierPhone);
 
             if (currentItemUri != null) { // editing an item because there is a uri.
-                if (editTextProductQuantity.length() == 0 || editTextProductQuantity.getText() == null) {
-                    //Do nothing
-                } else {
-                    int currentQuantity = Integer.parseInt(editTextProductQuantity.getText().toString());
+                updateDecrementButton();
+            }
+            logOpenLatency("confirmed by the loader");
+            openTime = 0;
+        }
+    }
 
-                    if (currentQuantity > 0) { // check to see if the quantity is greater than zero before enabling the decrement button.
-                        buttonDecrement.setEnabled(true);
-                    }
-                }
+    /**
+     * Show a value read by the loader, unless the field already shows it. A field the user may
+     * have edited is only filled in if it is still empty. Return true if the field shows the value.
+     */
+    private boolean showLoadedValue(EditText field, String value) {
+        if (itemHasChanged && field.length() != 0) {
+            return false;
+        }
+        if (!TextUtils.equals(field.getText(), value)) {
+            field.setText(value);
+        }
+        return true;
+    }
+
+    /**
+     * Enable the decrement button if the quantity is greater than zero.
+     */
+    @SuppressWarnings("StatementWithEmptyBody")
+    private void updateDecrementButton() {
+        if (editTextProductQuantity.length() == 0 || editTextProductQuantity.getText() == null) {
+            //Do nothing
+        } else {
+            int currentQuantity = Integer.parseInt(editTextProductQuantity.getText().toString());
+
+            if (currentQuantity > 0) { // check to see if the quantity is greater than zero before enabling the decrement button.
+                buttonDecrement.setEnabled(true);
             }
         }
     }
@@ -375,6 +568,8 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         editTextProductName.setText(null);
         editTextProductPrice.setText(null);
         editTextProductQuantity.setText(null);
+        editTextProductSku.setText(null);
+        editTextReorderThreshold.setText(null);
         editTextSupplierName.setText(null);
         editTextSupplierPhone.setText(null);
     }
@@ -456,21 +651,26 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     private void deleteItem() {
         // Only perform the delete if this is an existing item.
         if (currentItemUri != null) {
-            // Call the ContentResolver to delete the item at the given content URI.
+            // Delete the item at the given content URI in the background.
             // Pass in null for the selection and selection args because the currentItemUri
             // content URI already identifies the item that we want.
-            int rowsDeleted = getContentResolver().delete(currentItemUri, null, null);
-            // Show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_item_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_item_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
-            // Close the activity
+            final Context appContext = getApplicationContext();
+            InventoryWriter.getInstance(this).delete(currentItemUri, null, null, new InventoryWriter.Callback() {
+                @Override
+                public void onWriteFinished(Uri uri, int rowsDeleted) {
+                    // Show a toast message depending on whether or not the delete was successful.
+                    if (rowsDeleted <= 0) {
+                        // If no rows were deleted, then there was an error with the delete.
+                        Toast.makeText(appContext, appContext.getString(R.string.editor_delete_item_failed),
+                                Toast.LENGTH_SHORT).show();
+                    } else {
+                        // Otherwise, the delete was successful and we can display a toast.
+                        Toast.makeText(appContext, appContext.getString(R.string.editor_delete_item_successful),
+                                Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
+            // Close the activity, the catalog shows the change once the delete is done
             finish();
         }
     }
@@ -524,4 +724,21 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         showDeleteConfirmationDialog();
     }
 
+    public void scanSku(@SuppressWarnings("unused") View view) {
+        BarcodeScanner.scan(this, REQUEST_SCAN_SKU);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_SCAN_SKU) {
+            String sku = BarcodeScanner.getSku(resultCode, data);
+            if (sku != null) {
+                editTextProductSku.setText(sku);
+                itemHasChanged = true;
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,270 @@
+package com.example.android.inventory;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link InventoryAdapter} is a {@link RecyclerView} adapter over a list of {@link InventoryItem}.
+ * When a new list is set, the difference with the current one is computed on a background
+ * thread, so only the rows that changed are bound again.
+ */
+class InventoryAdapter extends RecyclerView.Adapter<InventoryAdapter.ViewHolder> {
+
+    /**
+     * Receives the clicks on the rows of the list.
+     */
+    interface Listener {
+        /**
+         * The user touched the row of an item, and may be about to click on it.
+         */
+        void onItemPressed(long id);
+
+        /**
+         * The user clicked on the row of an item.
+         */
+        void onItemClick(InventoryItem item);
+
+        /**
+         * The user clicked on the sell button of an item.
+         */
+        void onSellClick(InventoryItem item);
+    }
+
+    /**
+     * Runs the list comparisons, one at a time.
+     */
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Listener listener;
+
+    /**
+     * Holds the sales not written yet, which are taken off the quantities shown
+     */
+    private final SalesBuffer salesBuffer;
+
+    /**
+     * Text shown before the price and the quantity, read from the resources once
+     */
+    private final String pricePrefix;
+    private final String quantityPrefix;
+
+    /**
+     * The rows shown, never modified once set
+     */
+    private List<InventoryItem> items = Collections.emptyList();
+
+    /**
+     * Incremented for every new list, so the result of an outdated comparison is dropped
+     */
+    private int generation;
+
+    /**
+     * One click handler shared by all rows. The row is found from the view holder set as tag.
+     */
+    private final View.OnClickListener clickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            ViewHolder holder = (ViewHolder) view.getTag();
+            int position = holder.getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            InventoryItem item = items.get(position);
+            if (view == holder.buttonSellItem) {
+                listener.onSellClick(item);
+            } else {
+                listener.onItemClick(item);
+            }
+        }
+    };
+
+    /**
+     * Tells the listener as soon as a row is touched, so it can read the item ahead of the click.
+     */
+    private final View.OnTouchListener touchListener = new View.OnTouchListener() {
+        @SuppressLint("ClickableViewAccessibility")
+        @Override
+        public boolean onTouch(View view, MotionEvent motionEvent) {
+            if (motionEvent.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                ViewHolder holder = (ViewHolder) view.getTag();
+                int position = holder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    listener.onItemPressed(items.get(position).getId());
+                }
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Constructs a new {@link InventoryAdapter}.
+     *
+     * @param context     The context
+     * @param salesBuffer Holds the sales not written yet
+     * @param listener    Receives the clicks on the rows
+     */
+    InventoryAdapter(Context context, SalesBuffer salesBuffer, Listener listener) {
+        this.listener = listener;
+        this.salesBuffer = salesBuffer;
+        pricePrefix = context.getString(R.string.InventoryCursorAdapter_priceInUSD);
+        quantityPrefix = context.getString(R.string.InventoryCursorAdapter_quantity);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show a new list. The list must not be modified afterwards.
+     */
+    void setItems(final List<InventoryItem> newItems) {
+        final int newGeneration = ++generation;
+        final List<InventoryItem> oldItems = items;
+
+        // Nothing to compare, skip the background work.
+        if (oldItems.isEmpty() || newItems.isEmpty()) {
+            items = newItems;
+            notifyDataSetChanged();
+            return;
+        }
+
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new ItemDiff(oldItems, newItems), false);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (newGeneration != generation) {
+                            // A newer list was set in the meantime.
+                            return;
+                        }
+                        items = newItems;
+                        result.dispatchUpdatesTo(InventoryAdapter.this);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Bind the row of an item again, for instance after its quantity shown changed.
+     */
+    void refreshItem(long id) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).getId() == id) {
+                notifyItemChanged(i);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return items.get(position).getId();
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+        view.setTag(holder);
+        view.setOnClickListener(clickListener);
+        view.setOnTouchListener(touchListener);
+        holder.buttonSellItem.setTag(holder);
+        holder.buttonSellItem.setOnClickListener(clickListener);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        InventoryItem item = items.get(position);
+        // Show the sales tapped but not written yet
+        int quantity = salesBuffer.getDisplayedQuantity(item);
+
+        // Update the textViews with attributes from current item
+        holder.textViewName.setText(item.getName());
+        holder.textViewPrice.setText(pricePrefix + InventoryEntry.formatPrice(item.getPriceCents()));
+        holder.textViewQuantity.setText(quantityPrefix + quantity);
+
+        if (quantity > 0) { // make sure the quantity is at least 1.
+            holder.buttonSellItem.setEnabled(true);
+            holder.buttonSellItem.setText(R.string.buttonSellItem);
+        } else { // quantity is less than 0
+            // When quantity is completely depleted...
+            holder.buttonSellItem.setEnabled(false); // disable the button
+            holder.buttonSellItem.setText(R.string.buttonNoStock); // set button text to "NO STOCK".
+        }
+    }
+
+    /**
+     * Holds the views of a row, so they are only looked up when the row is created.
+     */
+    static final class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView textViewName;
+        final TextView textViewPrice;
+        final TextView textViewQuantity;
+        final Button buttonSellItem;
+
+        ViewHolder(View view) {
+            super(view);
+            textViewName = (TextView) view.findViewById(R.id.name);
+            textViewPrice = (TextView) view.findViewById(R.id.price);
+            textViewQuantity = (TextView) view.findViewById(R.id.quantity);
+            buttonSellItem = (Button) view.findViewById(R.id.buttonSale);
+        }
+    }
+
+    /**
+     * Compares two lists of rows. Rows are the same item when they have the same _id.
+     */
+    private static final class ItemDiff extends DiffUtil.Callback {
+        private final List<InventoryItem> oldItems;
+        private final List<InventoryItem> newItems;
+
+        ItemDiff(List<InventoryItem> oldItems, List<InventoryItem> newItems) {
+            this.oldItems = oldItems;
+            this.newItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldItems.get(oldItemPosition).getId() == newItems.get(newItemPosition).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldItems.get(oldItemPosition).hasSameContents(newItems.get(newItemPosition));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.android.inventory;
+
+import android.database.Cursor;
+
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link InventoryItem} is an immutable copy of one row of the catalog, so the rows can be
+ * compared on a background thread while the list shows them on the main thread.
+ */
+final class InventoryItem {
+
+    /**
+     * The columns read for each row of the catalog
+     */
+    static final String[] PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY
+    };
+
+    private final long id;
+    private final String name;
+    private final long priceCents;
+    private final int quantity;
+
+    InventoryItem(long id, String name, long priceCents, int quantity) {
+        this.id = id;
+        this.name = name;
+        this.priceCents = priceCents;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Read all rows of a cursor queried with {@link #PROJECTION}. The column indices are looked
+     * up once for the whole cursor.
+     */
+    static List<InventoryItem> readAll(Cursor cursor) {
+        if (cursor == null) {
+            return new ArrayList<InventoryItem>(0);
+        }
+        List<InventoryItem> items = new ArrayList<InventoryItem>(cursor.getCount());
+        int idColumnIndex = cursor.getColumnIndexOrThrow(InventoryEntry._ID);
+        int nameColumnIndex = cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_PRODUCT_NAME);
+        int priceColumnIndex = cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS);
+        int quantityColumnIndex = cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            items.add(new InventoryItem(cursor.getLong(idColumnIndex), cursor.getString(nameColumnIndex),
+                    cursor.getLong(priceColumnIndex), cursor.getInt(quantityColumnIndex)));
+        }
+        return items;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getPriceCents() {
+        return priceCents;
+    }
+
+    int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Return true if the row shows the same values as the given one.
+     */
+    boolean hasSameContents(InventoryItem other) {
+        return id == other.id
+                && priceCents == other.priceCents
+                && quantity == other.quantity
+                && (name == null ? other.name == null : name.equals(other.name));
+    }
+}
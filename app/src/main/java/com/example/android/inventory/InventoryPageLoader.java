@@ -0,0 +1,447 @@
+package com.example.android.inventory;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.OperationCanceledException;
+
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link InventoryPageLoader} is a loader that reads the inventory one page at a time, so the
+ * first rows show up as soon as the first page is read, no matter how big the table is.
+ * More pages are read by calling {@link #loadNextPage()}, typically when the user scrolls
+ * close to the end of the list. The delivered list holds all pages read so far, as immutable
+ * {@link InventoryItem} rows that can be compared on any thread.
+ * <p>
+ * When the provider reports that a single item changed, only the page holding that item is read
+ * again. Structural changes (items added or deleted) read all pages again.
+ */
+class InventoryPageLoader extends AsyncTaskLoader<List<InventoryItem>> {
+
+    /**
+     * Number of rows in each page
+     */
+    static final int PAGE_SIZE = 50;
+
+    private final ContentObserver observer = new ContentObserver(new Handler()) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onItemsChanged(InventoryEntry.getChangedItemId(uri));
+        }
+    };
+    private boolean observerRegistered;
+    private final Uri baseUri;
+
+    /**
+     * The pages delivered to the UI.
+     */
+    private volatile PagedList pages;
+
+    /**
+     * Set when the UI asked for the next page, cleared once that page is delivered.
+     */
+    private volatile boolean nextPageRequested;
+
+    /**
+     * Set when the data changed, so the pages read so far have to be read again. Guarded by
+     * changedItemIds.
+     */
+    private boolean reloadRequested;
+
+    /**
+     * The _ids of the items that changed since the last load, so their pages have to be read
+     * again. Guarded by itself.
+     */
+    private final Set<Long> changedItemIds = new HashSet<Long>();
+
+    /**
+     * The changes the last load started took from {@link #reloadRequested} and
+     * {@link #changedItemIds}, given back if its result is dropped, see {@link #onCanceled}.
+     * Guarded by changedItemIds.
+     */
+    private boolean loadingReload;
+    private final Set<Long> loadingItemIds = new HashSet<Long>();
+
+    /**
+     * Cancels the query running in the background when the load is canceled.
+     */
+    private CancellationSignal cancellationSignal;
+
+    /**
+     * Constructs a new {@link InventoryPageLoader}.
+     *
+     * @param context The context
+     * @param baseUri The content URI to page through, either the inventory or a search URI.
+     *                Rows are paged by _id.
+     */
+    InventoryPageLoader(Context context, Uri baseUri) {
+        super(context);
+        this.baseUri = baseUri;
+    }
+
+    /**
+     * Read the next page, unless there are no more rows or a page is already being read.
+     */
+    void loadNextPage() {
+        PagedList current = pages;
+        if (nextPageRequested || current == null || current.isComplete()) {
+            return;
+        }
+        nextPageRequested = true;
+        forceLoad();
+    }
+
+    @Override
+    public List<InventoryItem> loadInBackground() {
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            cancellationSignal = new CancellationSignal();
+        }
+        try {
+            return loadPages();
+        } finally {
+            synchronized (this) {
+                cancellationSignal = null;
+            }
+        }
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+
+        synchronized (this) {
+            if (cancellationSignal != null) {
+                cancellationSignal.cancel();
+            }
+        }
+    }
+
+    /**
+     * Called on the main thread when the provider reports a change. An itemId of -1 means the
+     * change was structural.
+     */
+    void onItemsChanged(long itemId) {
+        PagedList current = pages;
+        if (itemId >= 0 && current != null) {
+            if (current.findPage(itemId) < 0) {
+                // Not one of the rows read so far, nothing to show.
+                return;
+            }
+            synchronized (changedItemIds) {
+                changedItemIds.add(itemId);
+            }
+            super.onContentChanged();
+            return;
+        }
+        onContentChanged();
+    }
+
+    /**
+     * Read the next page, or read the pages read so far again if the data changed.
+     */
+    private PagedList loadPages() {
+        PagedList current = pages;
+        boolean reload;
+        Set<Long> changed;
+        synchronized (changedItemIds) {
+            reload = reloadRequested || current == null;
+            changed = new HashSet<Long>(changedItemIds);
+            loadingReload = reloadRequested;
+            loadingItemIds.clear();
+            loadingItemIds.addAll(changedItemIds);
+            reloadRequested = false;
+            changedItemIds.clear();
+        }
+
+        if (!reload) {
+            List<InventoryItem>[] newPages = current.getPages();
+            long[] lastIds = current.getLastIds();
+            boolean complete = current.isComplete();
+
+            // Read the pages holding the changed items again. Each page covers the _ids after the
+            // last _id of the page before it, up to its own last _id.
+            if (!changed.isEmpty()) {
+                newPages = newPages.clone();
+                for (long itemId : changed) {
+                    int index = current.findPage(itemId);
+                    if (index >= 0 && newPages[index] == current.getPages()[index]) {
+                        long afterId = index == 0 ? -1 : lastIds[index - 1];
+                        newPages[index] = queryRange(afterId, lastIds[index]);
+                    }
+                }
+            }
+
+            // Append the page following the last row we have.
+            if (nextPageRequested && !complete) {
+                long lastId = current.getLastId();
+                List<InventoryItem> page = queryPage(PAGE_SIZE, lastId);
+                newPages = Arrays.copyOf(newPages, newPages.length + 1);
+                newPages[newPages.length - 1] = page;
+                lastIds = Arrays.copyOf(lastIds, lastIds.length + 1);
+                lastIds[lastIds.length - 1] = readLastId(page, lastId);
+                complete = page.size() < PAGE_SIZE;
+            }
+            return new PagedList(newPages, lastIds, complete);
+        }
+
+        // Read everything the user has seen so far again (plus the next page if it was asked for)
+        // with a single query, so a change doesn't scroll the list back to the first page.
+        int limit = PAGE_SIZE;
+        if (current != null) {
+            limit = Math.max(PAGE_SIZE, current.size());
+            if (nextPageRequested) {
+                limit += PAGE_SIZE;
+            }
+        }
+        List<InventoryItem> page = queryPage(limit, -1);
+        @SuppressWarnings("unchecked")
+        List<InventoryItem>[] newPages = new List[]{page};
+        return new PagedList(newPages, new long[]{readLastId(page, -1)}, page.size() < limit);
+    }
+
+    /**
+     * Return the _id of the last row of a page, or the given default if the page is empty.
+     */
+    private static long readLastId(List<InventoryItem> page, long defaultId) {
+        if (page.isEmpty()) {
+            return defaultId;
+        }
+        return page.get(page.size() - 1).getId();
+    }
+
+    /**
+     * Query one page of rows after the given _id.
+     */
+    private List<InventoryItem> queryPage(int limit, long afterId) {
+        return query(InventoryEntry.buildPageUri(baseUri, limit, afterId), null, null);
+    }
+
+    /**
+     * Query the rows of a page again, given the last _id of the page before it and its own last
+     * _id. Any number of rows may have entered the page since, for instance items renamed to
+     * match a search, so the limit is the number of _ids in the range.
+     */
+    private List<InventoryItem> queryRange(long afterId, long lastId) {
+        int limit = (int) Math.min(Integer.MAX_VALUE, lastId - afterId);
+        return query(InventoryEntry.buildPageUri(baseUri, limit, afterId),
+                InventoryEntry._ID + " <= ?", new String[]{String.valueOf(lastId)});
+    }
+
+    /**
+     * Run a query and copy its rows, so the cursor can be closed right away.
+     */
+    private List<InventoryItem> query(Uri uri, String selection, String[] selectionArgs) {
+        Cursor cursor = getContext().getContentResolver().query(uri, InventoryItem.PROJECTION,
+                selection, selectionArgs, null, cancellationSignal);
+        try {
+            return InventoryItem.readAll(cursor);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    @Override
+    public void onContentChanged() {
+        synchronized (changedItemIds) {
+            reloadRequested = true;
+        }
+        super.onContentChanged();
+    }
+
+    /**
+     * Called on the main thread when the result of a load is dropped, because a newer load
+     * replaced it or the loader stopped. Give back the changes it read, so the next load reads
+     * them again.
+     */
+    @Override
+    public void onCanceled(List<InventoryItem> data) {
+        super.onCanceled(data);
+        synchronized (changedItemIds) {
+            reloadRequested |= loadingReload;
+            changedItemIds.addAll(loadingItemIds);
+            loadingReload = false;
+            loadingItemIds.clear();
+        }
+    }
+
+    @Override
+    public void deliverResult(List<InventoryItem> data) {
+        if (isReset()) {
+            // An async query came in while the loader is stopped
+            return;
+        }
+        if (data != pages) {
+            // A new result, the changes its load read are on screen now.
+            synchronized (changedItemIds) {
+                loadingReload = false;
+                loadingItemIds.clear();
+            }
+        }
+        pages = (PagedList) data;
+        nextPageRequested = false;
+
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        // Listen to the whole inventory, changes to any item may change the rows of a search.
+        if (!observerRegistered) {
+            getContext().getContentResolver().registerContentObserver(InventoryEntry.CONTENT_URI, true, observer);
+            observerRegistered = true;
+        }
+        if (pages != null) {
+            deliverResult(pages);
+        }
+        if (takeContentChanged() || pages == null || hasPendingChanges()) {
+            forceLoad();
+        }
+    }
+
+    /**
+     * Return true if a change or the next page is still to be read, for instance because the
+     * load reading it was canceled when the loader stopped.
+     */
+    private boolean hasPendingChanges() {
+        synchronized (changedItemIds) {
+            return nextPageRequested || reloadRequested || !changedItemIds.isEmpty();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        // Attempt to cancel the current load task if possible.
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+
+        // Ensure the loader is stopped
+        onStopLoading();
+
+        if (observerRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(observer);
+            observerRegistered = false;
+        }
+        pages = null;
+        nextPageRequested = false;
+        synchronized (changedItemIds) {
+            reloadRequested = false;
+            changedItemIds.clear();
+            loadingReload = false;
+            loadingItemIds.clear();
+        }
+    }
+
+    /**
+     * An immutable list over the pages read so far. Pages that didn't change are shared with
+     * the result that follows.
+     */
+    private static final class PagedList extends AbstractList<InventoryItem> {
+        private final List<InventoryItem>[] pages;
+        private final long[] lastIds;
+        private final boolean complete;
+
+        /**
+         * Position of the first row of each page, plus the total size at the end
+         */
+        private final int[] offsets;
+
+        /**
+         * @param pages    The pages, in _id order
+         * @param lastIds  The last _id covered by each page. For an empty page, the last _id of
+         *                 the page before it.
+         * @param complete Whether the last page is the end of the data
+         */
+        PagedList(List<InventoryItem>[] pages, long[] lastIds, boolean complete) {
+            this.pages = pages;
+            this.lastIds = lastIds;
+            this.complete = complete;
+            offsets = new int[pages.length + 1];
+            for (int i = 0; i < pages.length; i++) {
+                offsets[i + 1] = offsets[i] + pages[i].size();
+            }
+        }
+
+        @Override
+        public InventoryItem get(int location) {
+            if (location < 0 || location >= size()) {
+                throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + size());
+            }
+            // Find the page starting at or before the location.
+            int index = Arrays.binarySearch(offsets, location);
+            if (index < 0) {
+                index = -index - 2;
+            } else {
+                // Skip the empty pages starting at the same position.
+                while (pages[index].isEmpty()) {
+                    index++;
+                }
+            }
+            return pages[index].get(location - offsets[index]);
+        }
+
+        @Override
+        public int size() {
+            return offsets[pages.length];
+        }
+
+        List<InventoryItem>[] getPages() {
+            return pages;
+        }
+
+        long[] getLastIds() {
+            return lastIds;
+        }
+
+        boolean isComplete() {
+            return complete;
+        }
+
+        long getLastId() {
+            return lastIds[lastIds.length - 1];
+        }
+
+        /**
+         * Return the index of the page covering the given _id, or -1 if no page read so far does.
+         */
+        int findPage(long id) {
+            for (int i = 0; i < lastIds.length; i++) {
+                if (id <= lastIds[i]) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
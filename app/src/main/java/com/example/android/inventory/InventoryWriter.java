@@ -0,0 +1,202 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link InventoryWriter} runs the inserts, updates and deletes of the UI on a background thread,
+ * so a slow write (for instance deleting a large inventory) never blocks the main thread.
+ * <p>
+ * Writes run one at a time, in the order they were made, so the writes to an item are applied
+ * in order. A write that is queued right behind a write of the same kind to the same URI is
+ * merged into it, for instance two saves of the same item. There is one writer for the whole app,
+ * so writes outlive the activity that made them.
+ */
+final class InventoryWriter {
+
+    private static final String LOG_TAG = InventoryWriter.class.getSimpleName();
+
+    /**
+     * Told on the main thread when a write finished.
+     */
+    interface Callback {
+        /**
+         * @param uri      For an insert, the URI of the new row or null if it failed. For the
+         *                 other writes, the URI written to.
+         * @param rowCount The number of rows written, or -1 if the write failed
+         */
+        void onWriteFinished(Uri uri, int rowCount);
+    }
+
+    private static final int INSERT = 0;
+    private static final int UPDATE = 1;
+    private static final int DELETE = 2;
+
+    private static InventoryWriter instance;
+
+    private final ContentResolver contentResolver;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Runs the writes, one at a time
+     */
+    private final Executor executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Writes queued and not started yet. Guarded by itself.
+     */
+    private final Deque<Write> pending = new ArrayDeque<Write>();
+
+    /**
+     * Runs the write at the head of the queue. It is executed once per queued write.
+     */
+    private final Runnable runNext = new Runnable() {
+        @Override
+        public void run() {
+            Write write;
+            synchronized (pending) {
+                write = pending.pollFirst();
+            }
+            if (write != null) {
+                run(write);
+            }
+        }
+    };
+
+    private InventoryWriter(Context context) {
+        contentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Return the writer of the app.
+     */
+    static InventoryWriter getInstance(Context context) {
+        if (instance == null) {
+            instance = new InventoryWriter(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Insert a row in the background.
+     */
+    void insert(Uri uri, ContentValues values, Callback callback) {
+        enqueue(new Write(INSERT, uri, values, null, null, callback));
+    }
+
+    /**
+     * Update rows in the background.
+     */
+    void update(Uri uri, ContentValues values, String selection, String[] selectionArgs, Callback callback) {
+        enqueue(new Write(UPDATE, uri, values, selection, selectionArgs, callback));
+    }
+
+    /**
+     * Delete rows in the background.
+     */
+    void delete(Uri uri, String selection, String[] selectionArgs, Callback callback) {
+        enqueue(new Write(DELETE, uri, null, selection, selectionArgs, callback));
+    }
+
+    private void enqueue(Write write) {
+        synchronized (pending) {
+            Write last = pending.peekLast();
+            if (last != null && last.merge(write)) {
+                // The queued write will do both.
+                return;
+            }
+            pending.addLast(write);
+        }
+        executor.execute(runNext);
+    }
+
+    /**
+     * Run a write on the background thread and post its result to the callbacks.
+     */
+    private void run(final Write write) {
+        Uri resultUri = write.uri;
+        int rowCount;
+        try {
+            switch (write.kind) {
+                case INSERT:
+                    resultUri = contentResolver.insert(write.uri, write.values);
+                    rowCount = resultUri == null ? 0 : 1;
+                    break;
+                case UPDATE:
+                    rowCount = contentResolver.update(write.uri, write.values, write.selection, write.selectionArgs);
+                    break;
+                default:
+                    rowCount = contentResolver.delete(write.uri, write.selection, write.selectionArgs);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Failed to write " + write.uri, e);
+            rowCount = -1;
+        }
+
+        final Uri finalUri = resultUri;
+        final int finalRowCount = rowCount;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Callback callback : write.callbacks) {
+                    callback.onWriteFinished(finalUri, finalRowCount);
+                }
+            }
+        });
+    }
+
+    /**
+     * One queued write.
+     */
+    private static final class Write {
+        final int kind;
+        final Uri uri;
+        final ContentValues values;
+        final String selection;
+        final String[] selectionArgs;
+        final List<Callback> callbacks = new ArrayList<Callback>(1);
+
+        Write(int kind, Uri uri, ContentValues values, String selection, String[] selectionArgs, Callback callback) {
+            this.kind = kind;
+            this.uri = uri;
+            // Copy the values, the caller may change them and merging does.
+            this.values = values == null ? null : new ContentValues(values);
+            this.selection = selection;
+            this.selectionArgs = selectionArgs;
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+        }
+
+        /**
+         * Merge the given write, queued right after this one, into this one. Only updates and
+         * deletes of the same URI without a selection are merged, where doing both at once
+         * leaves the same rows as doing one after the other. Return false if they can't be merged.
+         */
+        boolean merge(Write next) {
+            if (kind == INSERT || next.kind != kind || !uri.equals(next.uri)
+                    || selection != null || next.selection != null) {
+                return false;
+            }
+            if (kind == UPDATE) {
+                // The later values win.
+                values.putAll(next.values);
+            }
+            callbacks.addAll(next.callbacks);
+            return true;
+        }
+    }
+}
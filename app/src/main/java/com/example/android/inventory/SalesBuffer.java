@@ -0,0 +1,244 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.inventory.data.InventoryContract;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link SalesBuffer} collects the sell taps of the catalog and writes them to the provider in
+ * the background. Taps are counted per item (for example "-7 on item 42") and sold in a single
+ * transaction once the taps stop for {@link #FLUSH_DELAY_MILLIS}, as soon as the buffer is full,
+ * or when {@link #flush()} is called.
+ * <p>
+ * Until the provider has the sale, the catalog shows the quantity the item will have, see
+ * {@link #getDisplayedQuantity(InventoryItem)}. There is one buffer for the whole app, so taps
+ * survive configuration changes. It must only be used from the main thread.
+ */
+final class SalesBuffer {
+
+    private static final String LOG_TAG = SalesBuffer.class.getSimpleName();
+
+    /**
+     * How long the taps are held back, in milliseconds
+     */
+    static final long FLUSH_DELAY_MILLIS = 500;
+
+    /**
+     * Number of units sold after which the buffer is written at once
+     */
+    static final int MAX_PENDING_UNITS = 50;
+
+    /**
+     * How long the quantity returned by the provider is shown while the catalog reloads, in
+     * milliseconds. After that, the quantity read by the catalog is shown again.
+     */
+    private static final long CONFIRMED_QUANTITY_MILLIS = 2000;
+
+    /**
+     * Told when the quantity shown for an item changed.
+     */
+    interface Listener {
+        void onDisplayedQuantityChanged(long id);
+    }
+
+    private static SalesBuffer instance;
+
+    private final ContentResolver contentResolver;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Units tapped and not yet written, by item _id
+     */
+    private final Map<Long, Integer> pendingUnits = new LinkedHashMap<Long, Integer>();
+    private int pendingTotal;
+
+    /**
+     * Units being written at the moment, by item _id
+     */
+    private final Map<Long, Integer> writingUnits = new HashMap<Long, Integer>();
+
+    /**
+     * Quantities returned by the provider that the catalog may not show yet, by item _id
+     */
+    private final Map<Long, ConfirmedQuantity> confirmedQuantities = new HashMap<Long, ConfirmedQuantity>();
+
+    private Listener listener;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private SalesBuffer(Context context) {
+        contentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Return the buffer of the app.
+     */
+    static SalesBuffer getInstance(Context context) {
+        if (instance == null) {
+            instance = new SalesBuffer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Set the listener told about the quantities shown, or null to stop listening.
+     */
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sell one unit of an item. Return false if the quantity shown is already 0.
+     */
+    boolean sell(InventoryItem item) {
+        if (getDisplayedQuantity(item) <= 0) {
+            return false;
+        }
+        Integer units = pendingUnits.get(item.getId());
+        pendingUnits.put(item.getId(), units == null ? 1 : units + 1);
+        pendingTotal++;
+        notifyListener(item.getId());
+
+        // Write once the taps stop, or right away if many are waiting.
+        handler.removeCallbacks(flush);
+        if (pendingTotal >= MAX_PENDING_UNITS) {
+            flush();
+        } else {
+            handler.postDelayed(flush, FLUSH_DELAY_MILLIS);
+        }
+        return true;
+    }
+
+    /**
+     * Return the quantity to show for an item: the quantity the provider confirmed, or else the
+     * one read by the catalog, minus the units not written yet.
+     */
+    int getDisplayedQuantity(InventoryItem item) {
+        long id = item.getId();
+        int quantity = item.getQuantity();
+        ConfirmedQuantity confirmed = confirmedQuantities.get(id);
+        if (confirmed != null) {
+            if (confirmed.quantity == quantity
+                    || SystemClock.uptimeMillis() - confirmed.time > CONFIRMED_QUANTITY_MILLIS) {
+                // The catalog caught up (or another sale happened since), trust its data again.
+                confirmedQuantities.remove(id);
+            } else {
+                quantity = confirmed.quantity;
+            }
+        }
+        return quantity - getUnits(pendingUnits, id) - getUnits(writingUnits, id);
+    }
+
+    /**
+     * Write the pending sales to the provider in the background, in a single transaction.
+     */
+    void flush() {
+        handler.removeCallbacks(flush);
+        if (pendingUnits.isEmpty()) {
+            return;
+        }
+
+        final long[] ids = new long[pendingUnits.size()];
+        final int[] quantities = new int[ids.length];
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : pendingUnits.entrySet()) {
+            ids[i] = entry.getKey();
+            quantities[i] = entry.getValue();
+            Integer writing = writingUnits.get(entry.getKey());
+            writingUnits.put(entry.getKey(), writing == null ? entry.getValue() : writing + entry.getValue());
+            i++;
+        }
+        pendingUnits.clear();
+        pendingTotal = 0;
+
+        // Sales must reach the provider in the order they were tapped, so they are written one
+        // batch at a time.
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                int[] newQuantities = null;
+                try {
+                    Bundle extras = new Bundle();
+                    extras.putLongArray(InventoryEntry.KEY_ITEM_IDS, ids);
+                    extras.putIntArray(InventoryEntry.KEY_SELL_QUANTITIES, quantities);
+                    Bundle result = contentResolver.call(InventoryEntry.CONTENT_URI,
+                            InventoryContract.METHOD_SELL_ALL, null, extras);
+                    newQuantities = result == null ? null : result.getIntArray(InventoryEntry.KEY_NEW_QUANTITIES);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to write " + ids.length + " sales", e);
+                }
+                final int[] finalQuantities = newQuantities;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFlushed(ids, quantities, finalQuantities);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Called on the main thread once a batch of sales was written, or failed to be.
+     */
+    private void onFlushed(long[] ids, int[] quantities, int[] newQuantities) {
+        long now = SystemClock.uptimeMillis();
+        for (int i = 0; i < ids.length; i++) {
+            int writing = getUnits(writingUnits, ids[i]) - quantities[i];
+            if (writing > 0) {
+                writingUnits.put(ids[i], writing);
+            } else {
+                writingUnits.remove(ids[i]);
+            }
+            if (newQuantities != null && newQuantities[i] >= 0) {
+                confirmedQuantities.put(ids[i], new ConfirmedQuantity(newQuantities[i], now));
+            } else {
+                // Refused (not enough stock left) or failed, show the quantity the catalog has.
+                Log.w(LOG_TAG, "Sale of " + quantities[i] + " units of item " + ids[i] + " was refused");
+                confirmedQuantities.remove(ids[i]);
+            }
+            notifyListener(ids[i]);
+        }
+    }
+
+    private void notifyListener(long id) {
+        if (listener != null) {
+            listener.onDisplayedQuantityChanged(id);
+        }
+    }
+
+    private static int getUnits(Map<Long, Integer> units, long id) {
+        Integer count = units.get(id);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * A quantity returned by the provider, and when it was.
+     */
+    private static final class ConfirmedQuantity {
+        final int quantity;
+        final long time;
+
+        ConfirmedQuantity(int quantity, long time) {
+            this.quantity = quantity;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Reads the records of a CSV file (RFC 4180) one at a time, so a file of any size is read with
+ * the same memory. Fields may be quoted with double quotes, in which case they may hold commas,
+ * line breaks and doubled quotes.
+ */
+final class CsvReader {
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    /**
+     * The field being read, reused for every field
+     */
+    private final StringBuilder field = new StringBuilder();
+
+    /**
+     * The longest record accepted, in characters, so a missing closing quote can't make the
+     * reader hold the rest of the file
+     */
+    private final int maxRecordLength;
+
+    /**
+     * Line number of the first line of the last record read, and of the next record
+     */
+    private long lineNumber;
+    private long nextLineNumber = 1;
+
+    /**
+     * @param reader          The text of the file, read through a buffer of its own
+     * @param maxRecordLength The longest record accepted, in characters
+     */
+    CsvReader(Reader reader, int maxRecordLength) {
+        this.reader = reader;
+        this.maxRecordLength = maxRecordLength;
+    }
+
+    /**
+     * Return the line number of the first line of the last record read, starting at 1.
+     */
+    long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Read the next record into the given list, replacing its contents. Return false at the end
+     * of the file.
+     *
+     * @throws IOException if the file can't be read, or a record is too long or has a quote
+     *                     that isn't closed
+     */
+    boolean readRecord(List<String> fields) throws IOException {
+        fields.clear();
+        int c = read();
+        if (c == -1) {
+            return false;
+        }
+        lineNumber = nextLineNumber;
+        field.setLength(0);
+        boolean quoted = false;
+        int length = 0;
+        while (true) {
+            if (++length > maxRecordLength) {
+                throw new IOException("Line " + lineNumber + " is longer than " + maxRecordLength + " characters");
+            }
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Quote opened on line " + lineNumber + " is not closed");
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        // Closing quote, c is the character after it.
+                        quoted = false;
+                        continue;
+                    }
+                } else if (c == '\n') {
+                    nextLineNumber++;
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                fields.add(field.toString());
+                nextLineNumber++;
+                return true;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+}
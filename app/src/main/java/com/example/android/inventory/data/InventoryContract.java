@@ -1,8 +1,14 @@
 package com.example.android.inventory.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
+import android.text.format.DateUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.TimeZone;
 
 /**
  * API Contract for the Pets app.
@@ -36,6 +42,176 @@ public final class InventoryContract {
      */
     public static final String PATH_INVENTORY = "inventory";
 
+    /**
+     * Path for the suppliers table, for instance content://com.example.android.inventory/suppliers/
+     * Appending a supplier _id and {@link #PATH_INVENTORY} lists the items of that supplier, for
+     * instance content://com.example.android.inventory/suppliers/2/inventory
+     */
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    /**
+     * Path appended to a single item URI to sell units of that item, for instance
+     * content://com.example.android.inventory/inventory/3/sell
+     */
+    public static final String PATH_SELL = "sell";
+
+    /**
+     * Path appended to the inventory URI to search items by product or supplier name, for instance
+     * content://com.example.android.inventory/inventory/search?q=gal
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path appended to the inventory URI to read the inventory statistics, for instance
+     * content://com.example.android.inventory/inventory/stats
+     */
+    public static final String PATH_STATS = "stats";
+
+    /**
+     * Path appended to the inventory URI to export the whole inventory as a file, for instance
+     * content://com.example.android.inventory/inventory/export
+     */
+    public static final String PATH_EXPORT = "export";
+
+    /**
+     * Path appended to the inventory URI to read the changes made to the inventory, for instance
+     * content://com.example.android.inventory/inventory/changes?since=42
+     */
+    public static final String PATH_CHANGES = "changes";
+
+    /**
+     * Path appended to the inventory URI to address an item by its SKU, for instance
+     * content://com.example.android.inventory/inventory/sku/4006381333931. Appending
+     * {@link #PATH_SELL} sells units of that item.
+     */
+    public static final String PATH_SKU = "sku";
+
+    /**
+     * Path appended to a single item URI to read or add the stock movements of that item, for
+     * instance content://com.example.android.inventory/inventory/3/movements
+     */
+    public static final String PATH_MOVEMENTS = "movements";
+
+    /**
+     * Path appended to the inventory URI to list the items running low, see {@link LowStockEntry}
+     */
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    /**
+     * Path appended to the inventory URI or to a single item URI to read the units sold, see
+     * {@link SalesEntry}
+     */
+    public static final String PATH_SALES = "sales";
+
+    /**
+     * Path appended to the sales URI to read how fast each item sells, see
+     * {@link SalesEntry#VELOCITY_URI}
+     */
+    public static final String PATH_VELOCITY = "velocity";
+
+    /**
+     * Path to the counts of the calls made to the provider, see {@link MetricsEntry}
+     */
+    public static final String PATH_METRICS = "metrics";
+
+    /**
+     * Path appended to the metrics URI to read the slow query log, see
+     * {@link MetricsEntry#SLOW_QUERIES_URI}
+     */
+    public static final String PATH_SLOW_QUERIES = "slow_queries";
+
+    /**
+     * Query parameter holding the text to search for. Each word is matched as a prefix.
+     */
+    public static final String QUERY_PARAMETER_QUERY = "q";
+
+    /**
+     * Query parameter holding the maximum number of rows to return. When present, the provider
+     * returns one page of rows ordered by the paging key (see {@link #QUERY_PARAMETER_PAGE_BY}).
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Query parameter selecting the paging key, either {@link #PAGE_BY_ID} (the default) or
+     * {@link #PAGE_BY_NAME}.
+     */
+    public static final String QUERY_PARAMETER_PAGE_BY = "page_by";
+
+    /**
+     * Query parameter holding the _id of the last row of the previous page.
+     */
+    public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+    /**
+     * Query parameter holding the product name of the last row of the previous page, when paging
+     * by name.
+     */
+    public static final String QUERY_PARAMETER_AFTER_NAME = "after_name";
+
+    /**
+     * Query parameter holding the last change version already seen when reading
+     * {@link ChangeEntry#CONTENT_URI}. Only the later changes are returned. Defaults to 0.
+     */
+    public static final String QUERY_PARAMETER_SINCE = "since";
+
+    /**
+     * Query parameter selecting the length of the periods the sales are summed over, either
+     * {@link #PERIOD_DAY} (the default) or {@link #PERIOD_WEEK}.
+     */
+    public static final String QUERY_PARAMETER_PERIOD = "period";
+
+    /**
+     * Query parameter holding the first day of the sales to read, see {@link SalesEntry#dayOf}.
+     * Defaults to the first sale.
+     */
+    public static final String QUERY_PARAMETER_FROM_DAY = "from_day";
+
+    /**
+     * Query parameter holding the last day of the sales to read, see {@link SalesEntry#dayOf}.
+     * Defaults to the last sale.
+     */
+    public static final String QUERY_PARAMETER_TO_DAY = "to_day";
+
+    /**
+     * Query parameter holding the number of days, today included, the velocity is measured over.
+     */
+    public static final String QUERY_PARAMETER_DAYS = "days";
+
+    /**
+     * Page rows in _id order.
+     */
+    public static final String PAGE_BY_ID = "id";
+
+    /**
+     * Page rows in case-insensitive product name order, with _id breaking ties.
+     */
+    public static final String PAGE_BY_NAME = "name";
+
+    /**
+     * Sum the sales of each day.
+     */
+    public static final String PERIOD_DAY = "day";
+
+    /**
+     * Sum the sales of each week, from Monday to Sunday.
+     */
+    public static final String PERIOD_WEEK = "week";
+
+    /**
+     * Name of the {@link android.content.ContentProvider#call} method that sells units of an item.
+     * The arg is the item content URI, the extras may hold {@link InventoryEntry#KEY_SELL_QUANTITY}.
+     * The result holds {@link InventoryEntry#KEY_NEW_QUANTITY}.
+     */
+    public static final String METHOD_SELL = "sell";
+
+    /**
+     * Name of the {@link android.content.ContentProvider#call} method that sells units of several
+     * items in a single transaction. The extras hold {@link InventoryEntry#KEY_ITEM_IDS} and
+     * {@link InventoryEntry#KEY_SELL_QUANTITIES}, the result holds
+     * {@link InventoryEntry#KEY_NEW_QUANTITIES}. Each sale is accepted or refused on its own.
+     */
+    public static final String METHOD_SELL_ALL = "sell_all";
+
     /**
      * Inner class that defines constant values for the inventory database table.
      * Each entry in the table represents inventory.
@@ -59,27 +235,729 @@ public final class InventoryContract {
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_INVENTORY;
 
+        /**
+         * The content URI to search the inventory
+         */
+        public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * The content URI the items are addressed by SKU under, see {@link #buildSkuUri}
+         */
+        public static final Uri SKU_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SKU);
+
+        /**
+         * The content URI to export the inventory with {@link ContentResolver#openTypedAssetFileDescriptor},
+         * as {@link #MIME_TYPE_CSV} or {@link #MIME_TYPE_JSON}. Opening it with
+         * {@link ContentResolver#openInputStream} exports CSV. The file is streamed through a pipe
+         * while it is read.
+         */
+        public static final Uri EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
+        /**
+         * MIME type of the inventory exported as CSV, with the columns of {@link #CSV_COLUMNS}
+         * and the _id first. Such a file can be imported again.
+         */
+        public static final String MIME_TYPE_CSV = "text/csv";
+
+        /**
+         * MIME type of the inventory exported as JSON, an array with one object per item.
+         */
+        public static final String MIME_TYPE_JSON = "application/json";
+
         /**
          * Name of database table for inventory
          */
         public final static String TABLE_NAME = "inventory";
 
+        /**
+         * Name of the full text search table mirroring the product and supplier names.
+         * The docid of each row is the _id of the item.
+         */
+        public final static String SEARCH_TABLE_NAME = "inventory_search";
+
         public final static String _ID = BaseColumns._ID;
 
         public final static String COLUMN_PRODUCT_NAME = "product_name";
 
-        public final static String COLUMN_PRODUCT_PRICE = "product_price";
+        /**
+         * Price of one unit of the item in cents, as an integer. Use {@link #parsePriceCents(String)}
+         * and {@link #formatPrice(long)} to convert from and to the decimal text shown to the user.
+         */
+        public final static String COLUMN_PRODUCT_PRICE_CENTS = "product_price_cents";
 
+        /**
+         * Number of units in stock. Reading it gives the quantity after every stock movement (see
+         * {@link MovementEntry}), and so does a selection or sort order on it. No index holds that
+         * quantity, so such a selection reads every item: to find the items running low use
+         * {@link LowStockEntry#CONTENT_URI}, and for the number of items sold out
+         * {@link StatsEntry#COLUMN_OUT_OF_STOCK_COUNT}.
+         * <p>
+         * Writing it records the difference with the current quantity as a
+         * {@link MovementEntry#KIND_ADJUSTMENT} movement.
+         */
         public final static String COLUMN_PRODUCT_QUANTITY = "product_quantity";
 
+        /**
+         * Stock keeping unit of the item, usually the number of its barcode. Optional, but no two
+         * items have the same SKU. Scanned values go through {@link #normalizeSku(String)}.
+         */
+        public final static String COLUMN_PRODUCT_SKU = "product_sku";
+
+        /**
+         * Quantity below which the item is running low and gets a {@link LowStockEntry} alert.
+         * Optional, 0 by default, which never alerts as a quantity can't be negative.
+         */
+        public final static String COLUMN_REORDER_THRESHOLD = "reorder_threshold";
+
+        /**
+         * The _id of the supplier of the item in the {@link SupplierEntry#TABLE_NAME} table.
+         */
+        public final static String COLUMN_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Name of the supplier of the item, read from the {@link SupplierEntry#TABLE_NAME} table.
+         * When inserting or updating an item, this names its supplier, which is created if it
+         * doesn't exist yet.
+         */
         public final static String COLUMN_PRODUCT_SUPPLIER_NAME = "product_supplier_name";
 
+        /**
+         * Phone number of the supplier of the item, read from the {@link SupplierEntry#TABLE_NAME}
+         * table. When inserting or updating an item, this updates the phone number of its supplier.
+         */
         public final static String COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER = "product_supplier_phone_number";
 
+        /**
+         * Key for the number of units to sell, used in the {@link android.content.ContentValues} passed to an
+         * update on a sell URI and in the extras passed to {@link InventoryContract#METHOD_SELL}. Defaults to 1.
+         */
+        public final static String KEY_SELL_QUANTITY = "sell_quantity";
+
+        /**
+         * Key for the quantity left after a {@link InventoryContract#METHOD_SELL} call, or -1 if the sale was
+         * refused because there was not enough stock (or the item doesn't exist).
+         */
+        public final static String KEY_NEW_QUANTITY = "new_quantity";
+
+        /**
+         * Key for the long[] of item _ids passed to {@link InventoryContract#METHOD_SELL_ALL}.
+         */
+        public final static String KEY_ITEM_IDS = "item_ids";
+
+        /**
+         * Key for the int[] of units to sell of each item passed to {@link InventoryContract#METHOD_SELL_ALL}.
+         */
+        public final static String KEY_SELL_QUANTITIES = "sell_quantities";
+
+        /**
+         * Key for the int[] of quantities left after a {@link InventoryContract#METHOD_SELL_ALL} call,
+         * with -1 for each sale that was refused.
+         */
+        public final static String KEY_NEW_QUANTITIES = "new_quantities";
+
+        /**
+         * Column of the CSV files holding the price of one unit as decimal text, such as "28.95".
+         */
+        public final static String CSV_COLUMN_PRODUCT_PRICE = "product_price";
+
+        /**
+         * The columns of the CSV files the inventory is imported from, named on the first line of
+         * the file in any order. A {@link #COLUMN_PRODUCT_SKU} column may be given too, other
+         * columns are ignored.
+         */
+        public static final String[] CSV_COLUMNS = {
+                COLUMN_PRODUCT_NAME,
+                CSV_COLUMN_PRODUCT_PRICE,
+                COLUMN_PRODUCT_QUANTITY,
+                COLUMN_PRODUCT_SUPPLIER_NAME,
+                COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER
+        };
+
+        /**
+         * Return the _id of the item a change notification was sent for, or -1 if it was sent
+         * for the whole inventory.
+         * <p>
+         * The provider notifies the item URI (inventory/#) when only the values of that item
+         * changed, such as after a sale or an edit. It notifies {@link #CONTENT_URI} for
+         * structural changes: items added or deleted, or many items changed at once. Observers
+         * registered on {@link #CONTENT_URI} with notifyForDescendants receive both, and can use
+         * this to refresh a single row instead of reloading everything.
+         */
+        public static long getChangedItemId(Uri uri) {
+            if (uri == null) {
+                return -1;
+            }
+            List<String> segments = uri.getPathSegments();
+            if (segments.size() != 2 || !PATH_INVENTORY.equals(segments.get(0))) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(segments.get(1));
+            } catch (NumberFormatException e) {
+                // inventory/search or inventory/stats
+                return -1;
+            }
+        }
+
+        /**
+         * Build the URI used to sell units of the item with the given id.
+         */
+        public static Uri buildSellUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon().appendPath(PATH_SELL).build();
+        }
+
+        /**
+         * Build the URI of the stock movements of the item with the given id.
+         */
+        public static Uri buildMovementsUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon().appendPath(PATH_MOVEMENTS).build();
+        }
+
+        /**
+         * Build the URI of the item with the given SKU. Query it to read the item, update it to
+         * edit the item.
+         */
+        public static Uri buildSkuUri(String sku) {
+            return SKU_URI.buildUpon().appendPath(sku).build();
+        }
+
+        /**
+         * Build the URI used to sell units of the item with the given SKU.
+         */
+        public static Uri buildSkuSellUri(String sku) {
+            return buildSkuUri(sku).buildUpon().appendPath(PATH_SELL).build();
+        }
+
+        /**
+         * Return the SKU typed or scanned by the user without the spaces around it, or null if
+         * nothing is left.
+         */
+        public static String normalizeSku(String sku) {
+            if (sku == null) {
+                return null;
+            }
+            sku = sku.trim();
+            return sku.isEmpty() ? null : sku;
+        }
+
+        /**
+         * Build the URI to search items whose product or supplier name has words starting with
+         * the words of the given text.
+         */
+        public static Uri buildSearchUri(String query) {
+            return SEARCH_URI.buildUpon().appendQueryParameter(QUERY_PARAMETER_QUERY, query).build();
+        }
+
+        /**
+         * Build the URI for a page of rows ordered by _id. Pass -1 as afterId for the first page.
+         */
+        public static Uri buildPageUri(Uri baseUri, int limit, long afterId) {
+            Uri.Builder builder = baseUri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit));
+            if (afterId >= 0) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Build the URI for a page of rows ordered by product name. Pass null as afterName for the
+         * first page, otherwise the name and _id of the last row of the previous page.
+         */
+        public static Uri buildNamePageUri(Uri baseUri, int limit, String afterName, long afterId) {
+            Uri.Builder builder = baseUri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .appendQueryParameter(QUERY_PARAMETER_PAGE_BY, PAGE_BY_NAME);
+            if (afterName != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER_NAME, afterName)
+                        .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Parse a decimal price such as "28.95" into cents. The conversion is exact.
+         *
+         * @throws NumberFormatException if the text is not a number or has more than two decimals
+         */
+        public static long parsePriceCents(String price) {
+            try {
+                return new BigDecimal(price.trim()).movePointRight(2).longValueExact();
+            } catch (ArithmeticException e) {
+                throw new NumberFormatException("Not a price in cents: " + price);
+            }
+        }
+
+        /**
+         * Format a price in cents as decimal text with two decimals, such as "28.95".
+         */
+        public static String formatPrice(long priceCents) {
+            return BigDecimal.valueOf(priceCents, 2).toPlainString();
+        }
+
         public static boolean isGreaterThanOrEqualToZero(double value) {
             return value < 0;
         }
 
     }
 
+    /**
+     * Inner class that defines constant values for the inventory statistics. The statistics are a
+     * single row kept up to date by triggers on every write to the inventory table, so reading
+     * them costs the same however many items there are.
+     */
+    public static final class StatsEntry implements BaseColumns {
+
+        /**
+         * The content URI to read the inventory statistics
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_STATS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}, a single row.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_INVENTORY + "/" + PATH_STATS;
+
+        /**
+         * Name of database table holding the single row of statistics
+         */
+        public final static String TABLE_NAME = "inventory_stats";
+
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Sum of the quantities of all items
+         */
+        public final static String COLUMN_TOTAL_UNITS = "total_units";
+
+        /**
+         * Sum of price times quantity over all items, in cents
+         */
+        public final static String COLUMN_TOTAL_VALUE_CENTS = "total_value_cents";
+
+        /**
+         * Number of items
+         */
+        public final static String COLUMN_ITEM_COUNT = "item_count";
+
+        /**
+         * Number of items with no units left
+         */
+        public final static String COLUMN_OUT_OF_STOCK_COUNT = "out_of_stock_count";
+    }
+
+    /**
+     * Inner class that defines constant values for the change log of the inventory. Every
+     * insert, update and delete of an item adds a change with a new version, higher than all the
+     * versions before, so a client that remembers the last version it has seen can read only the
+     * items that changed since, for instance to send them to a back office.
+     * <p>
+     * The log is compacted: only the latest change of each item is kept, and once the log is too
+     * long its oldest changes are replaced by a single {@link #OPERATION_RESET} change. A client
+     * reading a reset must read the whole inventory again, then go on after the version of the reset.
+     */
+    public static final class ChangeEntry {
+
+        /**
+         * The content URI to read the changes, in version order. Takes the
+         * {@link InventoryContract#QUERY_PARAMETER_SINCE} and
+         * {@link InventoryContract#QUERY_PARAMETER_LIMIT} query parameters.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_CHANGES);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}, a list of changes.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_INVENTORY + "/" + PATH_CHANGES;
+
+        /**
+         * Name of database table holding the change log
+         */
+        public final static String TABLE_NAME = "inventory_changes";
+
+        /**
+         * Version of the change, increasing with every change and never reused
+         */
+        public final static String COLUMN_VERSION = "version";
+
+        /**
+         * The _id of the item that changed, 0 for {@link #OPERATION_RESET}
+         */
+        public final static String COLUMN_ITEM_ID = "item_id";
+
+        /**
+         * What happened to the item, one of the OPERATION constants. Only the last change of an
+         * item is kept, so an item inserted then updated may only show the update.
+         * <p>
+         * The rows read from {@link #CONTENT_URI} also hold the current values of the item in the
+         * columns of {@link InventoryEntry}, null for a deleted item.
+         */
+        public final static String COLUMN_OPERATION = "operation";
+
+        public final static int OPERATION_INSERT = 1;
+        public final static int OPERATION_UPDATE = 2;
+        public final static int OPERATION_DELETE = 3;
+
+        /**
+         * The changes before this one were dropped from the log
+         */
+        public final static int OPERATION_RESET = 4;
+
+        /**
+         * Build the URI reading the changes after the given version.
+         */
+        public static Uri buildChangesUri(long sinceVersion, int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SINCE, String.valueOf(sinceVersion))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the stock movements. Every change to the
+     * quantity of an item, a receipt, a sale or an adjustment, is a new row of the movements table
+     * instead of a write to the item, so the movements of an item are its full history.
+     * <p>
+     * Movements are never changed or deleted. In the background, the provider folds them into the
+     * quantity stored with each item, so reading a quantity only has to add the few movements not
+     * folded yet.
+     */
+    public static final class MovementEntry implements BaseColumns {
+
+        /**
+         * The MIME type of the movements of an item, see {@link InventoryEntry#buildMovementsUri}.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_INVENTORY + "/" + PATH_MOVEMENTS;
+
+        /**
+         * Name of database table holding the stock movements
+         */
+        public final static String TABLE_NAME = "stock_movements";
+
+        /**
+         * Order of the movement, increasing with every movement and never reused
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * The _id of the item whose quantity changed
+         */
+        public final static String COLUMN_ITEM_ID = "item_id";
+
+        /**
+         * What moved the stock, one of the KIND constants
+         */
+        public final static String COLUMN_KIND = "kind";
+
+        /**
+         * Number of units added to the quantity, negative for units taken away
+         */
+        public final static String COLUMN_DELTA = "delta";
+
+        /**
+         * When the movement was recorded, in milliseconds since the epoch
+         */
+        public final static String COLUMN_CREATED_MILLIS = "created_millis";
+
+        /**
+         * Units received from the supplier, the delta is positive
+         */
+        public final static int KIND_RECEIPT = 1;
+
+        /**
+         * Units sold, the delta is negative. Sales are made through the sell URIs and methods,
+         * which refuse to sell more than is in stock.
+         */
+        public final static int KIND_SALE = 2;
+
+        /**
+         * Any other correction of the quantity, such as after counting the stock
+         */
+        public final static int KIND_ADJUSTMENT = 3;
+    }
+
+    /**
+     * Inner class that defines constant values for the low stock alerts. An item gets an alert
+     * when its quantity falls below its {@link InventoryEntry#COLUMN_REORDER_THRESHOLD}, and keeps
+     * it until the quantity is back at or above the threshold, so an item that goes on selling
+     * while it's low is only reported once. Triggers raise and clear the alerts on every write,
+     * looking only at the items the write touched.
+     */
+    public static final class LowStockEntry {
+
+        /**
+         * The content URI to list the items with an alert, in the order of their _id. The rows
+         * hold the columns of {@link InventoryEntry} and {@link #COLUMN_ALERT_MILLIS}.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_LOW_STOCK);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}, a list of items.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_INVENTORY + "/" + PATH_LOW_STOCK;
+
+        /**
+         * Name of database table holding the alerts, one row per item running low
+         */
+        public final static String TABLE_NAME = "low_stock_alerts";
+
+        /**
+         * The _id of the item running low
+         */
+        public final static String COLUMN_ITEM_ID = "item_id";
+
+        /**
+         * When the quantity fell below the threshold, in milliseconds since the epoch
+         */
+        public final static String COLUMN_ALERT_MILLIS = "alert_millis";
+    }
+
+    /**
+     * Inner class that defines constant values for the sales rollups. Every sale adds its units to
+     * the row of its item and day, and to the row of its item and week, in the transaction of the
+     * sale, so a report reads one row per item and period instead of every sale.
+     * <p>
+     * Days are counted from 1970-01-01 in the time zone of the device, see {@link #dayOf}. The
+     * sales of an item stay in the rollups after the item is deleted, like its movements.
+     */
+    public static final class SalesEntry {
+
+        /**
+         * The content URI to read the units sold of every item, one row per item and period with
+         * sales, in the order of the period then the item. Accepts
+         * {@link #QUERY_PARAMETER_PERIOD}, {@link #QUERY_PARAMETER_FROM_DAY} and
+         * {@link #QUERY_PARAMETER_TO_DAY}. The sales of a single item are read with
+         * {@link #buildItemSalesUri}.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_SALES);
+
+        /**
+         * The content URI to read how fast the items sell, one row per item with the columns of
+         * {@link InventoryEntry}, {@link #COLUMN_UNITS_SOLD} and {@link #COLUMN_VELOCITY}, over the
+         * number of days given by {@link #QUERY_PARAMETER_DAYS}.
+         */
+        public static final Uri VELOCITY_URI = Uri.withAppendedPath(CONTENT_URI, PATH_VELOCITY);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}, a list of units sold.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_INVENTORY + "/" + PATH_SALES;
+
+        /**
+         * Name of database table holding the units sold of each item and day
+         */
+        public final static String DAILY_TABLE_NAME = "sales_daily";
+
+        /**
+         * Name of database table holding the units sold of each item and week
+         */
+        public final static String WEEKLY_TABLE_NAME = "sales_weekly";
+
+        /**
+         * The _id of the item sold
+         */
+        public final static String COLUMN_ITEM_ID = "item_id";
+
+        /**
+         * First day of the period, the Monday of a week
+         */
+        public final static String COLUMN_DAY = "day";
+
+        /**
+         * Number of units sold in the period
+         */
+        public final static String COLUMN_UNITS_SOLD = "units_sold";
+
+        /**
+         * Average number of units sold per day, a REAL, only read through {@link #VELOCITY_URI}
+         */
+        public final static String COLUMN_VELOCITY = "velocity";
+
+        /**
+         * Return the day of the given time, in days since 1970-01-01 in the time zone of the device.
+         */
+        public static long dayOf(long millis) {
+            return (millis + TimeZone.getDefault().getOffset(millis)) / DateUtils.DAY_IN_MILLIS;
+        }
+
+        /**
+         * Return the Monday of the week of the given day, the {@link #COLUMN_DAY} of the week.
+         * 1970-01-01 was a Thursday.
+         */
+        public static long weekOf(long day) {
+            return day - (day + 3) % 7;
+        }
+
+        /**
+         * Build the URI reading the units sold of every item, by period, from one day to another,
+         * both included.
+         */
+        public static Uri buildSalesUri(String period, long fromDay, long toDay) {
+            return appendPeriod(CONTENT_URI, period, fromDay, toDay);
+        }
+
+        /**
+         * Build the URI reading the units sold of the item with the given id, by period, from one
+         * day to another, both included.
+         */
+        public static Uri buildItemSalesUri(long itemId, String period, long fromDay, long toDay) {
+            Uri uri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, itemId).buildUpon()
+                    .appendPath(PATH_SALES).build();
+            return appendPeriod(uri, period, fromDay, toDay);
+        }
+
+        /**
+         * Build the URI reading how fast the items sold over the given number of days, today included.
+         */
+        public static Uri buildVelocityUri(int days) {
+            return VELOCITY_URI.buildUpon().appendQueryParameter(QUERY_PARAMETER_DAYS, String.valueOf(days)).build();
+        }
+
+        private static Uri appendPeriod(Uri uri, String period, long fromDay, long toDay) {
+            return uri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_PERIOD, period)
+                    .appendQueryParameter(QUERY_PARAMETER_FROM_DAY, String.valueOf(fromDay))
+                    .appendQueryParameter(QUERY_PARAMETER_TO_DAY, String.valueOf(toDay))
+                    .build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the suppliers database table.
+     * Each entry in the table represents one supplier, shared by all the items it supplies.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the supplier data in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * Name of database table for suppliers
+         */
+        public final static String TABLE_NAME = "suppliers";
+
+        public final static String _ID = BaseColumns._ID;
+
+        public final static String COLUMN_SUPPLIER_NAME = "supplier_name";
+
+        public final static String COLUMN_SUPPLIER_PHONE_NUMBER = "supplier_phone_number";
+
+        /**
+         * Build the URI listing the items of the supplier with the given id.
+         */
+        public static Uri buildItemsUri(long supplierId) {
+            return ContentUris.withAppendedId(CONTENT_URI, supplierId).buildUpon()
+                    .appendPath(PATH_INVENTORY).build();
+        }
+    }
+
+    /**
+     * Inner class that defines the columns of the provider metrics. They are only counted while
+     * the metrics are on, with the provider_metrics resource or with
+     * adb shell dumpsys activity provider com.example.android.inventory metrics on
+     */
+    public static final class MetricsEntry {
+
+        /**
+         * The content URI to read the counts of the calls, one row per kind of URI and operation.
+         * The times are in microseconds, and the percentiles are the upper bounds of the histogram
+         * buckets holding them.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_METRICS);
+
+        /**
+         * The content URI to read the last queries slower than the slow_query_millis resource,
+         * oldest first.
+         */
+        public static final Uri SLOW_QUERIES_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SLOW_QUERIES);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}, a list of counts.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_METRICS;
+
+        /**
+         * The MIME type of the {@link #SLOW_QUERIES_URI}, a list of queries.
+         */
+        public static final String SLOW_QUERIES_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_METRICS + "/" + PATH_SLOW_QUERIES;
+
+        /**
+         * The URI called. For the counts, the first URI of its kind, or the method of a call
+         */
+        public final static String COLUMN_URI = "uri";
+
+        /**
+         * The operation counted: query, insert, update, delete, bulk_insert, apply_batch, call,
+         * or notify for the change notifications sent
+         */
+        public final static String COLUMN_OPERATION = "operation";
+
+        public final static String COLUMN_COUNT = "count";
+
+        /**
+         * Number of rows read or written by all the calls
+         */
+        public final static String COLUMN_ROWS = "rows";
+
+        public final static String COLUMN_TOTAL_MICROS = "total_micros";
+
+        public final static String COLUMN_MAX_MICROS = "max_micros";
+
+        public final static String COLUMN_P50_MICROS = "p50_micros";
+
+        public final static String COLUMN_P90_MICROS = "p90_micros";
+
+        public final static String COLUMN_P99_MICROS = "p99_micros";
+
+        /**
+         * The non empty buckets of the latency histogram, as "upper bound in microseconds:calls"
+         * separated by spaces
+         */
+        public final static String COLUMN_HISTOGRAM = "histogram";
+
+        /**
+         * When the slow query ran, in milliseconds since the epoch
+         */
+        public final static String COLUMN_TIME_MILLIS = "time_millis";
+
+        public final static String COLUMN_DURATION_MICROS = "duration_micros";
+
+        /**
+         * The selection of the slow query as the client gave it, with its arguments
+         */
+        public final static String COLUMN_SELECTION = "selection";
+
+        /**
+         * The SQL the slow query ran, or null if it was answered without SQL
+         */
+        public final static String COLUMN_SQL = "sql";
+
+        /**
+         * The steps of the EXPLAIN QUERY PLAN of the SQL, one per line
+         */
+        public final static String COLUMN_PLAN = "plan";
+    }
+
 }
\ No newline at end of file
@@ -16,10 +16,23 @@
 package com.example.android.inventory.data;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
+import com.example.android.inventory.R;
+import com.example.android.inventory.data.InventoryContract.ChangeEntry;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryContract.LowStockEntry;
+import com.example.android.inventory.data.InventoryContract.MovementEntry;
+import com.example.android.inventory.data.InventoryContract.SalesEntry;
+import com.example.android.inventory.data.InventoryContract.StatsEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
+
+import java.util.Locale;
+
 import static android.content.ContentValues.TAG;
 
 /**
@@ -29,19 +42,61 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
     /**
      * Name of the database file
      */
-    private static final String DATABASE_NAME = "inventory.db";
+    static final String DATABASE_NAME = "inventory.db";
+    /**
+     * Name of the table the inventory is copied to while its columns are changed
+     */
+    private static final String INVENTORY_NEW_TABLE_NAME = "inventory_new";
     /**
      * Database version. If you change the database schema, you must increment the database version.
      */
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 12;
+    /**
+     * Name of the price column before version 5, holding the price as a REAL
+     */
+    private static final String LEGACY_COLUMN_PRODUCT_PRICE = "product_price";
+    /**
+     * Column of the inventory table holding the _id of the last stock movement of the item folded
+     * into its product_quantity, see {@link #quantitySql(String)}. Not part of the contract.
+     */
+    static final String COLUMN_APPLIED_MOVEMENT_ID = "applied_movement_id";
+    /**
+     * Kind of the rows the compactor adds to the stock movements table to mark how far it has
+     * folded the table, with item_id 0 and delta 0. Not part of the contract, clients never see them.
+     */
+    static final int MOVEMENT_KIND_FOLD = 0;
+    /**
+     * The current time in milliseconds since the epoch, in SQL. julianday is the only clock of
+     * SQLite finer than a second.
+     */
+    private static final String SQL_NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
 
     /**
-     * Constructs a new instance of {@link InventoryDbHelper}.
+     * Storage settings every connection is configured with
+     */
+    private final StorageProfile storageProfile;
+
+    /**
+     * Constructs a new instance of {@link InventoryDbHelper} using the storage profile named by
+     * the storage_profile resource.
      *
      * @param context of the app
      */
     public InventoryDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, StorageProfile.forName(context.getString(R.string.storage_profile)));
+    }
+
+    /**
+     * Constructs a new instance of {@link InventoryDbHelper} using the given storage profile. The
+     * cursors are created by {@link ProviderMetrics#CURSOR_FACTORY}, so queries can be timed when
+     * their cursors are filled.
+     *
+     * @param context        of the app
+     * @param storageProfile the storage settings to open the database with
+     */
+    InventoryDbHelper(Context context, StorageProfile storageProfile) {
+        super(context, DATABASE_NAME, ProviderMetrics.CURSOR_FACTORY, DATABASE_VERSION);
+        this.storageProfile = storageProfile;
     }
 
     /**
@@ -53,7 +108,7 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
         String SQL_CREATE_INVENTORY_TABLE = "CREATE TABLE " + InventoryContract.InventoryEntry.TABLE_NAME + " ("
                 + InventoryContract.InventoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
-                + InventoryContract.InventoryEntry.COLUMN_PRODUCT_PRICE + " REAL NOT NULL, "
+                + LEGACY_COLUMN_PRODUCT_PRICE + " REAL NOT NULL, "
                 + InventoryContract.InventoryEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
                 + InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " TEXT DEFAULT \"Unknown Supplier\", "
                 + InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER + " TEXT DEFAULT \"Unknown Phone\");";
@@ -67,13 +122,729 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
         // Execute the SQL statement
         Log.d(TAG, "" + SQL_CREATE_INVENTORY_TABLE);
         db.execSQL(SQL_CREATE_INVENTORY_TABLE);
+
+        // Bring the version 1 table up to the current schema, the same way an existing database is.
+        onUpgrade(db, 1, DATABASE_VERSION);
     }
 
     /**
-     * This is called when the database needs to be upgraded.
+     * This is called when the database needs to be upgraded. Each schema version is applied in
+     * turn, then the indexes and triggers are created again so they always match the current schema.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to do be done here.
+        if (oldVersion < 2) {
+            upgradeToVersion2(db);
+        }
+        // Version 3 only adds the indexes created below.
+        if (oldVersion < 4) {
+            upgradeToVersion4(db);
+        }
+        if (oldVersion < 5) {
+            upgradeToVersion5(db);
+        }
+        if (oldVersion < 6) {
+            upgradeToVersion6(db);
+        }
+        if (oldVersion < 7) {
+            upgradeToVersion7(db);
+        }
+        if (oldVersion < 8) {
+            upgradeToVersion8(db);
+        }
+        if (oldVersion < 9) {
+            upgradeToVersion9(db);
+        }
+        if (oldVersion < 10) {
+            upgradeToVersion10(db);
+        }
+        if (oldVersion < 11) {
+            upgradeToVersion11(db);
+        }
+        if (oldVersion < 12) {
+            upgradeToVersion12(db);
+        }
+        createIndexes(db);
+        createTriggers(db);
+    }
+
+    /**
+     * Apply the storage profile, and enforce the foreign keys between the tables on every connection.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        storageProfile.apply(db);
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    /**
+     * Version 2 adds the full text search table mirroring the product and supplier names.
+     */
+    private void upgradeToVersion2(SQLiteDatabase db) {
+        createSearchTable(db);
+        db.execSQL("INSERT INTO " + InventoryEntry.SEARCH_TABLE_NAME + " (docid, "
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ")"
+                + " SELECT " + InventoryEntry._ID + ", " + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " FROM " + InventoryEntry.TABLE_NAME);
+    }
+
+    /**
+     * Create the empty full text search table.
+     */
+    private static void createSearchTable(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + InventoryEntry.SEARCH_TABLE_NAME + " USING fts4("
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ")");
+    }
+
+    /**
+     * Version 4 moves the supplier name and phone number, repeated in every inventory row, into
+     * their own suppliers table, and points each item at its supplier with a foreign key.
+     */
+    private void upgradeToVersion4(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL UNIQUE, "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " TEXT NOT NULL)");
+
+        // Rows written before the provider validated suppliers may have no supplier at all.
+        db.execSQL("UPDATE " + InventoryEntry.TABLE_NAME + " SET "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = 'Unknown Supplier' WHERE "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " IS NULL");
+        db.execSQL("UPDATE " + InventoryEntry.TABLE_NAME + " SET "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER + " = 'Unknown Phone' WHERE "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER + " IS NULL");
+
+        // One supplier per distinct name. Rows are replayed in _id order, so the supplier keeps
+        // the phone number of its most recently added item.
+        db.execSQL("INSERT OR REPLACE INTO " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + ")"
+                + " SELECT " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER + " FROM " + InventoryEntry.TABLE_NAME
+                + " ORDER BY " + InventoryEntry._ID);
+
+        rebuildInventoryTable(db, "CREATE TABLE " + INVENTORY_NEW_TABLE_NAME + " ("
+                        + InventoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + InventoryEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                        + LEGACY_COLUMN_PRODUCT_PRICE + " REAL NOT NULL, "
+                        + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                        + InventoryEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                        + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "))",
+                "INSERT INTO " + INVENTORY_NEW_TABLE_NAME + " ("
+                        + InventoryEntry._ID + ", " + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                        + LEGACY_COLUMN_PRODUCT_PRICE + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                        + InventoryEntry.COLUMN_SUPPLIER_ID + ")"
+                        + " SELECT i." + InventoryEntry._ID + ", i." + InventoryEntry.COLUMN_PRODUCT_NAME
+                        + ", i." + LEGACY_COLUMN_PRODUCT_PRICE + ", i." + InventoryEntry.COLUMN_PRODUCT_QUANTITY
+                        + ", s." + SupplierEntry._ID + " FROM " + InventoryEntry.TABLE_NAME + " i JOIN "
+                        + SupplierEntry.TABLE_NAME + " s ON s." + SupplierEntry.COLUMN_SUPPLIER_NAME
+                        + " = i." + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+    }
+
+    /**
+     * Version 5 stores the price as a whole number of cents instead of a REAL, so sums over the
+     * prices are exact. Prices were entered with at most two decimals, so rounding the REAL
+     * times 100 gives back exactly the cents that were entered.
+     */
+    private void upgradeToVersion5(SQLiteDatabase db) {
+        rebuildInventoryTable(db, "CREATE TABLE " + INVENTORY_NEW_TABLE_NAME + " ("
+                        + InventoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + InventoryEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                        + InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS + " INTEGER NOT NULL, "
+                        + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                        + InventoryEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                        + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "))",
+                "INSERT INTO " + INVENTORY_NEW_TABLE_NAME + " ("
+                        + InventoryEntry._ID + ", " + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                        + InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                        + InventoryEntry.COLUMN_SUPPLIER_ID + ")"
+                        + " SELECT " + InventoryEntry._ID + ", " + InventoryEntry.COLUMN_PRODUCT_NAME
+                        + ", CAST(ROUND(" + LEGACY_COLUMN_PRODUCT_PRICE + " * 100) AS INTEGER), "
+                        + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_SUPPLIER_ID
+                        + " FROM " + InventoryEntry.TABLE_NAME);
+    }
+
+    /**
+     * Version 6 adds the single row statistics table, filled from the current inventory. The
+     * triggers created at the end of the upgrade keep it up to date from then on.
+     */
+    private void upgradeToVersion6(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + StatsEntry.TABLE_NAME + " ("
+                + StatsEntry._ID + " INTEGER PRIMARY KEY CHECK (" + StatsEntry._ID + " = 1), "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_TOTAL_VALUE_CENTS + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_ITEM_COUNT + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL)");
+        fillStats(db);
+    }
+
+    /**
+     * Version 7 adds the change log, filled by the triggers created at the end of the upgrade.
+     * The items already there were never logged, so the log starts with a reset.
+     */
+    private void upgradeToVersion7(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + ChangeEntry.TABLE_NAME + " ("
+                + ChangeEntry.COLUMN_VERSION + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ChangeEntry.COLUMN_ITEM_ID + " INTEGER NOT NULL, "
+                + ChangeEntry.COLUMN_OPERATION + " INTEGER NOT NULL)");
+        logReset(db);
+    }
+
+    /**
+     * Version 8 adds the SKU of the items. A nullable column with no default can be added in
+     * place, without rebuilding the table. Its unique index is created at the end of the upgrade.
+     */
+    private void upgradeToVersion8(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + InventoryEntry.TABLE_NAME + " ADD COLUMN "
+                + InventoryEntry.COLUMN_PRODUCT_SKU + " TEXT");
+    }
+
+    /**
+     * Version 9 adds the stock movements table. Quantity changes are appended to it instead of
+     * being written to the item, and folded into product_quantity later, in the background. The
+     * quantities already there are the starting point, nothing has been moved yet.
+     */
+    private void upgradeToVersion9(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + MovementEntry.TABLE_NAME + " ("
+                + MovementEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + MovementEntry.COLUMN_ITEM_ID + " INTEGER NOT NULL, "
+                + MovementEntry.COLUMN_KIND + " INTEGER NOT NULL, "
+                + MovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                + MovementEntry.COLUMN_CREATED_MILLIS + " INTEGER NOT NULL)");
+        db.execSQL("ALTER TABLE " + InventoryEntry.TABLE_NAME + " ADD COLUMN "
+                + COLUMN_APPLIED_MOVEMENT_ID + " INTEGER NOT NULL DEFAULT 0");
+    }
+
+    /**
+     * Version 10 adds the reorder threshold of the items and their low stock alerts. The items
+     * already there have a threshold of 0, so none of them is running low yet.
+     */
+    private void upgradeToVersion10(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + InventoryEntry.TABLE_NAME + " ADD COLUMN "
+                + InventoryEntry.COLUMN_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0");
+        // One alert per item, so raising it again while the item is still low does nothing.
+        db.execSQL("CREATE TABLE " + LowStockEntry.TABLE_NAME + " ("
+                + LowStockEntry.COLUMN_ITEM_ID + " INTEGER PRIMARY KEY, "
+                + LowStockEntry.COLUMN_ALERT_MILLIS + " INTEGER NOT NULL)");
+    }
+
+    /**
+     * Version 11 adds the daily and weekly sales rollups, filled once from the sales already in
+     * the movements table. The triggers created at the end of the upgrade keep them up to date.
+     */
+    private void upgradeToVersion11(SQLiteDatabase db) {
+        for (String table : new String[]{SalesEntry.DAILY_TABLE_NAME, SalesEntry.WEEKLY_TABLE_NAME}) {
+            db.execSQL("CREATE TABLE " + table + " ("
+                    + SalesEntry.COLUMN_ITEM_ID + " INTEGER NOT NULL, "
+                    + SalesEntry.COLUMN_DAY + " INTEGER NOT NULL, "
+                    + SalesEntry.COLUMN_UNITS_SOLD + " INTEGER NOT NULL, "
+                    + "PRIMARY KEY (" + SalesEntry.COLUMN_ITEM_ID + ", " + SalesEntry.COLUMN_DAY + "))");
+        }
+        String day = daySql(MovementEntry.COLUMN_CREATED_MILLIS);
+        String sales = " FROM " + MovementEntry.TABLE_NAME + " WHERE " + MovementEntry.COLUMN_KIND + " = "
+                + MovementEntry.KIND_SALE + " GROUP BY 1, 2";
+        db.execSQL("INSERT INTO " + SalesEntry.DAILY_TABLE_NAME + " SELECT " + MovementEntry.COLUMN_ITEM_ID + ", "
+                + day + ", -SUM(" + MovementEntry.COLUMN_DELTA + ")" + sales);
+        db.execSQL("INSERT INTO " + SalesEntry.WEEKLY_TABLE_NAME + " SELECT " + MovementEntry.COLUMN_ITEM_ID + ", "
+                + weekSql(day) + ", -SUM(" + MovementEntry.COLUMN_DELTA + ")" + sales);
+    }
+
+    /**
+     * Version 12 drops the index on the folded quantity. Selections on the quantity compare the
+     * quantity with the movements not folded yet, which no index holds, see {@link #withQuantity}.
+     */
+    private void upgradeToVersion12(SQLiteDatabase db) {
+        db.execSQL("DROP INDEX IF EXISTS inventory_quantity_idx");
+    }
+
+    /**
+     * Build the SQL reading the day of a time in milliseconds since the epoch, in days since
+     * 1970-01-01 in the local time zone, like {@link SalesEntry#dayOf}.
+     */
+    private static String daySql(String millis) {
+        return "CAST(julianday(" + millis + " / 1000, 'unixepoch', 'localtime') - 2440587.5 AS INTEGER)";
+    }
+
+    /**
+     * Build the SQL reading the Monday of the week of a day, like {@link SalesEntry#weekOf}.
+     */
+    private static String weekSql(String day) {
+        return "(" + day + " - (" + day + " + 3) % 7)";
+    }
+
+    /**
+     * Build the SQL reading the quantity of an item: the quantity folded into the given row of
+     * the inventory table ("inventory", or "new" or "old" in a trigger) plus the movements of the
+     * item not folded yet. The compactor keeps those few, and they are read from the covering
+     * index of the movements table, so this costs one index probe whatever the size of the table.
+     */
+    static String quantitySql(String row) {
+        return quantitySql(row, "");
+    }
+
+    /**
+     * Build the SQL reading the quantity of an item as it was once the movement with the given
+     * _id was added, like {@link #quantitySql(String)}. The movements must not have been folded
+     * since, so this only holds inside the transaction that read the _id.
+     */
+    static String quantitySql(String row, long lastMovementId) {
+        return quantitySql(row, " AND m." + MovementEntry._ID + " <= " + lastMovementId);
+    }
+
+    private static String quantitySql(String row, String movementRange) {
+        return "(" + row + "." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " + IFNULL((SELECT SUM(m."
+                + MovementEntry.COLUMN_DELTA + ") FROM " + MovementEntry.TABLE_NAME + " m WHERE m."
+                + MovementEntry.COLUMN_ITEM_ID + " = " + row + "." + InventoryEntry._ID + " AND m." + MovementEntry._ID
+                + " > " + row + "." + COLUMN_APPLIED_MOVEMENT_ID + movementRange + "), 0))";
+    }
+
+    /**
+     * Replace every reference to the quantity column in a selection or sort order given by a
+     * client, bare or qualified by the inventory table, with the given SQL reading the quantity.
+     * The column only holds the quantity as of the last fold, SQLite would compare that. String
+     * literals, comments and other names are copied as they are.
+     */
+    static String withQuantity(String clause, String quantity) {
+        if (clause == null || !clause.toLowerCase(Locale.US).contains(InventoryEntry.COLUMN_PRODUCT_QUANTITY)) {
+            return clause;
+        }
+        // The CAST gives the sum the INTEGER affinity of the column, so it still equals the
+        // selection arguments, which are bound as text.
+        quantity = "CAST(" + quantity + " AS INTEGER)";
+        StringBuilder result = new StringBuilder(clause.length() + quantity.length());
+        int length = clause.length();
+        int i = 0;
+        while (i < length) {
+            char c = clause.charAt(i);
+            int end;
+            if (c == '\'') {
+                end = skipQuoted(clause, i, '\'');
+            } else if (clause.startsWith("--", i)) {
+                end = clause.indexOf('\n', i);
+                end = end < 0 ? length : end;
+            } else if (clause.startsWith("/*", i)) {
+                end = clause.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+            } else if (isNameStart(c)) {
+                // A name, maybe the table of the column that follows after a dot. Only the column
+                // of the inventory table is replaced.
+                end = skipName(clause, i);
+                String name = unquote(clause.substring(i, end));
+                if (end + 1 < length && clause.charAt(end) == '.' && isNameStart(clause.charAt(end + 1))) {
+                    int columnEnd = skipName(clause, end + 1);
+                    name = name.equalsIgnoreCase(InventoryEntry.TABLE_NAME)
+                            ? unquote(clause.substring(end + 1, columnEnd)) : null;
+                    end = columnEnd;
+                }
+                if (name != null && name.equalsIgnoreCase(InventoryEntry.COLUMN_PRODUCT_QUANTITY)) {
+                    result.append(quantity);
+                    i = end;
+                    continue;
+                }
+            } else if (Character.isDigit(c)) {
+                // A number, whose exponent or hex digits aren't names
+                end = i + 1;
+                while (end < length && (Character.isLetterOrDigit(clause.charAt(end)) || clause.charAt(end) == '.')) {
+                    end++;
+                }
+            } else {
+                end = i + 1;
+            }
+            result.append(clause, i, end);
+            i = end;
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return true if a name starts with the character, quoted or not.
+     */
+    private static boolean isNameStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '"' || c == '`' || c == '[';
+    }
+
+    /**
+     * Return the index right after the name starting at the given index, quoted or not.
+     */
+    private static int skipName(String clause, int start) {
+        char c = clause.charAt(start);
+        if (c == '"' || c == '`') {
+            return skipQuoted(clause, start, c);
+        }
+        if (c == '[') {
+            int end = clause.indexOf(']', start);
+            return end < 0 ? clause.length() : end + 1;
+        }
+        int end = start + 1;
+        while (end < clause.length()
+                && (Character.isLetterOrDigit(clause.charAt(end)) || clause.charAt(end) == '_' || clause.charAt(end) == '$')) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Return the index right after the text quoted by the character at the given index, where
+     * the quote is escaped by doubling it.
+     */
+    private static int skipQuoted(String clause, int start, char quote) {
+        int end = start + 1;
+        while (end < clause.length()) {
+            if (clause.charAt(end) == quote) {
+                if (end + 1 < clause.length() && clause.charAt(end + 1) == quote) {
+                    end += 2;
+                    continue;
+                }
+                return end + 1;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Return a name without its quotes.
+     */
+    private static String unquote(String name) {
+        char c = name.charAt(0);
+        if (c == '"' || c == '`') {
+            return name.substring(1, Math.max(1, name.length() - 1)).replace(String.valueOf(c) + c, String.valueOf(c));
+        }
+        if (c == '[') {
+            return name.substring(1, Math.max(1, name.length() - 1));
+        }
+        return name;
+    }
+
+    /**
+     * Build the SQL telling whether the given row of the inventory table is running low, with
+     * the movements of the item not folded yet, see {@link LowStockEntry}.
+     */
+    private static String isLowSql(String row) {
+        return quantitySql(row) + " < " + row + "." + InventoryEntry.COLUMN_REORDER_THRESHOLD;
+    }
+
+    /**
+     * Add a {@link ChangeEntry#OPERATION_RESET} change to the log.
+     */
+    static void logReset(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + ChangeEntry.TABLE_NAME + " (" + ChangeEntry.COLUMN_ITEM_ID + ", "
+                + ChangeEntry.COLUMN_OPERATION + ") VALUES (0, " + ChangeEntry.OPERATION_RESET + ")");
+    }
+
+    /**
+     * Compute the statistics row from the current inventory. The statistics table must be empty,
+     * and every movement folded, or the movements table empty.
+     */
+    private static void fillStats(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + StatsEntry.TABLE_NAME + " (" + StatsEntry._ID + ", "
+                + StatsEntry.COLUMN_TOTAL_UNITS + ", " + StatsEntry.COLUMN_TOTAL_VALUE_CENTS + ", "
+                + StatsEntry.COLUMN_ITEM_COUNT + ", " + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + ")"
+                + " SELECT 1, IFNULL(SUM(" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), 0), IFNULL(SUM("
+                + InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS + " * " + InventoryEntry.COLUMN_PRODUCT_QUANTITY
+                + "), 0), COUNT(*), IFNULL(SUM(" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " <= 0), 0) FROM "
+                + InventoryEntry.TABLE_NAME);
+    }
+
+    /**
+     * Raise or clear the low stock alerts of every item, after a bulk load ran without the
+     * triggers. The items that were already running low keep the time of their alert.
+     */
+    private static void fillLowStock(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + LowStockEntry.TABLE_NAME + " WHERE " + LowStockEntry.COLUMN_ITEM_ID
+                + " NOT IN (SELECT i." + InventoryEntry._ID + " FROM " + InventoryEntry.TABLE_NAME + " i WHERE "
+                + isLowSql("i") + ")");
+        db.execSQL("INSERT OR IGNORE INTO " + LowStockEntry.TABLE_NAME + " (" + LowStockEntry.COLUMN_ITEM_ID + ", "
+                + LowStockEntry.COLUMN_ALERT_MILLIS + ") SELECT i." + InventoryEntry._ID + ", " + SQL_NOW_MILLIS
+                + " FROM " + InventoryEntry.TABLE_NAME + " i WHERE " + isLowSql("i"));
+    }
+
+    /**
+     * Replace the inventory table with the one created by createNewTable and filled by
+     * fillNewTable, which both work on {@link #INVENTORY_NEW_TABLE_NAME}. SQLite can't drop or
+     * change columns, so this is how the columns of the table are changed. The AUTOINCREMENT
+     * sequence is carried over, so the _id of a deleted item is never reused. The indexes and
+     * triggers of the old table are dropped with it, and created again at the end of the upgrade.
+     */
+    private void rebuildInventoryTable(SQLiteDatabase db, String createNewTable, String fillNewTable) {
+        long sequence = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name = ?",
+                new String[]{InventoryEntry.TABLE_NAME});
+
+        db.execSQL(createNewTable);
+        db.execSQL(fillNewTable);
+        db.execSQL("DROP TABLE " + InventoryEntry.TABLE_NAME);
+        db.execSQL("ALTER TABLE " + INVENTORY_NEW_TABLE_NAME + " RENAME TO " + InventoryEntry.TABLE_NAME);
+
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = ?", new Object[]{InventoryEntry.TABLE_NAME});
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT ?, MAX(?, IFNULL(MAX(" + InventoryEntry._ID
+                + "), 0)) FROM " + InventoryEntry.TABLE_NAME, new Object[]{InventoryEntry.TABLE_NAME, sequence});
+    }
+
+    /**
+     * Prepare the inventory and supplier tables for loading a large number of rows at once, see
+     * {@link #endBulkLoad}. The triggers, the secondary indexes and the search table are dropped,
+     * so each row costs a single b-tree insert, and all of them are built once at the end, which
+     * is far cheaper than updating them row by row. Must be called inside a transaction.
+     */
+    void beginBulkLoad(SQLiteDatabase db) {
+        // Ask the schema rather than list the names, so triggers and indexes added later are
+        // dropped too. The automatic indexes of UNIQUE columns have no SQL and can't be dropped.
+        Cursor cursor = db.rawQuery("SELECT type, name FROM sqlite_master WHERE type IN ('trigger', 'index')"
+                        + " AND sql IS NOT NULL AND tbl_name IN (?, ?)",
+                new String[]{InventoryEntry.TABLE_NAME, SupplierEntry.TABLE_NAME});
+        try {
+            while (cursor.moveToNext()) {
+                db.execSQL("DROP " + cursor.getString(0) + " " + cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        db.execSQL("DROP TABLE " + InventoryEntry.SEARCH_TABLE_NAME);
+    }
+
+    /**
+     * Finish a bulk load started with {@link #beginBulkLoad}: fill the search table and the
+     * statistics from the loaded rows, then create the indexes and triggers again.
+     */
+    void endBulkLoad(SQLiteDatabase db) {
+        createSearchTable(db);
+        db.execSQL("INSERT INTO " + InventoryEntry.SEARCH_TABLE_NAME + " (docid, "
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ")"
+                + " SELECT i." + InventoryEntry._ID + ", i." + InventoryEntry.COLUMN_PRODUCT_NAME
+                + ", s." + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + InventoryEntry.TABLE_NAME + " i JOIN "
+                + SupplierEntry.TABLE_NAME + " s ON s." + SupplierEntry._ID + " = i." + InventoryEntry.COLUMN_SUPPLIER_ID);
+        db.execSQL("DELETE FROM " + StatsEntry.TABLE_NAME);
+        fillStats(db);
+        fillLowStock(db);
+        createIndexes(db);
+        createTriggers(db);
+    }
+
+    /**
+     * Create the secondary indexes of the inventory, change log, movements and sales tables if they
+     * don't exist yet.
+     */
+    private void createIndexes(SQLiteDatabase db) {
+        // Sorting and paging by name, case-insensitive. The rowid is part of every index, so this
+        // also covers the _id used to break ties between equal names.
+        db.execSQL("CREATE INDEX IF NOT EXISTS inventory_name_idx ON " + InventoryEntry.TABLE_NAME
+                + " (" + InventoryEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE)");
+        // Listing the items of a supplier
+        db.execSQL("CREATE INDEX IF NOT EXISTS inventory_supplier_idx ON " + InventoryEntry.TABLE_NAME
+                + " (" + InventoryEntry.COLUMN_SUPPLIER_ID + ")");
+        // Looking an item up by SKU when its barcode is scanned, a single probe. UNIQUE still
+        // allows any number of items without a SKU, as NULLs are all distinct.
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS inventory_sku_idx ON " + InventoryEntry.TABLE_NAME
+                + " (" + InventoryEntry.COLUMN_PRODUCT_SKU + ")");
+        // Compacting the change log to the latest change of each item
+        db.execSQL("CREATE INDEX IF NOT EXISTS inventory_changes_item_idx ON " + ChangeEntry.TABLE_NAME
+                + " (" + ChangeEntry.COLUMN_ITEM_ID + ", " + ChangeEntry.COLUMN_VERSION + ")");
+        // Summing the movements of an item not folded yet, and listing its movements. Holding the
+        // delta too, the index answers the sum of quantitySql without reading the table.
+        db.execSQL("CREATE INDEX IF NOT EXISTS stock_movements_item_idx ON " + MovementEntry.TABLE_NAME
+                + " (" + MovementEntry.COLUMN_ITEM_ID + ", " + MovementEntry._ID + ", " + MovementEntry.COLUMN_DELTA + ")");
+        // Reading the sales of every item over a range of days, in day order. The primary keys
+        // only serve the sales of one item. Holding the units too, the indexes cover the reports.
+        db.execSQL("CREATE INDEX IF NOT EXISTS sales_daily_day_idx ON " + SalesEntry.DAILY_TABLE_NAME
+                + " (" + SalesEntry.COLUMN_DAY + ", " + SalesEntry.COLUMN_ITEM_ID + ", " + SalesEntry.COLUMN_UNITS_SOLD + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS sales_weekly_day_idx ON " + SalesEntry.WEEKLY_TABLE_NAME
+                + " (" + SalesEntry.COLUMN_DAY + ", " + SalesEntry.COLUMN_ITEM_ID + ", " + SalesEntry.COLUMN_UNITS_SOLD + ")");
+    }
+
+    /**
+     * Drop and create all triggers. Triggers hold no data, so they are simply created again
+     * after every upgrade instead of being migrated.
+     */
+    private void createTriggers(SQLiteDatabase db) {
+        // Keep the search table in sync with the inventory and supplier tables.
+        String supplierName = "(SELECT " + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + SupplierEntry.TABLE_NAME
+                + " WHERE " + SupplierEntry._ID + " = new." + InventoryEntry.COLUMN_SUPPLIER_ID + ")";
+
+        db.execSQL("DROP TRIGGER IF EXISTS inventory_search_insert");
+        db.execSQL("CREATE TRIGGER inventory_search_insert AFTER INSERT ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                + "INSERT INTO " + InventoryEntry.SEARCH_TABLE_NAME + " (docid, "
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ")"
+                + " VALUES (new." + InventoryEntry._ID + ", new." + InventoryEntry.COLUMN_PRODUCT_NAME
+                + ", " + supplierName + "); END");
+
+        // Only fire when one of the searchable columns changes, not on every sale.
+        db.execSQL("DROP TRIGGER IF EXISTS inventory_search_update");
+        db.execSQL("CREATE TRIGGER inventory_search_update AFTER UPDATE OF "
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_ID
+                + " ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + InventoryEntry.SEARCH_TABLE_NAME + " SET "
+                + InventoryEntry.COLUMN_PRODUCT_NAME + " = new." + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = " + supplierName
+                + " WHERE docid = old." + InventoryEntry._ID + "; END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS inventory_search_delete");
+        db.execSQL("CREATE TRIGGER inventory_search_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + InventoryEntry.SEARCH_TABLE_NAME + " WHERE docid = old." + InventoryEntry._ID + "; END");
+
+        // Keep the statistics row up to date. Each trigger adds the new row and takes away the
+        // old one, so a write costs one row update however big the table is.
+        db.execSQL("DROP TRIGGER IF EXISTS inventory_stats_insert");
+        db.execSQL("CREATE TRIGGER inventory_stats_insert AFTER INSERT ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + StatsEntry.TABLE_NAME + " SET " + statsDelta("new", "+") + "; END");
+
+        // Only fire when the quantity or the price changes, and not when the compactor folds
+        // movements into the quantity, which leaves the quantity read by quantitySql as it was.
+        db.execSQL("DROP TRIGGER IF EXISTS inventory_stats_update");
+        db.execSQL("CREATE TRIGGER inventory_stats_update AFTER UPDATE OF "
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS
+                + " ON " + InventoryEntry.TABLE_NAME + " WHEN " + notFolding() + " BEGIN "
+                + "UPDATE " + StatsEntry.TABLE_NAME + " SET " + statsDelta("old", "-") + "; "
+                + "UPDATE " + StatsEntry.TABLE_NAME + " SET " + statsDelta("new", "+") + "; END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS inventory_stats_delete");
+        db.execSQL("CREATE TRIGGER inventory_stats_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + StatsEntry.TABLE_NAME + " SET " + statsDelta("old", "-") + "; END");
+
+        // Renaming a supplier renames it in the search rows of all of its items.
+        db.execSQL("DROP TRIGGER IF EXISTS supplier_search_update");
+        db.execSQL("CREATE TRIGGER supplier_search_update AFTER UPDATE OF " + SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " ON " + SupplierEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + InventoryEntry.SEARCH_TABLE_NAME + " SET "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = new." + SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " WHERE docid IN (SELECT " + InventoryEntry._ID + " FROM " + InventoryEntry.TABLE_NAME
+                + " WHERE " + InventoryEntry.COLUMN_SUPPLIER_ID + " = new." + SupplierEntry._ID + "); END");
+
+        // Log every change to an item. A change to a supplier changes the supplier columns of
+        // all of its items.
+        db.execSQL("DROP TRIGGER IF EXISTS inventory_changes_insert");
+        db.execSQL("CREATE TRIGGER inventory_changes_insert AFTER INSERT ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                + logChange("new." + InventoryEntry._ID, ChangeEntry.OPERATION_INSERT) + "; END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS inventory_changes_update");
+        db.execSQL("CREATE TRIGGER inventory_changes_update AFTER UPDATE ON " + InventoryEntry.TABLE_NAME
+                + " WHEN " + notFolding() + " BEGIN "
+                + logChange("new." + InventoryEntry._ID, ChangeEntry.OPERATION_UPDATE) + "; END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS inventory_changes_delete");
+        db.execSQL("CREATE TRIGGER inventory_changes_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                + logChange("old." + InventoryEntry._ID, ChangeEntry.OPERATION_DELETE) + "; END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS supplier_changes_update");
+        db.execSQL("CREATE TRIGGER supplier_changes_update AFTER UPDATE ON " + SupplierEntry.TABLE_NAME + " BEGIN "
+                + "INSERT INTO " + ChangeEntry.TABLE_NAME + " (" + ChangeEntry.COLUMN_ITEM_ID + ", "
+                + ChangeEntry.COLUMN_OPERATION + ") SELECT " + InventoryEntry._ID + ", " + ChangeEntry.OPERATION_UPDATE
+                + " FROM " + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_SUPPLIER_ID
+                + " = new." + SupplierEntry._ID + "; END");
+
+        // A stock movement changes the quantity of its item, like an update of the item row did
+        // before there were movements. The price is read from the item, and the quantity before
+        // the movement is the quantity after it minus the delta.
+        String movementItem = " FROM " + InventoryEntry.TABLE_NAME + " i WHERE i." + InventoryEntry._ID
+                + " = new." + MovementEntry.COLUMN_ITEM_ID;
+        db.execSQL("DROP TRIGGER IF EXISTS stock_movements_stats_insert");
+        db.execSQL("CREATE TRIGGER stock_movements_stats_insert AFTER INSERT ON " + MovementEntry.TABLE_NAME
+                + " WHEN new." + MovementEntry.COLUMN_KIND + " != " + MOVEMENT_KIND_FOLD + " BEGIN "
+                + "UPDATE " + StatsEntry.TABLE_NAME + " SET "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS + " + new."
+                + MovementEntry.COLUMN_DELTA + ", "
+                + StatsEntry.COLUMN_TOTAL_VALUE_CENTS + " = " + StatsEntry.COLUMN_TOTAL_VALUE_CENTS
+                + " + (SELECT i." + InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS + " * new." + MovementEntry.COLUMN_DELTA
+                + movementItem + "), "
+                + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " + (SELECT (" + quantitySql("i") + " <= 0) - (" + quantitySql("i") + " - new."
+                + MovementEntry.COLUMN_DELTA + " <= 0)" + movementItem + "); END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS stock_movements_changes_insert");
+        db.execSQL("CREATE TRIGGER stock_movements_changes_insert AFTER INSERT ON " + MovementEntry.TABLE_NAME
+                + " WHEN new." + MovementEntry.COLUMN_KIND + " != " + MOVEMENT_KIND_FOLD + " BEGIN "
+                + logChange("new." + MovementEntry.COLUMN_ITEM_ID, ChangeEntry.OPERATION_UPDATE) + "; END");
+
+        // Raise or clear the low stock alert of the item written. Only the quantity and the
+        // threshold decide whether an item is running low, and folding doesn't change either.
+        db.execSQL("DROP TRIGGER IF EXISTS low_stock_insert");
+        db.execSQL("CREATE TRIGGER low_stock_insert AFTER INSERT ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                + checkLowStock("new." + InventoryEntry._ID, SQL_NOW_MILLIS) + " END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS low_stock_update");
+        db.execSQL("CREATE TRIGGER low_stock_update AFTER UPDATE OF "
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_REORDER_THRESHOLD
+                + " ON " + InventoryEntry.TABLE_NAME + " WHEN " + notFolding() + " BEGIN "
+                + checkLowStock("new." + InventoryEntry._ID, SQL_NOW_MILLIS) + " END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS low_stock_delete");
+        db.execSQL("CREATE TRIGGER low_stock_delete AFTER DELETE ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + LowStockEntry.TABLE_NAME + " WHERE " + LowStockEntry.COLUMN_ITEM_ID
+                + " = old." + InventoryEntry._ID + "; END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS stock_movements_low_stock_insert");
+        db.execSQL("CREATE TRIGGER stock_movements_low_stock_insert AFTER INSERT ON " + MovementEntry.TABLE_NAME
+                + " WHEN new." + MovementEntry.COLUMN_KIND + " != " + MOVEMENT_KIND_FOLD + " BEGIN "
+                + checkLowStock("new." + MovementEntry.COLUMN_ITEM_ID, "new." + MovementEntry.COLUMN_CREATED_MILLIS)
+                + " END");
+
+        // Add every sale to the rollups of its day and week, in the transaction of the sale.
+        String saleDay = daySql("new." + MovementEntry.COLUMN_CREATED_MILLIS);
+        db.execSQL("DROP TRIGGER IF EXISTS stock_movements_sales_insert");
+        db.execSQL("CREATE TRIGGER stock_movements_sales_insert AFTER INSERT ON " + MovementEntry.TABLE_NAME
+                + " WHEN new." + MovementEntry.COLUMN_KIND + " = " + MovementEntry.KIND_SALE + " BEGIN "
+                + addSale(SalesEntry.DAILY_TABLE_NAME, saleDay) + " "
+                + addSale(SalesEntry.WEEKLY_TABLE_NAME, weekSql(saleDay)) + " END");
+    }
+
+    /**
+     * Build the statements of a trigger adding the units of the sale in "new" to the row of its
+     * item and the given day of a rollup table. SQLite has no upsert before version 3.24, so the
+     * row is created empty if it's missing, then updated, two primary key probes either way.
+     */
+    private static String addSale(String table, String day) {
+        String itemId = "new." + MovementEntry.COLUMN_ITEM_ID;
+        return "INSERT OR IGNORE INTO " + table + " (" + SalesEntry.COLUMN_ITEM_ID + ", " + SalesEntry.COLUMN_DAY
+                + ", " + SalesEntry.COLUMN_UNITS_SOLD + ") VALUES (" + itemId + ", " + day + ", 0); "
+                + "UPDATE " + table + " SET " + SalesEntry.COLUMN_UNITS_SOLD + " = " + SalesEntry.COLUMN_UNITS_SOLD
+                + " - new." + MovementEntry.COLUMN_DELTA + " WHERE " + SalesEntry.COLUMN_ITEM_ID + " = " + itemId
+                + " AND " + SalesEntry.COLUMN_DAY + " = " + day + ";";
+    }
+
+    /**
+     * Build the statements of a trigger raising the low stock alert of one item if it is running
+     * low, or clearing it if it isn't. Only that item is read, by its primary key, with its
+     * movements not folded yet. An alert already raised is left alone, so it keeps its time.
+     */
+    private static String checkLowStock(String itemId, String alertMillis) {
+        String lowItem = " FROM " + InventoryEntry.TABLE_NAME + " i WHERE i." + InventoryEntry._ID + " = " + itemId
+                + " AND " + isLowSql("i");
+        return "DELETE FROM " + LowStockEntry.TABLE_NAME + " WHERE " + LowStockEntry.COLUMN_ITEM_ID + " = " + itemId
+                + " AND NOT EXISTS (SELECT 1" + lowItem + "); "
+                + "INSERT OR IGNORE INTO " + LowStockEntry.TABLE_NAME + " (" + LowStockEntry.COLUMN_ITEM_ID + ", "
+                + LowStockEntry.COLUMN_ALERT_MILLIS + ") SELECT i." + InventoryEntry._ID + ", " + alertMillis
+                + lowItem + ";";
+    }
+
+    /**
+     * Build the WHEN clause of the triggers on updates of the inventory table that must not fire
+     * when the compactor folds movements into the quantity. Only the compactor moves
+     * {@link #COLUMN_APPLIED_MOVEMENT_ID}.
+     */
+    private static String notFolding() {
+        return "old." + COLUMN_APPLIED_MOVEMENT_ID + " = new." + COLUMN_APPLIED_MOVEMENT_ID;
+    }
+
+    /**
+     * Build the statement of a trigger adding a change of the given item to the log.
+     */
+    private static String logChange(String itemId, int operation) {
+        return "INSERT INTO " + ChangeEntry.TABLE_NAME + " (" + ChangeEntry.COLUMN_ITEM_ID + ", "
+                + ChangeEntry.COLUMN_OPERATION + ") VALUES (" + itemId + ", " + operation + ")";
+    }
+
+    /**
+     * Build the SET clause adding ("+") or taking away ("-") the "new" or "old" row of a trigger
+     * from the statistics, with the movements of the item not folded yet.
+     */
+    private static String statsDelta(String row, String sign) {
+        String quantity = quantitySql(row);
+        String price = row + "." + InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS;
+        return StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS + " " + sign + " " + quantity + ", "
+                + StatsEntry.COLUMN_TOTAL_VALUE_CENTS + " = " + StatsEntry.COLUMN_TOTAL_VALUE_CENTS + " " + sign
+                + " " + price + " * " + quantity + ", "
+                + StatsEntry.COLUMN_ITEM_COUNT + " = " + StatsEntry.COLUMN_ITEM_COUNT + " " + sign + " 1, "
+                + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " " + sign
+                + " (" + quantity + " <= 0)";
     }
-} 
\ No newline at end of file
+}
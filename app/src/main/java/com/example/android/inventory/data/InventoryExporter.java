@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.content.ContentProvider;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the whole inventory to the pipe opened by {@link InventoryProvider#openTypedAssetFile},
+ * as CSV or JSON. The rows are read one page at a time, ordered by _id, and written out as they
+ * are read, so exporting never holds more than a page of rows however big the table is.
+ * <p>
+ * Each page is read on its own, so items written to while the export runs may be exported
+ * before or after the change.
+ */
+final class InventoryExporter implements ContentProvider.PipeDataWriter<String> {
+
+    private static final String LOG_TAG = InventoryExporter.class.getSimpleName();
+
+    /**
+     * Number of rows read by each query
+     */
+    static final int PAGE_SIZE = 1000;
+
+    /**
+     * Read a page of items with their supplier, after a given _id.
+     */
+    static final String SQL_EXPORT_PAGE = "SELECT " + InventoryEntry._ID + ", "
+            + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS + ", "
+            + InventoryDbHelper.quantitySql(InventoryEntry.TABLE_NAME) + ", "
+            + supplierColumn(SupplierEntry.COLUMN_SUPPLIER_NAME) + ", "
+            + supplierColumn(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER) + ", "
+            + InventoryEntry.COLUMN_PRODUCT_SKU
+            + " FROM " + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry._ID + " > ?"
+            + " ORDER BY " + InventoryEntry._ID + " LIMIT " + PAGE_SIZE;
+
+    /**
+     * The names of the columns of {@link #SQL_EXPORT_PAGE} in the exported files. The CSV files
+     * can be imported again, see {@link InventoryEntry#CSV_COLUMNS}.
+     */
+    private static final String[] CSV_HEADER = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.CSV_COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+            InventoryEntry.COLUMN_PRODUCT_SKU
+    };
+    private static final String[] JSON_NAMES = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+            InventoryEntry.COLUMN_PRODUCT_SKU
+    };
+
+    private final SQLiteOpenHelper dbHelper;
+
+    InventoryExporter(SQLiteOpenHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    private static String supplierColumn(String column) {
+        return "(SELECT " + column + " FROM " + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry.TABLE_NAME
+                + "." + SupplierEntry._ID + " = " + InventoryEntry.TABLE_NAME + "." + InventoryEntry.COLUMN_SUPPLIER_ID + ")";
+    }
+
+    /**
+     * Called on a background thread with the write end of the pipe. The mime type is either
+     * {@link InventoryEntry#MIME_TYPE_CSV} or {@link InventoryEntry#MIME_TYPE_JSON}.
+     */
+    @Override
+    public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType, Bundle opts, String format) {
+        // The pipe is closed by the caller once this returns.
+        try {
+            write(new FileOutputStream(output.getFileDescriptor()), format);
+        } catch (IOException e) {
+            // Most likely the reader closed its end of the pipe.
+            Log.w(LOG_TAG, "Export of " + uri + " stopped", e);
+        }
+    }
+
+    /**
+     * Write the whole inventory to a stream, as {@link InventoryEntry#MIME_TYPE_JSON} or else
+     * {@link InventoryEntry#MIME_TYPE_CSV}. The stream is flushed but not closed.
+     */
+    void write(OutputStream out, String format) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, Charset.forName("UTF-8")));
+        if (InventoryEntry.MIME_TYPE_JSON.equals(format)) {
+            writeJson(writer);
+        } else {
+            writeCsv(writer);
+        }
+        writer.flush();
+    }
+
+    private void writeCsv(Writer writer) throws IOException {
+        for (int i = 0; i < CSV_HEADER.length; i++) {
+            if (i != 0) {
+                writer.write(',');
+            }
+            writer.write(CSV_HEADER[i]);
+        }
+        writer.write("\r\n");
+
+        long lastId = -1;
+        while (true) {
+            Cursor cursor = queryPage(lastId);
+            try {
+                boolean lastPage = cursor.getCount() < PAGE_SIZE;
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    writer.write(Long.toString(lastId));
+                    writer.write(',');
+                    writeCsvField(writer, cursor.getString(1));
+                    writer.write(',');
+                    writer.write(InventoryEntry.formatPrice(cursor.getLong(2)));
+                    writer.write(',');
+                    writer.write(Integer.toString(cursor.getInt(3)));
+                    writer.write(',');
+                    writeCsvField(writer, cursor.getString(4));
+                    writer.write(',');
+                    writeCsvField(writer, cursor.getString(5));
+                    writer.write(',');
+                    writeCsvField(writer, cursor.getString(6));
+                    writer.write("\r\n");
+                }
+                if (lastPage) {
+                    return;
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Write a CSV field, quoted if it holds a comma, a quote or a line break.
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private void writeJson(Writer writer) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.beginArray();
+        long lastId = -1;
+        while (true) {
+            Cursor cursor = queryPage(lastId);
+            try {
+                boolean lastPage = cursor.getCount() < PAGE_SIZE;
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    json.beginObject();
+                    json.name(JSON_NAMES[0]).value(lastId);
+                    json.name(JSON_NAMES[1]).value(cursor.getString(1));
+                    json.name(JSON_NAMES[2]).value(cursor.getLong(2));
+                    json.name(JSON_NAMES[3]).value(cursor.getInt(3));
+                    json.name(JSON_NAMES[4]).value(cursor.getString(4));
+                    json.name(JSON_NAMES[5]).value(cursor.getString(5));
+                    json.name(JSON_NAMES[6]).value(cursor.getString(6));
+                    json.endObject();
+                }
+                if (lastPage) {
+                    break;
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        json.endArray();
+        json.flush();
+    }
+
+    private Cursor queryPage(long afterId) {
+        return dbHelper.getReadableDatabase().rawQuery(SQL_EXPORT_PAGE, new String[]{String.valueOf(afterId)});
+    }
+}
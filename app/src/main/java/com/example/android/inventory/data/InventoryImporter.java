@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.CancellationSignal;
+
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Imports items from a CSV file, such as the price list of a supplier. The first line names the
+ * columns, see {@link InventoryEntry#CSV_COLUMNS}, and each following line is one item.
+ * <p>
+ * The file is streamed, so files of any size are imported with the same memory. Lines are checked
+ * with the same rules as {@link InventoryProvider#insert}, and inserted in chunks of
+ * {@link InventoryProvider#IMPORT_CHUNK_SIZE} lines, each in its own transaction. A line that
+ * fails the checks is reported and skipped, the other lines are still imported.
+ * Must not be called from the main thread.
+ */
+public final class InventoryImporter {
+
+    /**
+     * The longest line accepted, in characters
+     */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * Told about the progress of an import, on the thread running it.
+     */
+    public interface Listener {
+        /**
+         * Called after each chunk of lines was committed.
+         */
+        void onProgress(long linesRead, long itemsImported);
+
+        /**
+         * Called for each line that wasn't imported.
+         *
+         * @param lineNumber The number of the line in the file, starting at 1
+         * @param reason     Why the line was rejected
+         */
+        void onLineRejected(long lineNumber, String reason);
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static final class Result {
+        public final long linesRead;
+        public final long itemsImported;
+        public final long linesRejected;
+
+        Result(long linesRead, long itemsImported, long linesRejected) {
+            this.linesRead = linesRead;
+            this.itemsImported = itemsImported;
+            this.linesRejected = linesRejected;
+        }
+    }
+
+    private final ContentResolver contentResolver;
+
+    public InventoryImporter(Context context) {
+        contentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Import the items of the CSV file at the given URI, encoded in UTF-8. If the import is
+     * canceled or fails, the chunks committed so far stay imported.
+     *
+     * @param source             The URI of the file, opened with {@link ContentResolver#openInputStream}
+     * @param listener           Told about the progress and the rejected lines
+     * @param cancellationSignal Cancels the import, or null
+     * @throws IOException if the file can't be read or isn't a CSV file with the expected columns
+     */
+    public Result importCsv(Uri source, Listener listener, CancellationSignal cancellationSignal) throws IOException {
+        InputStream in = contentResolver.openInputStream(source);
+        if (in == null) {
+            throw new FileNotFoundException("Cannot open " + source);
+        }
+        ContentProviderClient client = contentResolver.acquireContentProviderClient(InventoryContract.CONTENT_AUTHORITY);
+        try {
+            // The provider runs in this process, so the rows are written straight to its database.
+            InventoryProvider provider = (InventoryProvider) client.getLocalContentProvider();
+            CsvReader csv = new CsvReader(new InputStreamReader(in, "UTF-8"), MAX_LINE_LENGTH);
+            return provider.importItems(csv, listener, cancellationSignal);
+        } finally {
+            client.release();
+            in.close();
+        }
+    }
+}
@@ -15,17 +15,54 @@
  */
 package com.example.android.inventory.data;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.example.android.inventory.R;
+import com.example.android.inventory.data.InventoryContract.ChangeEntry;
 import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryContract.LowStockEntry;
+import com.example.android.inventory.data.InventoryContract.MetricsEntry;
+import com.example.android.inventory.data.InventoryContract.MovementEntry;
+import com.example.android.inventory.data.InventoryContract.SalesEntry;
+import com.example.android.inventory.data.InventoryContract.StatsEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
+
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * {@link ContentProvider} for Inventory app.
@@ -47,6 +84,91 @@ public class InventoryProvider extends ContentProvider {
      */
     private static final int INVENTORY_ID = 101;
 
+    /**
+     * URI matcher code for the content URI used to sell units of a single item
+     */
+    private static final int INVENTORY_SELL = 102;
+
+    /**
+     * URI matcher code for the content URI used to search the inventory table
+     */
+    private static final int INVENTORY_SEARCH = 103;
+
+    /**
+     * URI matcher code for the content URI of the inventory statistics
+     */
+    private static final int INVENTORY_STATS = 104;
+
+    /**
+     * URI matcher code for the content URI exporting the inventory as a file
+     */
+    private static final int INVENTORY_EXPORT = 105;
+
+    /**
+     * URI matcher code for the content URI of the change log
+     */
+    private static final int INVENTORY_CHANGES = 106;
+
+    /**
+     * URI matcher code for the content URI for a single item addressed by its SKU
+     */
+    private static final int INVENTORY_SKU = 107;
+
+    /**
+     * URI matcher code for the content URI used to sell units of a single item addressed by its SKU
+     */
+    private static final int INVENTORY_SKU_SELL = 108;
+
+    /**
+     * URI matcher code for the content URI of the stock movements of a single item
+     */
+    private static final int INVENTORY_MOVEMENTS = 109;
+
+    /**
+     * URI matcher code for the content URI listing the items running low
+     */
+    private static final int INVENTORY_LOW_STOCK = 110;
+
+    /**
+     * URI matcher code for the content URI of the units sold of every item
+     */
+    private static final int INVENTORY_SALES = 111;
+
+    /**
+     * URI matcher code for the content URI of the units sold of a single item
+     */
+    private static final int INVENTORY_ITEM_SALES = 112;
+
+    /**
+     * URI matcher code for the content URI of how fast the items sell
+     */
+    private static final int INVENTORY_VELOCITY = 113;
+
+    /**
+     * URI matcher code for the content URI for the suppliers table
+     */
+    private static final int SUPPLIERS = 200;
+
+    /**
+     * URI matcher code for the content URI for a single supplier in the suppliers table
+     */
+    private static final int SUPPLIER_ID = 201;
+
+    /**
+     * URI matcher code for the content URI for the items of a single supplier
+     */
+    private static final int SUPPLIER_ITEMS = 202;
+
+    /**
+     * URI matcher code for the content URI of the provider metrics
+     */
+    private static final int METRICS = 300;
+
+    /**
+     * URI matcher code for the content URI of the slow query log
+     */
+    private static final int METRICS_SLOW_QUERIES = 301;
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -73,37 +195,500 @@ public class InventoryProvider extends ContentProvider {
         // For example, "content://com.example.android.inventory/inventory/3" matches, but
         // "content://com.example.android.inventory/inventory" (without a number at the end) doesn't match.
         sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_INVENTORY + "/#", INVENTORY_ID);
+
+        // The content URI of the form "content://com.example.android.inventory/inventory/#/sell" will map
+        // to the integer code {@link #INVENTORY_SELL}. An update on this URI sells units of ONE item.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/#/" + InventoryContract.PATH_SELL, INVENTORY_SELL);
+
+        // The content URI of the form "content://com.example.android.inventory/inventory/search" will map
+        // to the integer code {@link #INVENTORY_SEARCH}. This URI is used to search the inventory table.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_SEARCH, INVENTORY_SEARCH);
+
+        // The content URI of the form "content://com.example.android.inventory/inventory/stats" will map
+        // to the integer code {@link #INVENTORY_STATS}. This URI reads the single row of statistics.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_STATS, INVENTORY_STATS);
+
+        // The content URI of the form "content://com.example.android.inventory/inventory/export" will map
+        // to the integer code {@link #INVENTORY_EXPORT}. This URI is opened as a file, not queried.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_EXPORT, INVENTORY_EXPORT);
+
+        // The content URI of the form "content://com.example.android.inventory/inventory/changes" will map
+        // to the integer code {@link #INVENTORY_CHANGES}. This URI reads the change log.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_CHANGES, INVENTORY_CHANGES);
+
+        // The content URIs of the form "content://com.example.android.inventory/inventory/sku/*" and
+        // "content://com.example.android.inventory/inventory/sku/*/sell" map to the codes {@link #INVENTORY_SKU}
+        // and {@link #INVENTORY_SKU_SELL}, to access or sell ONE item by its SKU. The "*" wildcard
+        // matches any text, as a barcode is not always a number.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_SKU + "/*", INVENTORY_SKU);
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_SKU + "/*/" + InventoryContract.PATH_SELL,
+                INVENTORY_SKU_SELL);
+
+        // The content URI of the form "content://com.example.android.inventory/inventory/#/movements" will
+        // map to the integer code {@link #INVENTORY_MOVEMENTS}. This URI lists or adds the stock movements
+        // of ONE item.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/#/" + InventoryContract.PATH_MOVEMENTS, INVENTORY_MOVEMENTS);
+
+        // The content URI of the form "content://com.example.android.inventory/inventory/low_stock" will map
+        // to the integer code {@link #INVENTORY_LOW_STOCK}. This URI lists the items with a low stock alert.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_LOW_STOCK, INVENTORY_LOW_STOCK);
+
+        // The content URIs of the form "content://com.example.android.inventory/inventory/sales",
+        // "content://com.example.android.inventory/inventory/#/sales" and
+        // "content://com.example.android.inventory/inventory/sales/velocity" map to the codes
+        // {@link #INVENTORY_SALES}, {@link #INVENTORY_ITEM_SALES} and {@link #INVENTORY_VELOCITY}, to read
+        // the units sold of ALL items or ONE item, and how fast the items sell.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_SALES, INVENTORY_SALES);
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/#/" + InventoryContract.PATH_SALES, INVENTORY_ITEM_SALES);
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_SALES + "/"
+                        + InventoryContract.PATH_VELOCITY, INVENTORY_VELOCITY);
+
+        // The content URIs of the form "content://com.example.android.inventory/suppliers" and
+        // "content://com.example.android.inventory/suppliers/#" map to the codes {@link #SUPPLIERS} and
+        // {@link #SUPPLIER_ID}, to access MULTIPLE or ONE single row of the suppliers table.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+
+        // The content URI of the form "content://com.example.android.inventory/suppliers/#/inventory" will map
+        // to the integer code {@link #SUPPLIER_ITEMS}. This URI is used to list the items of ONE supplier.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_SUPPLIERS + "/#/" + InventoryContract.PATH_INVENTORY, SUPPLIER_ITEMS);
+
+        // The content URIs of the form "content://com.example.android.inventory/metrics" and
+        // "content://com.example.android.inventory/metrics/slow_queries" map to the codes {@link #METRICS}
+        // and {@link #METRICS_SLOW_QUERIES}, to read the counts of the calls and the slow query log.
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_METRICS, METRICS);
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_METRICS + "/" + InventoryContract.PATH_SLOW_QUERIES, METRICS_SLOW_QUERIES);
     }
 
+    /**
+     * Maps the inventory columns clients can ask for to the SQL reading them. The supplier columns
+     * are looked up in the suppliers table by primary key, and only for the queries that ask for them.
+     * The quantity adds the stock movements not folded into the item yet.
+     */
+    private static final HashMap<String, String> sInventoryProjectionMap = new HashMap<String, String>();
+
+    static {
+        sInventoryProjectionMap.put(InventoryEntry._ID, InventoryEntry._ID);
+        sInventoryProjectionMap.put(InventoryEntry.COLUMN_PRODUCT_NAME, InventoryEntry.COLUMN_PRODUCT_NAME);
+        sInventoryProjectionMap.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS);
+        sInventoryProjectionMap.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+                InventoryDbHelper.quantitySql(InventoryEntry.TABLE_NAME) + " AS " + InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+        sInventoryProjectionMap.put(InventoryEntry.COLUMN_PRODUCT_SKU, InventoryEntry.COLUMN_PRODUCT_SKU);
+        sInventoryProjectionMap.put(InventoryEntry.COLUMN_REORDER_THRESHOLD, InventoryEntry.COLUMN_REORDER_THRESHOLD);
+        sInventoryProjectionMap.put(InventoryEntry.COLUMN_SUPPLIER_ID, InventoryEntry.COLUMN_SUPPLIER_ID);
+        sInventoryProjectionMap.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+                supplierColumn(SupplierEntry.COLUMN_SUPPLIER_NAME, InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME));
+        sInventoryProjectionMap.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+                supplierColumn(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER));
+    }
+
+    /**
+     * Maps the change log columns clients can ask for to the SQL reading them, with the current
+     * values of the item joined from the inventory table.
+     */
+    private static final HashMap<String, String> sChangeProjectionMap = new HashMap<String, String>();
+
+    static {
+        sChangeProjectionMap.put(ChangeEntry.COLUMN_VERSION, ChangeEntry.COLUMN_VERSION);
+        sChangeProjectionMap.put(ChangeEntry.COLUMN_ITEM_ID, ChangeEntry.COLUMN_ITEM_ID);
+        sChangeProjectionMap.put(ChangeEntry.COLUMN_OPERATION, ChangeEntry.COLUMN_OPERATION);
+        for (String column : new String[]{InventoryEntry.COLUMN_PRODUCT_NAME, InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+                InventoryEntry.COLUMN_PRODUCT_SKU, InventoryEntry.COLUMN_SUPPLIER_ID}) {
+            sChangeProjectionMap.put(column, InventoryEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        sChangeProjectionMap.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+                sInventoryProjectionMap.get(InventoryEntry.COLUMN_PRODUCT_QUANTITY));
+        sChangeProjectionMap.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+                sInventoryProjectionMap.get(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME));
+        sChangeProjectionMap.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+                sInventoryProjectionMap.get(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER));
+    }
+
+    /**
+     * Maps the low stock columns clients can ask for to the SQL reading them: the columns of the
+     * item, and the time of its alert.
+     */
+    private static final HashMap<String, String> sLowStockProjectionMap = new HashMap<String, String>(sInventoryProjectionMap);
+
+    static {
+        sLowStockProjectionMap.put(LowStockEntry.COLUMN_ALERT_MILLIS, LowStockEntry.COLUMN_ALERT_MILLIS);
+    }
+
+    /**
+     * The low stock alerts and their items. The alerts table only holds the items running low,
+     * so listing them reads those few rows and probes the inventory table by primary key for
+     * each, instead of checking the quantity of every item.
+     */
+    private static final String LOW_STOCK_TABLES = LowStockEntry.TABLE_NAME + " JOIN " + InventoryEntry.TABLE_NAME
+            + " ON " + InventoryEntry.TABLE_NAME + "." + InventoryEntry._ID + " = " + LowStockEntry.COLUMN_ITEM_ID;
+
+    /**
+     * The change log and the current row of each changed item, if it still exists
+     */
+    private static final String CHANGES_TABLES = ChangeEntry.TABLE_NAME + " LEFT JOIN " + InventoryEntry.TABLE_NAME
+            + " ON " + InventoryEntry.TABLE_NAME + "." + InventoryEntry._ID + " = " + ChangeEntry.COLUMN_ITEM_ID;
+
+    /**
+     * Most changes kept in the log once it is compacted, see {@link #compactChanges}
+     */
+    static final int CHANGE_LOG_MAX_SIZE = 50000;
+
+    /**
+     * The columns kept for each item in {@link #itemCache}, so a cached row answers any projection
+     */
+    private static final String[] ITEM_CACHE_COLUMNS = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_SKU,
+            InventoryEntry.COLUMN_REORDER_THRESHOLD,
+            InventoryEntry.COLUMN_SUPPLIER_ID,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER
+    };
+
+    /**
+     * Number of items kept in {@link #itemCache}
+     */
+    private static final int ITEM_CACHE_SIZE = 100;
+
+    /**
+     * Build the SQL reading a column of the supplier of an item under the given alias.
+     */
+    private static String supplierColumn(String column, String alias) {
+        return "(SELECT " + column + " FROM " + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry.TABLE_NAME
+                + "." + SupplierEntry._ID + " = " + InventoryEntry.TABLE_NAME + "." + InventoryEntry.COLUMN_SUPPLIER_ID
+                + ") AS " + alias;
+    }
+
+    /**
+     * Add a stock movement of one item, but only if the item exists and the movement leaves a
+     * quantity >= 0. The item row itself is only read.
+     */
+    static final String SQL_ADD_MOVEMENT = "INSERT INTO " + MovementEntry.TABLE_NAME + " ("
+            + MovementEntry.COLUMN_ITEM_ID + ", " + MovementEntry.COLUMN_KIND + ", " + MovementEntry.COLUMN_DELTA + ", "
+            + MovementEntry.COLUMN_CREATED_MILLIS + ") SELECT " + InventoryEntry._ID + ", ?, ?, ? FROM "
+            + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry._ID + " = ? AND "
+            + InventoryDbHelper.quantitySql(InventoryEntry.TABLE_NAME) + " + ? >= 0";
+
+    /**
+     * Find where the compactor stopped folding the stock movements: the last fold marker, found
+     * by reading the movements table backwards from its end.
+     */
+    static final String SQL_LAST_FOLD = "SELECT " + MovementEntry._ID + " FROM " + MovementEntry.TABLE_NAME
+            + " WHERE " + MovementEntry.COLUMN_KIND + " = " + InventoryDbHelper.MOVEMENT_KIND_FOLD
+            + " ORDER BY " + MovementEntry._ID + " DESC LIMIT 1";
+
+    /**
+     * Read the _id of the last stock movement, or 0 if there is none.
+     */
+    static final String SQL_LAST_MOVEMENT = "SELECT IFNULL(MAX(" + MovementEntry._ID + "), 0) FROM "
+            + MovementEntry.TABLE_NAME;
+
+    /**
+     * Fold the stock movements into the quantity of the items that moved after the given
+     * movement _id. Every movement up to the given last _id is folded.
+     */
+    static final String SQL_FOLD_MOVEMENTS = "UPDATE " + InventoryEntry.TABLE_NAME + " SET "
+            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = " + InventoryDbHelper.quantitySql(InventoryEntry.TABLE_NAME)
+            + ", " + InventoryDbHelper.COLUMN_APPLIED_MOVEMENT_ID + " = ? WHERE " + InventoryEntry._ID + " IN (SELECT "
+            + MovementEntry.COLUMN_ITEM_ID + " FROM " + MovementEntry.TABLE_NAME + " WHERE " + MovementEntry._ID + " > ?)";
+
+    /**
+     * Insert one item with its supplier _id, used to import many items.
+     */
+    private static final String SQL_INSERT_ITEM = "INSERT INTO " + InventoryEntry.TABLE_NAME + " ("
+            + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS + ", "
+            + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_SUPPLIER_ID + ", "
+            + InventoryEntry.COLUMN_PRODUCT_SKU + ") VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * Number of lines of an imported file committed in each transaction
+     */
+    static final int IMPORT_CHUNK_SIZE = 1000;
+
+    /**
+     * Number of suppliers an import remembers by name
+     */
+    private static final int IMPORT_SUPPLIER_CACHE_SIZE = 256;
+
+    /**
+     * Selection for the rows after a given (name, _id) key when paging by name.
+     */
+    static final String NAME_PAGE_SELECTION =
+            InventoryEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE >= ? AND ("
+                    + InventoryEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE > ? OR " + InventoryEntry._ID + " > ?)";
+
+    /**
+     * Selection for the rows after a given _id when paging by _id.
+     */
+    static final String ID_PAGE_SELECTION = InventoryEntry._ID + " > ?";
+
+    /**
+     * Selection for the items matching a full text search query.
+     */
+    static final String SEARCH_SELECTION = InventoryEntry._ID + " IN (SELECT docid FROM "
+            + InventoryEntry.SEARCH_TABLE_NAME + " WHERE " + InventoryEntry.SEARCH_TABLE_NAME + " MATCH ?)";
+
+    /**
+     * Sort order matching {@link #NAME_PAGE_SELECTION}.
+     */
+    static final String NAME_PAGE_SORT_ORDER =
+            InventoryEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE, " + InventoryEntry._ID;
+
+    /**
+     * Find the _id of the item with a given SKU, a single probe of its unique index.
+     */
+    static final String SQL_ITEM_ID_BY_SKU = "SELECT " + InventoryEntry._ID + " FROM "
+            + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_PRODUCT_SKU + " = ?";
+
+    /**
+     * Selections of the first and last day of the sales rollups read, and their default order.
+     */
+    static final String SALES_FROM_DAY_SELECTION = SalesEntry.COLUMN_DAY + " >= ?";
+    static final String SALES_TO_DAY_SELECTION = SalesEntry.COLUMN_DAY + " <= ?";
+    static final String SALES_SORT_ORDER = SalesEntry.COLUMN_DAY + ", " + SalesEntry.COLUMN_ITEM_ID;
+
+    /**
+     * Read back the quantity of one item.
+     */
+    static final String SQL_ITEM_QUANTITY = "SELECT " + InventoryDbHelper.quantitySql(InventoryEntry.TABLE_NAME)
+            + " FROM " + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry._ID + " = ?";
+
+    /**
+     * The MIME types the inventory can be exported as, the default first
+     */
+    private static final String[] EXPORT_MIME_TYPES = {InventoryEntry.MIME_TYPE_CSV, InventoryEntry.MIME_TYPE_JSON};
+
+    /**
+     * The storage profile the database is opened with, or null for the one named by the
+     * storage_profile resource
+     */
+    private final StorageProfile storageProfile;
+
     /**
      * Database helper object
      */
     private InventoryDbHelper dbHelper;
 
+    /**
+     * Writes the exported files
+     */
+    private InventoryExporter exporter;
+
+    /**
+     * Sends the change notifications, merging the ones sent in quick succession
+     */
+    private NotificationCoalescer notificationCoalescer;
+
+    /**
+     * Folds the stock movements into the items in the background
+     */
+    private LedgerCompactor ledgerCompactor;
+
+    /**
+     * The items read recently through their content URI. Rows are dropped once their write has
+     * committed, see {@link #invalidateItem}. The hit and miss counts are part of {@link #dump}.
+     */
+    private final ItemRowCache itemCache = new ItemRowCache(ITEM_CACHE_COLUMNS, ITEM_CACHE_SIZE);
+
+    /**
+     * Counts the calls by URI and operation and logs the slow queries, while turned on. Part of
+     * {@link #dump}, and readable through {@link MetricsEntry#CONTENT_URI}.
+     */
+    private ProviderMetrics metrics;
+
+    /**
+     * Tracks whether the current thread is inside {@link #bulkInsert} or {@link #applyBatch}.
+     * While a batch is running, the individual insert/update/delete calls only record which
+     * URIs changed, and the notifications are sent once the transaction has committed.
+     */
+    private final ThreadLocal<BatchState> batchState = new ThreadLocal<BatchState>();
+
+    /**
+     * Per-thread bookkeeping for a running batch.
+     */
+    private static final class BatchState {
+        final Set<Uri> changedUris = new LinkedHashSet<Uri>();
+        final Set<Long> staleItemIds = new HashSet<Long>();
+        final Set<Long> staleSupplierIds = new HashSet<Long>();
+        boolean allItemsStale;
+        int movementsAdded;
+    }
+
+    /**
+     * Constructs the provider the system creates, opening the database with the storage profile
+     * named by the storage_profile resource.
+     */
+    public InventoryProvider() {
+        this(null);
+    }
+
+    /**
+     * Constructs a provider opening the database with the given storage profile, so benchmarks
+     * can compare the profiles.
+     */
+    InventoryProvider(StorageProfile storageProfile) {
+        this.storageProfile = storageProfile;
+    }
+
     @Override
     public boolean onCreate() {
-        dbHelper = new InventoryDbHelper(getContext());
+        dbHelper = storageProfile == null ? new InventoryDbHelper(getContext())
+                : new InventoryDbHelper(getContext(), storageProfile);
+        exporter = new InventoryExporter(dbHelper);
+        notificationCoalescer = new NotificationCoalescer(getContext().getContentResolver());
+        ledgerCompactor = new LedgerCompactor(this);
+        metrics = new ProviderMetrics(getContext().getResources().getBoolean(R.bool.provider_metrics),
+                getContext().getResources().getInteger(R.integer.slow_query_millis));
+        // Fold what the last run of the app left behind.
+        ledgerCompactor.onMovementsAdded(0);
         return true;
     }
 
+    /**
+     * Stop folding the stock movements and close the database, so a test can delete it. The
+     * system never calls this.
+     */
+    @Override
+    public void shutdown() {
+        ledgerCompactor.quit();
+        dbHelper.close();
+    }
+
+    /**
+     * Return the cache of the items read, so tests can tell a hit from a miss.
+     */
+    ItemRowCache getItemCache() {
+        return itemCache;
+    }
+
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    @Override
+    public Cursor query(@NonNull final Uri uri, String[] projection, final String selection,
+                        final String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal) {
+        if (!metrics.isEnabled()) {
+            return doQuery(uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+        }
+        // The query is counted once the client fills the cursor, the provider doesn't fill it
+        // any earlier than it does with the metrics off.
+        final int match = sUriMatcher.match(uri);
+        ProviderMetrics.QueryTiming timing = new ProviderMetrics.QueryTiming() {
+            @Override
+            void onTimed(int rows, long nanos, String sql) {
+                metrics.record(match, ProviderMetrics.QUERY, uri, rows, nanos);
+                if (metrics.isSlow(nanos) && match != METRICS && match != METRICS_SLOW_QUERIES) {
+                    logSlowQuery(uri, selection, selectionArgs, nanos, sql);
+                }
+            }
+        };
+        Cursor cursor = null;
+        timing.start();
+        long start = System.nanoTime();
+        try {
+            cursor = doQuery(uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+        } finally {
+            timing.finish(cursor, System.nanoTime() - start);
+        }
+        return cursor;
+    }
+
+    /**
+     * Add a query to the slow query log, with the plan of its SQL, or null if it was answered
+     * without SQL.
+     */
+    private void logSlowQuery(Uri uri, String selection, String[] selectionArgs, long nanos, String sql) {
+        String plan;
+        if (sql == null) {
+            plan = "No plan, the query was answered without SQL";
+        } else {
+            try {
+                plan = InventoryQueryPlans.explain(dbHelper.getReadableDatabase(), sql);
+            } catch (RuntimeException e) {
+                plan = "No plan: " + e.getMessage();
+            }
+        }
+        if (selectionArgs != null) {
+            selection = selection + " " + Arrays.toString(selectionArgs);
+        }
+        Log.w(LOG_TAG, "Slow query of " + uri + " took " + nanos / 1000000 + " ms: " + sql + "\n" + plan);
+        metrics.addSlowQuery(uri.toString(), nanos, selection, sql, plan);
+    }
+
+    /**
+     * Run a query, see {@link #query(Uri, String[], String, String[], String, CancellationSignal)}.
+     */
+    private Cursor doQuery(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                           String sortOrder, CancellationSignal cancellationSignal) {
         // Get readable database
         SQLiteDatabase database = dbHelper.getReadableDatabase();
 
         // This cursor will hold the result of the query
         Cursor cursor;
 
+        // The URI observers of the cursor are notified on
+        Uri notificationUri = uri;
+
         // Figure out if the URI matcher can match the URI to a specific code
         int match = sUriMatcher.match(uri);
         switch (match) {
+            case INVENTORY:
+            case INVENTORY_SEARCH:
+            case SUPPLIER_ITEMS:
+            case INVENTORY_LOW_STOCK:
+            case INVENTORY_VELOCITY:
+            case INVENTORY_CHANGES:
+                // The client's selection and sort order compare the quantity the rows return,
+                // with the movements not folded yet.
+                selection = withItemQuantity(selection);
+                sortOrder = withItemQuantity(sortOrder);
+                break;
+        }
+        switch (match) {
+            case INVENTORY_SEARCH:
+                // For the INVENTORY_SEARCH code, only keep the items whose docid in the search
+                // table matches the query, then treat it like any other inventory query.
+                selection = DatabaseUtils.concatenateWhere(selection, SEARCH_SELECTION);
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{buildMatchQuery(uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_QUERY))});
+                // Any change to the inventory may change the search results.
+                notificationUri = InventoryEntry.CONTENT_URI;
+                cursor = queryItems(database, uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+                break;
+            case SUPPLIER_ITEMS:
+                // For the SUPPLIER_ITEMS code, only keep the items of the supplier whose ID is the
+                // second path segment, then treat it like any other inventory query.
+                selection = DatabaseUtils.concatenateWhere(selection, InventoryEntry.COLUMN_SUPPLIER_ID + "=?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{String.valueOf(Long.parseLong(uri.getPathSegments().get(1)))});
+                notificationUri = InventoryEntry.CONTENT_URI;
+                cursor = queryItems(database, uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+                break;
             case INVENTORY:
                 // For the INVENTORY code, query the inventory table directly with the given
                 // projection, selection, selection arguments, and sort order. The cursor
                 // could contain multiple rows of the inventory table.
-                cursor = database.query(InventoryEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                cursor = queryItems(database, uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
                 break;
             case INVENTORY_ID:
                 // For the INVENTORY_ID code, extract out the ID from the URI.
@@ -117,10 +702,99 @@ public class InventoryProvider extends ContentProvider {
                 selection = InventoryEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
 
-                // This will perform a query on the inventory table where the _id equals 3 to return a
-                // Cursor containing that row of the table.
-                cursor = database.query(InventoryContract.InventoryEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                // Inside a transaction this thread may see rows nobody else can yet, so skip the cache.
+                if (database.inTransaction()) {
+                    cursor = buildItemQuery().query(database, projection, selection, selectionArgs,
+                            null, null, sortOrder, null, cancellationSignal);
+                    break;
+                }
+                cursor = queryCachedItem(database, ContentUris.parseId(uri), projection, selection, selectionArgs,
+                        cancellationSignal);
+                break;
+            case INVENTORY_SKU:
+                // For the INVENTORY_SKU code, the selection will be "product_sku=?" with the SKU
+                // of the URI, answered from the unique index. Any write may give the SKU to
+                // another item, so the cursor is notified on the whole inventory.
+                selection = InventoryEntry.COLUMN_PRODUCT_SKU + "=?";
+                selectionArgs = new String[]{getSku(uri)};
+                cursor = buildItemQuery().query(database, projection, selection, selectionArgs,
+                        null, null, sortOrder, null, cancellationSignal);
+                notificationUri = InventoryEntry.CONTENT_URI;
+                break;
+            case INVENTORY_MOVEMENTS:
+                // For the INVENTORY_MOVEMENTS code, the selection will be "item_id=?" with the ID
+                // of the item, the second path segment, in the order the movements were made.
+                // The cursor is notified with the item, whose URI is a parent of this one.
+                selection = DatabaseUtils.concatenateWhere(selection, MovementEntry.COLUMN_ITEM_ID + "=?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{String.valueOf(Long.parseLong(uri.getPathSegments().get(1)))});
+                cursor = database.query(false, MovementEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder == null ? MovementEntry._ID : sortOrder, null, cancellationSignal);
+                break;
+            case INVENTORY_LOW_STOCK:
+                // For the INVENTORY_LOW_STOCK code, join the alerts with their items, in the order
+                // of the alerts table. Any write to the inventory may raise or clear an alert.
+                cursor = buildLowStockQuery().query(database, projection, selection, selectionArgs, null, null,
+                        sortOrder == null ? LowStockEntry.COLUMN_ITEM_ID : sortOrder, null, cancellationSignal);
+                notificationUri = InventoryEntry.CONTENT_URI;
+                break;
+            case INVENTORY_SALES:
+                // For the INVENTORY_SALES code, read the rollups of every item over the days of
+                // the URI. Any sale changes them.
+                cursor = querySales(database, uri, projection, selection, selectionArgs, sortOrder,
+                        cancellationSignal);
+                notificationUri = InventoryEntry.CONTENT_URI;
+                break;
+            case INVENTORY_ITEM_SALES:
+                // For the INVENTORY_ITEM_SALES code, only keep the rollups of the item whose ID is
+                // the second path segment. The cursor is notified with the item, whose URI is a
+                // parent of this one.
+                selection = DatabaseUtils.concatenateWhere(selection, SalesEntry.COLUMN_ITEM_ID + "=?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{String.valueOf(Long.parseLong(uri.getPathSegments().get(1)))});
+                cursor = querySales(database, uri, projection, selection, selectionArgs, sortOrder,
+                        cancellationSignal);
+                break;
+            case INVENTORY_VELOCITY:
+                // For the INVENTORY_VELOCITY code, read the items with their sales over the last
+                // days. Any sale changes them.
+                cursor = queryVelocity(database, uri, projection, selection, selectionArgs, sortOrder,
+                        cancellationSignal);
+                notificationUri = InventoryEntry.CONTENT_URI;
+                break;
+            case INVENTORY_CHANGES:
+                // For the INVENTORY_CHANGES code, read the changes after the given version in
+                // version order. Any write to the inventory adds changes.
+                cursor = queryChanges(database, uri, projection, selection, selectionArgs, cancellationSignal);
+                notificationUri = InventoryEntry.CONTENT_URI;
+                break;
+            case INVENTORY_STATS:
+                // For the INVENTORY_STATS code, read the single row of the statistics table. It
+                // changes with every write to the inventory.
+                selection = DatabaseUtils.concatenateWhere(selection, StatsEntry._ID + "=1");
+                cursor = database.query(false, StatsEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder, null, cancellationSignal);
+                notificationUri = InventoryEntry.CONTENT_URI;
+                break;
+            case SUPPLIERS:
+                // For the SUPPLIERS code, query the suppliers table directly.
+                cursor = database.query(false, SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder, null, cancellationSignal);
+                break;
+            case SUPPLIER_ID:
+                // For the SUPPLIER_ID code, query the supplier whose ID is in the URI.
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = database.query(false, SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder, null, cancellationSignal);
+                break;
+            case METRICS:
+                // For the METRICS code, read the counts as they are now. No notification is sent
+                // when they change, the caller queries again.
+                cursor = metrics.buildCursor();
+                break;
+            case METRICS_SLOW_QUERIES:
+                cursor = metrics.buildSlowQueryCursor();
                 break;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
@@ -129,85 +803,1079 @@ public class InventoryProvider extends ContentProvider {
         // Set notification URI on the Cursor,
         // so we know what content URI the Cursor was created for.
         // If the data at this URI changes, then we know we need to update the Cursor.
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
+
+        // Return the cursor
+        return cursor;
+    }
+
+    /**
+     * Build a query on the inventory table that only accepts the columns of
+     * {@link #sInventoryProjectionMap}.
+     */
+    static SQLiteQueryBuilder buildItemQuery() {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(InventoryEntry.TABLE_NAME);
+        builder.setProjectionMap(sInventoryProjectionMap);
+        return builder;
+    }
+
+    /**
+     * Make a selection or sort order given by a client read the quantity of the items with the
+     * movements not folded yet, see {@link InventoryDbHelper#withQuantity}.
+     */
+    private static String withItemQuantity(String clause) {
+        return InventoryDbHelper.withQuantity(clause, InventoryDbHelper.quantitySql(InventoryEntry.TABLE_NAME));
+    }
+
+    /**
+     * Build a query over the items with a low stock alert, reading the same columns as
+     * {@link #buildItemQuery} and the time of the alert.
+     */
+    static SQLiteQueryBuilder buildLowStockQuery() {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(LOW_STOCK_TABLES);
+        builder.setProjectionMap(sLowStockProjectionMap);
+        return builder;
+    }
+
+    /**
+     * Return a single item from {@link #itemCache}. On a miss, this will perform a query on the
+     * inventory table where the _id equals 3 (for instance) reading every cached column, and
+     * keep the row for the next query.
+     */
+    private Cursor queryCachedItem(SQLiteDatabase database, long id, String[] projection, String selection,
+                                   String[] selectionArgs, CancellationSignal cancellationSignal) {
+        Cursor cursor = itemCache.get(id, projection);
+        if (cursor != null) {
+            return cursor;
+        }
+
+        // Read the version first, a row invalidated while it's being read is not kept.
+        long version = itemCache.getVersion();
+        Cursor row = buildItemQuery().query(database, itemCache.getColumns(), selection, selectionArgs,
+                null, null, null, null, cancellationSignal);
+        try {
+            if (!row.moveToFirst()) {
+                // No such item, return the empty cursor with the asked columns.
+                return buildItemQuery().query(database, projection, selection, selectionArgs,
+                        null, null, null, null, cancellationSignal);
+            }
+            return itemCache.put(id, row, version, projection);
+        } finally {
+            row.close();
+        }
+    }
+
+    /**
+     * Query the items matching the selection, or only one page of them if the URI asks for it.
+     */
+    private Cursor queryItems(SQLiteDatabase database, Uri uri, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal) {
+        if (uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_LIMIT) != null) {
+            return queryPage(database, uri, projection, selection, selectionArgs, cancellationSignal);
+        }
+        return buildItemQuery().query(database, projection, selection, selectionArgs,
+                null, null, sortOrder, null, cancellationSignal);
+    }
+
+    /**
+     * Query one page of the inventory table. Rather than using an OFFSET, which has to step over
+     * every skipped row, a page starts right after the key of the last row of the previous page,
+     * so every page costs the same no matter how deep into the table it is.
+     */
+    private Cursor queryPage(SQLiteDatabase database, Uri uri, String[] projection, String selection,
+                             String[] selectionArgs, CancellationSignal cancellationSignal) {
+        // Check that the page size is a positive number
+        long limit = parsePageParameter(uri, InventoryContract.QUERY_PARAMETER_LIMIT);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page requires a limit > 0");
+        }
+
+        String afterId = uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_AFTER_ID);
+        if (afterId != null) {
+            parsePageParameter(uri, InventoryContract.QUERY_PARAMETER_AFTER_ID);
+        }
+
+        String sortOrder;
+        if (InventoryContract.PAGE_BY_NAME.equals(uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_PAGE_BY))) {
+            String afterName = uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_AFTER_NAME);
+            if (afterName != null) {
+                if (afterId == null) {
+                    throw new IllegalArgumentException("Paging by name requires the _id of the last row");
+                }
+                selection = DatabaseUtils.concatenateWhere(selection, NAME_PAGE_SELECTION);
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{afterName, afterName, afterId});
+            }
+            sortOrder = NAME_PAGE_SORT_ORDER;
+        } else {
+            if (afterId != null) {
+                selection = DatabaseUtils.concatenateWhere(selection, ID_PAGE_SELECTION);
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{afterId});
+            }
+            sortOrder = InventoryEntry._ID;
+        }
+
+        return buildItemQuery().query(database, projection, selection, selectionArgs,
+                null, null, sortOrder, String.valueOf(limit), cancellationSignal);
+    }
+
+    /**
+     * Query the changes after the version of the {@link InventoryContract#QUERY_PARAMETER_SINCE}
+     * parameter, at most {@link InventoryContract#QUERY_PARAMETER_LIMIT} of them if given.
+     */
+    private static Cursor queryChanges(SQLiteDatabase database, Uri uri, String[] projection, String selection,
+                                       String[] selectionArgs, CancellationSignal cancellationSignal) {
+        long since = 0;
+        if (uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_SINCE) != null) {
+            since = parsePageParameter(uri, InventoryContract.QUERY_PARAMETER_SINCE);
+        }
+        String limit = null;
+        if (uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_LIMIT) != null) {
+            long pageSize = parsePageParameter(uri, InventoryContract.QUERY_PARAMETER_LIMIT);
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("Changes require a limit > 0");
+            }
+            limit = String.valueOf(pageSize);
+        }
+        selection = DatabaseUtils.concatenateWhere(selection, ChangeEntry.COLUMN_VERSION + " > ?");
+        selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{String.valueOf(since)});
+        return buildChangesQuery().query(database, projection, selection, selectionArgs,
+                null, null, ChangeEntry.COLUMN_VERSION, limit, cancellationSignal);
+    }
+
+    /**
+     * Build a query over the change log that only accepts the columns of {@link #sChangeProjectionMap}.
+     */
+    static SQLiteQueryBuilder buildChangesQuery() {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(CHANGES_TABLES);
+        builder.setProjectionMap(sChangeProjectionMap);
+        return builder;
+    }
+
+    /**
+     * Read the units sold from the daily or the weekly rollups, as chosen by the period parameter,
+     * from the day given by the from_day parameter to the one given by to_day. Only the rows of
+     * those days are read, by primary key for a single item and from the day index otherwise,
+     * so the cost follows the days and items asked for, not the number of sales.
+     */
+    private static Cursor querySales(SQLiteDatabase database, Uri uri, String[] projection, String selection,
+                                     String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal) {
+        String period = uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_PERIOD);
+        boolean weekly = InventoryContract.PERIOD_WEEK.equals(period);
+        if (period != null && !weekly && !InventoryContract.PERIOD_DAY.equals(period)) {
+            throw new IllegalArgumentException("Unknown period in " + uri);
+        }
+        if (uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_FROM_DAY) != null) {
+            long fromDay = parsePageParameter(uri, InventoryContract.QUERY_PARAMETER_FROM_DAY);
+            // The week holding the first day starts before it.
+            selection = DatabaseUtils.concatenateWhere(selection, SALES_FROM_DAY_SELECTION);
+            selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                    new String[]{String.valueOf(weekly ? SalesEntry.weekOf(fromDay) : fromDay)});
+        }
+        if (uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_TO_DAY) != null) {
+            long toDay = parsePageParameter(uri, InventoryContract.QUERY_PARAMETER_TO_DAY);
+            selection = DatabaseUtils.concatenateWhere(selection, SALES_TO_DAY_SELECTION);
+            selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{String.valueOf(toDay)});
+        }
+        return database.query(false, weekly ? SalesEntry.WEEKLY_TABLE_NAME : SalesEntry.DAILY_TABLE_NAME,
+                projection, selection, selectionArgs, null, null,
+                sortOrder == null ? SALES_SORT_ORDER : sortOrder,
+                null, cancellationSignal);
+    }
+
+    /**
+     * Read the items with the units they sold over the number of days given by the days
+     * parameter, today included, and the average per day. The units of each item are summed
+     * from its daily rollups, one primary key range of at most that many rows.
+     */
+    private static Cursor queryVelocity(SQLiteDatabase database, Uri uri, String[] projection, String selection,
+                                        String[] selectionArgs, String sortOrder,
+                                        CancellationSignal cancellationSignal) {
+        if (uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_DAYS) == null) {
+            throw new IllegalArgumentException("Velocity requires days in " + uri);
+        }
+        long days = parsePageParameter(uri, InventoryContract.QUERY_PARAMETER_DAYS);
+        if (days <= 0) {
+            throw new IllegalArgumentException("Velocity requires days > 0");
+        }
+        return buildVelocityQuery(days).query(database, projection, selection, selectionArgs, null, null,
+                sortOrder, null, cancellationSignal);
+    }
+
+    /**
+     * Build a query over the items reading the same columns as {@link #buildItemQuery}, and
+     * their units sold and velocity over the given number of days, today included.
+     */
+    static SQLiteQueryBuilder buildVelocityQuery(long days) {
+        long fromDay = SalesEntry.dayOf(System.currentTimeMillis()) - days + 1;
+
+        String unitsSold = unitsSoldSql(fromDay);
+        HashMap<String, String> projectionMap = new HashMap<String, String>(sInventoryProjectionMap);
+        projectionMap.put(SalesEntry.COLUMN_UNITS_SOLD, unitsSold + " AS " + SalesEntry.COLUMN_UNITS_SOLD);
+        projectionMap.put(SalesEntry.COLUMN_VELOCITY, unitsSold + " / " + days + ".0 AS " + SalesEntry.COLUMN_VELOCITY);
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(InventoryEntry.TABLE_NAME);
+        builder.setProjectionMap(projectionMap);
+        return builder;
+    }
+
+    /**
+     * Build the SQL reading the units an item of the inventory table sold since the given day.
+     * The day is written into the SQL, the projection map has no way to take arguments.
+     */
+    private static String unitsSoldSql(long fromDay) {
+        return "IFNULL((SELECT SUM(s." + SalesEntry.COLUMN_UNITS_SOLD + ") FROM " + SalesEntry.DAILY_TABLE_NAME
+                + " s WHERE s." + SalesEntry.COLUMN_ITEM_ID + " = " + InventoryEntry.TABLE_NAME + "."
+                + InventoryEntry._ID + " AND s." + SalesEntry.COLUMN_DAY + " >= " + fromDay + "), 0)";
+    }
+
+    /**
+     * Turn the text typed by the user into a full text search query that matches every word as
+     * a prefix, for instance "Gal wat" becomes "gal"* "wat"*. Anything that isn't a letter or a
+     * digit only separates words, so the user can't type query syntax by accident.
+     */
+    private static String buildMatchQuery(String query) {
+        StringBuilder matchQuery = new StringBuilder();
+        if (query != null) {
+            for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                if (matchQuery.length() > 0) {
+                    matchQuery.append(' ');
+                }
+                matchQuery.append('"').append(word).append("\"*");
+            }
+        }
+        if (matchQuery.length() == 0) {
+            throw new IllegalArgumentException("Search requires a query with at least one word");
+        }
+        return matchQuery.toString();
+    }
+
+    /**
+     * Read the SKU of an inventory/sku/* URI, its third path segment.
+     */
+    private static String getSku(Uri uri) {
+        return uri.getPathSegments().get(2);
+    }
+
+    /**
+     * Return the _id of the item with the given SKU, or -1 if there is none.
+     */
+    private static long findItemIdBySku(SQLiteDatabase database, String sku) {
+        try {
+            return DatabaseUtils.longForQuery(database, SQL_ITEM_ID_BY_SKU, new String[]{sku});
+        } catch (SQLiteDoneException e) {
+            // No row
+            return -1;
+        }
+    }
+
+    /**
+     * Read a numeric paging parameter from the URI.
+     */
+    private static long parsePageParameter(Uri uri, String name) {
+        try {
+            return Long.parseLong(uri.getQueryParameter(name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " in " + uri);
+        }
+    }
+
+    @Override
+    public Uri insert(@NonNull Uri uri, ContentValues contentValues) {
+        if (!metrics.isEnabled()) {
+            return doInsert(uri, contentValues);
+        }
+        long start = System.nanoTime();
+        Uri newUri = doInsert(uri, contentValues);
+        metrics.record(sUriMatcher.match(uri), ProviderMetrics.INSERT, uri, newUri == null ? 0 : 1,
+                System.nanoTime() - start);
+        return newUri;
+    }
+
+    /**
+     * Insert a row, see {@link #insert}.
+     */
+    private Uri doInsert(Uri uri, ContentValues contentValues) {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
+            case INVENTORY:
+                return insertItem(uri, contentValues);
+            case INVENTORY_MOVEMENTS:
+                return insertMovement(uri, contentValues);
+            case SUPPLIERS:
+                return insertSupplier(uri, contentValues);
+            default:
+                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+    }
+
+    /**
+     * Insert an item into the database with the given content values. Return the new content URI
+     * for that specific row in the database.
+     */
+    private Uri insertItem(@NonNull Uri uri, ContentValues values) {
+        String name = values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME);
+        Long productPriceCents = values.getAsLong(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS);
+        Integer productQuantity = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+        String productSku = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SKU);
+        // Only build the message when asked for, with adb shell setprop log.tag.InventoryProvider DEBUG,
+        // as a bulk insert comes through here for every row.
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Inserting " + values);
+        }
+        checkItem(name, productPriceCents, productQuantity);
+        checkSku(productSku);
+        checkReorderThreshold(values);
+
+        // The supplier is either given by its ID, or by its name and phone number.
+        String productSupplierName = null;
+        String productSupplierPhoneNumber = null;
+        if (values.getAsLong(InventoryEntry.COLUMN_SUPPLIER_ID) == null) {
+            productSupplierName = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+            productSupplierPhoneNumber = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
+            checkSupplier(productSupplierName, productSupplierPhoneNumber);
+        }
+
+        // Get writeable database
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+
+        // Run as a batch, so a new phone number given for an existing supplier only invalidates
+        // the cache once the transaction has committed.
+        BatchState state = beginBatch();
+        boolean successful = false;
+        long id;
+        database.beginTransaction();
+        try {
+            // Point the item at its supplier rather than storing the supplier in the item row.
+            ContentValues itemValues = new ContentValues(values);
+            itemValues.remove(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+            itemValues.remove(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
+            if (productSupplierName != null) {
+                itemValues.put(InventoryEntry.COLUMN_SUPPLIER_ID,
+                        findOrInsertSupplier(database, productSupplierName, productSupplierPhoneNumber));
+            }
+
+            // Insert the new item with the given values
+            id = database.insertOrThrow(InventoryContract.InventoryEntry.TABLE_NAME, null, itemValues);
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+            endBatch(state, successful);
+        }
+        // If the ID is -1, then the insertion failed. Log an error and return null.
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        // Notify all listeners that the data has changed for the inventory content URI. A new row
+        // changes the shape of the inventory, so this is not a single-row notification.
+        notifyChange(uri);
+
+        // Return the new URI with the ID (of the newly inserted row) appended at the end
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Add a receipt or an adjustment to the stock movements of the item of the given URI. Return
+     * the URI of the movements of the item with the _id of the new movement appended, or null if
+     * the item doesn't exist or the movement would leave a negative quantity.
+     */
+    private Uri insertMovement(@NonNull Uri uri, ContentValues values) {
+        // Check that the kind is a receipt or an adjustment. Sales go through the sell URIs,
+        // which answer with the quantity left.
+        Integer kind = values.getAsInteger(MovementEntry.COLUMN_KIND);
+        if (kind == null || (kind != MovementEntry.KIND_RECEIPT && kind != MovementEntry.KIND_ADJUSTMENT)) {
+            throw new IllegalArgumentException("Movement requires a kind, receipt or adjustment");
+        }
+
+        // Check that the delta moves some units, and that a receipt adds them
+        Integer delta = values.getAsInteger(MovementEntry.COLUMN_DELTA);
+        if (delta == null || delta == 0 || (kind == MovementEntry.KIND_RECEIPT && delta < 0)) {
+            throw new IllegalArgumentException("Movement requires a delta != 0, > 0 for a receipt");
+        }
+
+        long itemId = Long.parseLong(uri.getPathSegments().get(1));
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        BatchState state = beginBatch();
+        boolean successful = false;
+        long id;
+        database.beginTransaction();
+        try {
+            id = addMovement(database, itemId, kind, delta);
+            if (id != -1) {
+                invalidateItem(itemId);
+                notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, itemId));
+            }
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+            endBatch(state, successful);
+        }
+        if (id == -1) {
+            return null;
+        }
+        movementsAdded(1);
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Add a stock movement of one item, see {@link #SQL_ADD_MOVEMENT}. Return the _id of the new
+     * movement, or -1 if it was refused. Must be called inside a transaction.
+     */
+    private static long addMovement(SQLiteDatabase database, long itemId, int kind, int delta) {
+        SQLiteStatement statement = database.compileStatement(SQL_ADD_MOVEMENT);
+        try {
+            statement.bindLong(1, kind);
+            statement.bindLong(2, delta);
+            statement.bindLong(3, System.currentTimeMillis());
+            statement.bindLong(4, itemId);
+            statement.bindLong(5, delta);
+            return statement.executeInsert();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Set the quantity of the items matching the selection by adding a
+     * {@link MovementEntry#KIND_ADJUSTMENT} movement to each item whose quantity is different.
+     * Return the number of movements added. Must be called inside a transaction.
+     */
+    private static int adjustQuantity(SQLiteDatabase database, int quantity, String selection, String[] selectionArgs) {
+        String itemQuantity = InventoryDbHelper.quantitySql(InventoryEntry.TABLE_NAME);
+        SQLiteStatement statement = database.compileStatement("INSERT INTO " + MovementEntry.TABLE_NAME + " ("
+                + MovementEntry.COLUMN_ITEM_ID + ", " + MovementEntry.COLUMN_KIND + ", " + MovementEntry.COLUMN_DELTA
+                + ", " + MovementEntry.COLUMN_CREATED_MILLIS + ") SELECT " + InventoryEntry._ID + ", "
+                + MovementEntry.KIND_ADJUSTMENT + ", ? - " + itemQuantity + ", ? FROM " + InventoryEntry.TABLE_NAME
+                + " WHERE " + DatabaseUtils.concatenateWhere(selection, itemQuantity + " != ?"));
+        try {
+            // The selection arguments are bound as text, like SQLiteDatabase.update does.
+            int index = 1;
+            statement.bindLong(index++, quantity);
+            statement.bindLong(index++, System.currentTimeMillis());
+            if (selectionArgs != null) {
+                for (String arg : selectionArgs) {
+                    statement.bindString(index++, arg);
+                }
+            }
+            statement.bindLong(index, quantity);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Check the SKU of an item, which may be null, but not empty or surrounded by spaces.
+     */
+    private static void checkSku(String sku) {
+        if (sku != null && !sku.equals(InventoryEntry.normalizeSku(sku))) {
+            throw new IllegalArgumentException("Item requires a SKU that is not empty or surrounded by spaces");
+        }
+    }
+
+    /**
+     * Check that the reorder threshold is a number >= 0, if the values have one.
+     */
+    private static void checkReorderThreshold(ContentValues values) {
+        if (values.containsKey(InventoryEntry.COLUMN_REORDER_THRESHOLD)) {
+            Integer reorderThreshold = values.getAsInteger(InventoryEntry.COLUMN_REORDER_THRESHOLD);
+            if (reorderThreshold == null || InventoryEntry.isGreaterThanOrEqualToZero(reorderThreshold)) {
+                throw new IllegalArgumentException("Item requires a reorder threshold >= 0");
+            }
+        }
+    }
+
+    /**
+     * Check the values of a new item, for {@link #insertItem} and {@link #importItems}.
+     */
+    private static void checkItem(String name, Long priceCents, Integer quantity) {
+        // Check that the product name is not null
+        if (name == null) {
+            throw new IllegalArgumentException("Item requires a product name");
+        }
+
+        // Check that the product price is a whole number of cents and not negative
+        if (priceCents == null || InventoryEntry.isGreaterThanOrEqualToZero(priceCents)) {
+            throw new IllegalArgumentException("Item requires a price in cents >= 0");
+        }
+
+        // Check that the product quantity is not negative
+        if (quantity == null || InventoryEntry.isGreaterThanOrEqualToZero(quantity)) {
+            throw new IllegalArgumentException("Item requires a quantity >= 0");
+        }
+    }
+
+    /**
+     * Check the supplier of a new item, when it is given by name and phone number.
+     */
+    private static void checkSupplier(String name, String phoneNumber) {
+        // Check that the supplier name is not null
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Item requires valid supplier name");
+        }
+
+        // Check that the supplier phone number is not null
+        if (phoneNumber == null || phoneNumber.isEmpty()) {
+            throw new IllegalArgumentException("Item requires valid supplier phone number");
+        }
+    }
+
+    /**
+     * Import the items of a CSV file for {@link InventoryImporter}. Every line goes through the
+     * same checks as {@link #insertItem}, and is inserted with the same compiled statement. Lines
+     * are committed {@link #IMPORT_CHUNK_SIZE} at a time, so a large file neither holds the
+     * database locked nor fills the journal, and listeners are notified once per chunk.
+     */
+    InventoryImporter.Result importItems(CsvReader csv, InventoryImporter.Listener listener,
+                                         CancellationSignal cancellationSignal) throws IOException {
+        List<String> fields = new ArrayList<String>();
+        if (!csv.readRecord(fields)) {
+            throw new IOException("The file is empty");
+        }
+
+        // Find the columns named on the first line.
+        int[] columns = new int[InventoryEntry.CSV_COLUMNS.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = fields.indexOf(InventoryEntry.CSV_COLUMNS[i]);
+            if (columns[i] < 0) {
+                throw new IOException("The file has no " + InventoryEntry.CSV_COLUMNS[i] + " column");
+            }
+        }
+        // -1 if the file has no SKU column
+        int skuColumn = fields.indexOf(InventoryEntry.COLUMN_PRODUCT_SKU);
+
+        // The _ids of the suppliers met recently by name, with their phone numbers
+        Map<String, Supplier> suppliers = new LinkedHashMap<String, Supplier>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Supplier> eldest) {
+                return size() > IMPORT_SUPPLIER_CACHE_SIZE;
+            }
+        };
+
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        SQLiteStatement statement = database.compileStatement(SQL_INSERT_ITEM);
+        long linesRead = 0;
+        long itemsImported = 0;
+        long linesRejected = 0;
+        try {
+            boolean more = true;
+            while (more) {
+                // Run each chunk as a batch, so the cache and the listeners only hear about it
+                // once it has committed.
+                BatchState state = beginBatch();
+                boolean successful = false;
+                long chunkImported = 0;
+                database.beginTransaction();
+                try {
+                    for (int line = 0; line < IMPORT_CHUNK_SIZE && (more = csv.readRecord(fields)); line++) {
+                        if (cancellationSignal != null) {
+                            cancellationSignal.throwIfCanceled();
+                        }
+                        linesRead++;
+                        if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+                            // Blank line
+                            continue;
+                        }
+                        String reason;
+                        try {
+                            importItem(database, statement, fields, columns, skuColumn, suppliers);
+                            chunkImported++;
+                            continue;
+                        } catch (IllegalArgumentException e) {
+                            reason = e.getMessage();
+                        } catch (SQLException e) {
+                            reason = e.getMessage();
+                        }
+                        linesRejected++;
+                        listener.onLineRejected(csv.getLineNumber(), reason);
+                    }
+                    if (chunkImported != 0) {
+                        notifyChange(InventoryEntry.CONTENT_URI);
+                    }
+                    database.setTransactionSuccessful();
+                    successful = true;
+                } finally {
+                    database.endTransaction();
+                    endBatch(state, successful);
+                }
+                itemsImported += chunkImported;
+                listener.onProgress(linesRead, itemsImported);
+            }
+        } finally {
+            statement.close();
+        }
+        return new InventoryImporter.Result(linesRead, itemsImported, linesRejected);
+    }
+
+    /**
+     * Check and insert the item of one line of a CSV file. Must be called inside a transaction.
+     */
+    private void importItem(SQLiteDatabase database, SQLiteStatement statement, List<String> fields,
+                            int[] columns, int skuColumn, Map<String, Supplier> suppliers) {
+        String name = readField(fields, columns[0]);
+        Long priceCents;
+        try {
+            priceCents = InventoryEntry.parsePriceCents(readField(fields, columns[1]));
+        } catch (NumberFormatException e) {
+            priceCents = null;
+        }
+        Integer quantity;
+        try {
+            quantity = Integer.valueOf(readField(fields, columns[2]).trim());
+        } catch (NumberFormatException e) {
+            quantity = null;
+        }
+        String supplierName = readField(fields, columns[3]);
+        String supplierPhoneNumber = readField(fields, columns[4]);
+        String sku = skuColumn < 0 ? null : InventoryEntry.normalizeSku(readField(fields, skuColumn));
+        checkItem(name, priceCents, quantity);
+        checkSupplier(supplierName, supplierPhoneNumber);
+
+        // Only look the supplier up again if it is new, or its phone number changed.
+        Supplier supplier = suppliers.get(supplierName);
+        if (supplier == null || !supplier.phoneNumber.equals(supplierPhoneNumber)) {
+            supplier = new Supplier(findOrInsertSupplier(database, supplierName, supplierPhoneNumber),
+                    supplierPhoneNumber);
+            suppliers.put(supplierName, supplier);
+        }
+
+        statement.bindString(1, name);
+        statement.bindLong(2, priceCents);
+        statement.bindLong(3, quantity);
+        statement.bindLong(4, supplier.id);
+        if (sku == null) {
+            statement.bindNull(5);
+        } else {
+            statement.bindString(5, sku);
+        }
+        statement.executeInsert();
+    }
+
+    /**
+     * Return a field of a CSV line, or an empty string if the line is shorter, which then fails
+     * the checks like any missing value.
+     */
+    private static String readField(List<String> fields, int index) {
+        return index < fields.size() ? fields.get(index) : "";
+    }
+
+    /**
+     * A supplier met during an import.
+     */
+    private static final class Supplier {
+        final long id;
+        final String phoneNumber;
+
+        Supplier(long id, String phoneNumber) {
+            this.id = id;
+            this.phoneNumber = phoneNumber;
+        }
+    }
+
+    /**
+     * Write the export of the whole inventory to a stream, as the export URI serves it with the
+     * given MIME type, without the pipe and the thread writing into it. For benchmarks.
+     */
+    void writeExport(OutputStream out, String mimeType) throws IOException {
+        exporter.write(out, mimeType);
+    }
+
+    /**
+     * Write a snapshot of the suppliers and the inventory for {@link InventorySnapshot}. The
+     * quantities are read with the stock movements not folded yet, so nothing is folded first.
+     * The rows are read a page at a time without a transaction, so sales and other writes go on
+     * while a large inventory is written, see {@link SnapshotWriter}.
+     */
+    InventorySnapshot.Result writeSnapshot(OutputStream out) throws IOException {
+        long createdMillis = System.currentTimeMillis();
+        long[] rowCounts = new SnapshotWriter(out).write(dbHelper.getReadableDatabase(), createdMillis);
+        return new InventorySnapshot.Result(rowCounts[0], rowCounts[1], createdMillis);
+    }
+
+    /**
+     * Replace the suppliers and the inventory with the rows of a snapshot, for
+     * {@link InventorySnapshot}. The rows are loaded with the triggers and secondary indexes
+     * dropped, see {@link InventoryDbHelper#beginBulkLoad}, all in one transaction, so a damaged
+     * snapshot leaves the tables as they were. The stock movements are about items that are
+     * replaced, and the quantities of the snapshot already hold theirs, so they are dropped. The
+     * sales rollups are kept: the snapshot doesn't hold them, and the sales happened either way.
+     */
+    InventorySnapshot.Result restoreSnapshot(SnapshotReader reader) throws IOException {
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        if (reader.getDatabaseVersion() != database.getVersion()) {
+            throw new IOException("The snapshot was taken from database version " + reader.getDatabaseVersion()
+                    + ", this is version " + database.getVersion());
+        }
+
+        long[] rowCounts = new long[SnapshotFormat.TABLES.length];
+        SQLiteStatement[] inserts = new SQLiteStatement[SnapshotFormat.TABLES.length];
+        BatchState state = beginBatch();
+        boolean successful = false;
+        database.beginTransaction();
+        try {
+            dbHelper.beginBulkLoad(database);
+            // Items first, they point at the suppliers.
+            database.delete(InventoryEntry.TABLE_NAME, null, null);
+            database.delete(SupplierEntry.TABLE_NAME, null, null);
+            database.delete(MovementEntry.TABLE_NAME, null, null);
+            for (int i = 0; i < inserts.length; i++) {
+                inserts[i] = database.compileStatement(SnapshotFormat.TABLES[i].insert);
+            }
+
+            while (reader.next()) {
+                SnapshotFormat.Table table = SnapshotFormat.TABLES[reader.getTable()];
+                SQLiteStatement insert = inserts[reader.getTable()];
+                int integerCount = table.integerColumns.length;
+                for (int row = 0; row < reader.getRowCount(); row++) {
+                    for (int column = 0; column < integerCount; column++) {
+                        insert.bindLong(column + 1, reader.getInteger(column, row));
+                    }
+                    for (int column = 0; column < table.textColumns.length; column++) {
+                        String value = reader.getText(column, row);
+                        if (value == null) {
+                            insert.bindNull(integerCount + column + 1);
+                        } else {
+                            insert.bindString(integerCount + column + 1, value);
+                        }
+                    }
+                    insert.executeInsert();
+                }
+                rowCounts[reader.getTable()] += reader.getRowCount();
+            }
+
+            // Carry the AUTOINCREMENT sequences over, so the _ids deleted before the snapshot
+            // are not given out again.
+            for (int i = 0; i < SnapshotFormat.TABLES.length; i++) {
+                String tableName = SnapshotFormat.TABLES[i].name;
+                database.execSQL("DELETE FROM sqlite_sequence WHERE name = ?", new Object[]{tableName});
+                database.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT ?, MAX(?, IFNULL(MAX("
+                                + InventoryEntry._ID + "), 0)) FROM " + tableName,
+                        new Object[]{tableName, reader.getSequence(i)});
+            }
+            dbHelper.endBulkLoad(database);
+            // The triggers were dropped while loading, so the log can't say what changed.
+            database.delete(ChangeEntry.TABLE_NAME, null, null);
+            InventoryDbHelper.logReset(database);
+
+            invalidateItem(-1);
+            notifyChange(InventoryEntry.CONTENT_URI);
+            notifyChange(SupplierEntry.CONTENT_URI);
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            for (SQLiteStatement insert : inserts) {
+                if (insert != null) {
+                    insert.close();
+                }
+            }
+            database.endTransaction();
+            endBatch(state, successful);
+        }
+        return new InventorySnapshot.Result(rowCounts[0], rowCounts[1], reader.getCreatedMillis());
+    }
+
+    /**
+     * Apply the changes pulled from the back office by {@link InventorySync}, in one transaction.
+     * An inserted or updated item is written with its _id, whether it exists here or not. A new
+     * quantity of an existing item is added to its stock movements, like any other. The changes
+     * the triggers log for these writes are dropped again, so they are not sent back to the back
+     * office they came from.
+     */
+    void applySyncChanges(List<SyncChange> changes) {
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        BatchState state = beginBatch();
+        boolean successful = false;
+        int rowsMoved = 0;
+        database.beginTransaction();
+        try {
+            long lastVersion = DatabaseUtils.longForQuery(database, "SELECT IFNULL(MAX("
+                    + ChangeEntry.COLUMN_VERSION + "), 0) FROM " + ChangeEntry.TABLE_NAME, null);
+            for (SyncChange change : changes) {
+                String[] idArgs = {String.valueOf(change.itemId)};
+                if (change.operation == ChangeEntry.OPERATION_DELETE) {
+                    database.delete(InventoryEntry.TABLE_NAME, InventoryEntry._ID + "=?", idArgs);
+                } else {
+                    checkItem(change.name, change.priceCents, change.quantity);
+                    checkSku(change.sku);
+                    checkSupplier(change.supplierName, change.supplierPhoneNumber);
+                    ContentValues values = new ContentValues();
+                    values.put(InventoryEntry.COLUMN_PRODUCT_NAME, change.name);
+                    values.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, change.priceCents);
+                    values.put(InventoryEntry.COLUMN_PRODUCT_SKU, change.sku);
+                    values.put(InventoryEntry.COLUMN_SUPPLIER_ID,
+                            findOrInsertSupplier(database, change.supplierName, change.supplierPhoneNumber));
+                    if (database.update(InventoryEntry.TABLE_NAME, values, InventoryEntry._ID + "=?", idArgs) != 0) {
+                        rowsMoved += adjustQuantity(database, change.quantity, InventoryEntry._ID + "=?", idArgs);
+                    } else {
+                        // The _id may be that of an item deleted here, whose movements are kept.
+                        // They must not count for the new item.
+                        values.put(InventoryEntry._ID, change.itemId);
+                        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, change.quantity);
+                        values.put(InventoryDbHelper.COLUMN_APPLIED_MOVEMENT_ID,
+                                DatabaseUtils.longForQuery(database, SQL_LAST_MOVEMENT, null));
+                        database.insertOrThrow(InventoryEntry.TABLE_NAME, null, values);
+                    }
+                }
+                invalidateItem(change.itemId);
+            }
+            database.delete(ChangeEntry.TABLE_NAME, ChangeEntry.COLUMN_VERSION + " > ?",
+                    new String[]{String.valueOf(lastVersion)});
+            if (!changes.isEmpty()) {
+                notifyChange(InventoryEntry.CONTENT_URI);
+            }
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+            endBatch(state, successful);
+        }
+        if (rowsMoved != 0) {
+            movementsAdded(rowsMoved);
+        }
+    }
+
+    /**
+     * Fold the stock movements added since the last fold into the quantity stored with their
+     * items, for {@link LedgerCompactor}. The quantity read from the provider stays the same, so
+     * nothing is invalidated or notified. Return the number of items folded.
+     */
+    int foldMovements() {
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            int itemsFolded = foldMovements(database);
+            database.setTransactionSuccessful();
+            return itemsFolded;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Fold the stock movements, see {@link #foldMovements()}. Each item moved since the last fold
+     * gets the sum of its movements not folded yet, and remembers the last movement folded in.
+     * Then a marker is added after the last movement, where the next fold starts. Must be called
+     * inside a transaction.
+     */
+    private static int foldMovements(SQLiteDatabase database) {
+        long lastFold;
+        try {
+            lastFold = DatabaseUtils.longForQuery(database, SQL_LAST_FOLD, null);
+        } catch (SQLiteDoneException e) {
+            // Never folded
+            lastFold = 0;
+        }
+        long lastMovement = DatabaseUtils.longForQuery(database, SQL_LAST_MOVEMENT, null);
+        if (lastMovement == lastFold) {
+            // Nothing moved since the last fold
+            return 0;
+        }
+
+        int itemsFolded;
+        SQLiteStatement statement = database.compileStatement(SQL_FOLD_MOVEMENTS);
+        try {
+            statement.bindLong(1, lastMovement);
+            statement.bindLong(2, lastFold);
+            itemsFolded = statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
 
-        // Return the cursor
-        return cursor;
+        ContentValues marker = new ContentValues();
+        marker.put(MovementEntry.COLUMN_ITEM_ID, 0);
+        marker.put(MovementEntry.COLUMN_KIND, InventoryDbHelper.MOVEMENT_KIND_FOLD);
+        marker.put(MovementEntry.COLUMN_DELTA, 0);
+        marker.put(MovementEntry.COLUMN_CREATED_MILLIS, System.currentTimeMillis());
+        database.insertOrThrow(MovementEntry.TABLE_NAME, null, marker);
+        return itemsFolded;
     }
 
-    @Override
-    public Uri insert(@NonNull Uri uri, ContentValues contentValues) {
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case INVENTORY:
-                return insertItem(uri, contentValues);
-            default:
-                throw new IllegalArgumentException("Insertion is not supported for " + uri);
-        }
+    /**
+     * Compact the change log. Only the latest change of each item is kept, which is all a client
+     * needs since the rows read from the log hold the current values of the item. Then, if more
+     * than {@link #CHANGE_LOG_MAX_SIZE} changes are left, the oldest ones are replaced by a
+     * single {@link ChangeEntry#OPERATION_RESET}, so the log stays bounded however long no
+     * client reads it. Return the number of changes dropped.
+     */
+    int compactChanges() {
+        return compactChanges(CHANGE_LOG_MAX_SIZE);
     }
 
     /**
-     * Insert an item into the database with the given content values. Return the new content URI
-     * for that specific row in the database.
+     * Compact the change log like {@link #compactChanges()}, keeping at most the given number of
+     * changes, so tests can reach the reset without writing that many.
      */
-    private Uri insertItem(@NonNull Uri uri, ContentValues values) {
-        // Check that the product name is not null
-        String name = values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME);
-        if (name == null) {
-            throw new IllegalArgumentException("Item requires a product name");
+    int compactChanges(int maxSize) {
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            int dropped = database.delete(ChangeEntry.TABLE_NAME, ChangeEntry.COLUMN_VERSION
+                    + " < (SELECT MAX(c." + ChangeEntry.COLUMN_VERSION + ") FROM " + ChangeEntry.TABLE_NAME
+                    + " c WHERE c." + ChangeEntry.COLUMN_ITEM_ID + " = " + ChangeEntry.TABLE_NAME + "."
+                    + ChangeEntry.COLUMN_ITEM_ID + ")", null);
+
+            long excess = DatabaseUtils.queryNumEntries(database, ChangeEntry.TABLE_NAME) - maxSize;
+            if (excess > 0) {
+                // The newest of the dropped changes becomes the reset.
+                long resetVersion = DatabaseUtils.longForQuery(database, "SELECT " + ChangeEntry.COLUMN_VERSION
+                        + " FROM " + ChangeEntry.TABLE_NAME + " ORDER BY " + ChangeEntry.COLUMN_VERSION
+                        + " LIMIT 1 OFFSET ?", new String[]{String.valueOf(excess - 1)});
+                String[] resetArgs = {String.valueOf(resetVersion)};
+                dropped += database.delete(ChangeEntry.TABLE_NAME, ChangeEntry.COLUMN_VERSION + " < ?", resetArgs);
+                ContentValues reset = new ContentValues();
+                reset.put(ChangeEntry.COLUMN_ITEM_ID, 0);
+                reset.put(ChangeEntry.COLUMN_OPERATION, ChangeEntry.OPERATION_RESET);
+                database.update(ChangeEntry.TABLE_NAME, reset, ChangeEntry.COLUMN_VERSION + " = ?", resetArgs);
+            }
+            database.setTransactionSuccessful();
+            return dropped;
+        } finally {
+            database.endTransaction();
         }
+    }
 
-        Log.d("InventoryProvider", "productName: " + name);
+    /**
+     * Return the ID of the supplier with the given name, inserting it if it doesn't exist yet.
+     * If a phone number is given, it becomes the phone number of the supplier.
+     * Must be called inside a transaction.
+     */
+    private long findOrInsertSupplier(SQLiteDatabase database, String name, String phoneNumber) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Item requires valid supplier name");
+        }
 
-        // Check that the product price is not negative
-        double productPrice = values.getAsDouble(InventoryEntry.COLUMN_PRODUCT_PRICE);
-        Log.d("InventoryProvider", "productPrice: " + productPrice);
-        if (InventoryEntry.isGreaterThanOrEqualToZero(productPrice)) {
-            throw new IllegalArgumentException("Item requires a price > 0");
+        Cursor cursor = database.query(SupplierEntry.TABLE_NAME,
+                new String[]{SupplierEntry._ID, SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER},
+                SupplierEntry.COLUMN_SUPPLIER_NAME + "=?", new String[]{name}, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                long supplierId = cursor.getLong(0);
+                if (phoneNumber != null && !phoneNumber.equals(cursor.getString(1))) {
+                    ContentValues supplierValues = new ContentValues();
+                    supplierValues.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, phoneNumber);
+                    database.update(SupplierEntry.TABLE_NAME, supplierValues, SupplierEntry._ID + "=?",
+                            new String[]{String.valueOf(supplierId)});
+                    invalidateSupplierItems(supplierId);
+                    notifyChange(SupplierEntry.CONTENT_URI);
+                }
+                return supplierId;
+            }
+        } finally {
+            cursor.close();
         }
 
-        // Check that the product quantity is not negative
-        Integer productQuantity = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
-        Log.d("InventoryProvider", "productQuantity: " + productQuantity);
-        if (productQuantity == null || InventoryEntry.isGreaterThanOrEqualToZero(productQuantity)) {
-            throw new IllegalArgumentException("Item requires a quantity >= 0");
+        // A new supplier needs a phone number
+        if (phoneNumber == null || phoneNumber.isEmpty()) {
+            throw new IllegalArgumentException("Item requires valid supplier phone number");
         }
+        ContentValues supplierValues = new ContentValues();
+        supplierValues.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        supplierValues.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, phoneNumber);
+        long supplierId = database.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplierValues);
+        notifyChange(SupplierEntry.CONTENT_URI);
+        return supplierId;
+    }
 
+    /**
+     * Insert a supplier into the database with the given content values. Return the new content
+     * URI for that specific row in the database.
+     */
+    private Uri insertSupplier(@NonNull Uri uri, ContentValues values) {
         // Check that the supplier name is not null
-        String productSupplierName = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
-        Log.d("InventoryProvider", "productSupplierName: " + productSupplierName);
-        if (productSupplierName == null || productSupplierName.isEmpty()) {
-            throw new IllegalArgumentException("Item requires valid supplier name");
+        String name = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Supplier requires a name");
         }
 
         // Check that the supplier phone number is not null
-        String productSupplierPhoneNumber = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
-        Log.d("InventoryProvider", "productSupplierPhoneNumber: " + productSupplierPhoneNumber);
-        if (productSupplierPhoneNumber == null || productSupplierPhoneNumber.isEmpty()) {
-            throw new IllegalArgumentException("Item requires valid supplier phone number");
+        String phoneNumber = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+        if (phoneNumber == null || phoneNumber.isEmpty()) {
+            throw new IllegalArgumentException("Supplier requires a phone number");
         }
 
-        // Get writeable database
-        SQLiteDatabase database = dbHelper.getWritableDatabase();
-
-        // Insert the new item with the given values
-        long id = database.insertOrThrow(InventoryContract.InventoryEntry.TABLE_NAME, null, values);
-        // If the ID is -1, then the insertion failed. Log an error and return null.
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
-        }
+        // Insert the new supplier with the given values
+        long id = dbHelper.getWritableDatabase().insertOrThrow(SupplierEntry.TABLE_NAME, null, values);
 
-        // Notify all listeners that the data has changed for the item content URI
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Notify all listeners that the data has changed for the supplier content URI
+        notifyChange(uri);
 
         // Return the new URI with the ID (of the newly inserted row) appended at the end
         return ContentUris.withAppendedId(uri, id);
     }
 
+    /**
+     * Update suppliers in the database with the given content values. Return the number of rows
+     * that were successfully updated.
+     */
+    private int updateSupplier(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        // If the {@link SupplierEntry#COLUMN_SUPPLIER_NAME} key is present,
+        // check that the name value is not null.
+        if (values.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME)) {
+            String name = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("Supplier requires a name");
+            }
+        }
+
+        // If the {@link SupplierEntry#COLUMN_SUPPLIER_PHONE_NUMBER} key is present,
+        // check that the phone number is not null.
+        if (values.containsKey(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER)) {
+            String phoneNumber = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+            if (phoneNumber == null || phoneNumber.isEmpty()) {
+                throw new IllegalArgumentException("Supplier requires a phone number");
+            }
+        }
+
+        // If there are no values to update, then don't try to update the database
+        if (values.size() == 0) {
+            return 0;
+        }
+
+        // A single row of the suppliers table is updated, however many items it supplies.
+        int rowsUpdated = dbHelper.getWritableDatabase().update(SupplierEntry.TABLE_NAME, values, selection, selectionArgs);
+
+        // The supplier columns of the items change too.
+        if (rowsUpdated != 0) {
+            if (sUriMatcher.match(uri) == SUPPLIER_ID) {
+                invalidateSupplierItems(ContentUris.parseId(uri));
+            } else {
+                invalidateItem(-1);
+            }
+            notifyChange(uri);
+            notifyChange(InventoryEntry.CONTENT_URI);
+        }
+
+        // Return the number of rows updated
+        return rowsUpdated;
+    }
+
     @Override
     public int update(@NonNull Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
+        if (!metrics.isEnabled()) {
+            return doUpdate(uri, contentValues, selection, selectionArgs);
+        }
+        long start = System.nanoTime();
+        int rowsUpdated = doUpdate(uri, contentValues, selection, selectionArgs);
+        metrics.record(sUriMatcher.match(uri), ProviderMetrics.UPDATE, uri, rowsUpdated, System.nanoTime() - start);
+        return rowsUpdated;
+    }
+
+    /**
+     * Update rows, see {@link #update}.
+     */
+    private int doUpdate(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case INVENTORY:
@@ -219,6 +1887,22 @@ public class InventoryProvider extends ContentProvider {
                 selection = InventoryContract.InventoryEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 return updateItem(uri, contentValues, selection, selectionArgs);
+            case INVENTORY_SELL:
+                // For the INVENTORY_SELL code, the ID is the second to last path segment.
+                // Return 1 if the item was sold, or 0 if there wasn't enough stock.
+                long id = Long.parseLong(uri.getPathSegments().get(1));
+                return sellItem(id, getSellQuantity(contentValues)) < 0 ? 0 : 1;
+            case INVENTORY_SKU:
+            case INVENTORY_SKU_SELL:
+                // For the SKU codes, find the item the SKU belongs to, then update or sell it
+                // like through its own URI.
+                return updateItemBySku(uri, contentValues, match == INVENTORY_SKU_SELL);
+            case SUPPLIERS:
+                return updateSupplier(uri, contentValues, selection, selectionArgs);
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                return updateSupplier(uri, contentValues, selection, selectionArgs);
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
@@ -239,12 +1923,12 @@ public class InventoryProvider extends ContentProvider {
             }
         }
 
-        // If the {@link InventoryEntry#COLUMN_PRODUCT_PRICE} key is present,
-        // Check that the product price is not negative
-        if (values.containsKey(InventoryContract.InventoryEntry.COLUMN_PRODUCT_PRICE)) {
-            double productPrice = values.getAsDouble(InventoryEntry.COLUMN_PRODUCT_PRICE);
-            if (InventoryEntry.isGreaterThanOrEqualToZero(productPrice)) {
-                throw new IllegalArgumentException("Item requires a valid price >= 0");
+        // If the {@link InventoryEntry#COLUMN_PRODUCT_PRICE_CENTS} key is present,
+        // Check that the product price is a whole number of cents and not negative
+        if (values.containsKey(InventoryContract.InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS)) {
+            Long productPriceCents = values.getAsLong(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS);
+            if (productPriceCents == null || InventoryEntry.isGreaterThanOrEqualToZero(productPriceCents)) {
+                throw new IllegalArgumentException("Item requires a valid price in cents >= 0");
             }
         }
 
@@ -257,21 +1941,29 @@ public class InventoryProvider extends ContentProvider {
             }
         }
 
+        // If the {@link InventoryEntry#COLUMN_PRODUCT_SKU} key is present,
+        // Check that the SKU is null or well formed. The unique index rejects a SKU already taken.
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_SKU)) {
+            checkSku(values.getAsString(InventoryEntry.COLUMN_PRODUCT_SKU));
+        }
+
+        // Check that the reorder threshold, if present, is not negative
+        checkReorderThreshold(values);
+
         // If the {@link InventoryEntry#COLUMN_PRODUCT_SUPPLIER_NAME} key is present,
         // Check that the supplier name is not null
         if (values.containsKey(InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME)) {
-            // Check that the weight is greater than or equal to 0 kg
             String productSupplierName = values.getAsString(InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
             if (productSupplierName == null || productSupplierName.isEmpty()) {
                 throw new IllegalArgumentException("Item requires valid supplier name");
             }
         }
 
-        // If the {@link InventoryEntry#COLUMN_PRODUCT_SUPPLIER_NAME} key is present,
-        // Check that the supplier name is not null
-        if (values.containsKey(InventoryContract.InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME)) {
-            // Check that the weight is greater than or equal to 0 kg
-            String productSupplierPhoneNumber = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
+        // If the {@link InventoryEntry#COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER} key is present,
+        // Check that the supplier phone number is not null
+        String productSupplierPhoneNumber = null;
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER)) {
+            productSupplierPhoneNumber = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
             if (productSupplierPhoneNumber == null || productSupplierPhoneNumber.isEmpty()) {
                 throw new IllegalArgumentException("Item requires valid supplier phone number");
             }
@@ -285,20 +1977,135 @@ public class InventoryProvider extends ContentProvider {
         // Otherwise, get writable database to update the data
         SQLiteDatabase database = dbHelper.getWritableDatabase();
 
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(InventoryContract.InventoryEntry.TABLE_NAME, values, selection, selectionArgs);
+        // Run as a batch, so the cache is invalidated and the listeners notified once the
+        // transaction has committed, including for the supplier changes made on the way.
+        BatchState state = beginBatch();
+        boolean successful = false;
+        int rowsUpdated = 0;
+        int rowsMoved = 0;
+        boolean supplierChanged = false;
+        database.beginTransaction();
+        try {
+            // The selection compares the quantity as it was before this update, as the quantity
+            // changes below before the other columns are written. Nothing is folded meanwhile.
+            if (!TextUtils.isEmpty(selection)) {
+                long lastMovementId = DatabaseUtils.longForQuery(database, SQL_LAST_MOVEMENT, null);
+                selection = InventoryDbHelper.withQuantity(selection,
+                        InventoryDbHelper.quantitySql(InventoryEntry.TABLE_NAME, lastMovementId));
+            }
+
+            // The supplier columns live in the suppliers table, the item only keeps the supplier ID.
+            ContentValues itemValues = new ContentValues(values);
+            itemValues.remove(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+            itemValues.remove(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
 
-        // If one or more rows were updated, then notify all listeners that the data at the given URI has changed
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            // The quantity is not written to the items either, the difference is added to their
+            // stock movements. This goes first, while the selection still matches the same rows.
+            if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_QUANTITY)) {
+                itemValues.remove(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+                rowsMoved = adjustQuantity(database, values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY),
+                        selection, selectionArgs);
+            }
+            if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME)) {
+                // Move the items to the named supplier, creating it if needed.
+                itemValues.put(InventoryEntry.COLUMN_SUPPLIER_ID, findOrInsertSupplier(database,
+                        values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME), productSupplierPhoneNumber));
+                supplierChanged = productSupplierPhoneNumber != null;
+            } else if (productSupplierPhoneNumber != null) {
+                // Only the phone number changed, update it for the suppliers of the selected items.
+                ContentValues supplierValues = new ContentValues();
+                supplierValues.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, productSupplierPhoneNumber);
+                String itemSelection = TextUtils.isEmpty(selection) ? "" : " WHERE " + selection;
+                supplierChanged = database.update(SupplierEntry.TABLE_NAME, supplierValues, SupplierEntry._ID
+                                + " IN (SELECT " + InventoryEntry.COLUMN_SUPPLIER_ID + " FROM "
+                                + InventoryEntry.TABLE_NAME + itemSelection + ")", selectionArgs) != 0;
+            }
+
+            // Perform the update on the database and get the number of rows affected
+            if (itemValues.size() != 0) {
+                rowsUpdated = database.update(InventoryContract.InventoryEntry.TABLE_NAME, itemValues, selection, selectionArgs);
+            } else {
+                // Only the quantity or the supplier phone number was given. The rows updated are
+                // the selected items, including those that already had the quantity, and never
+                // the suppliers they share.
+                rowsUpdated = (int) DatabaseUtils.queryNumEntries(database, InventoryEntry.TABLE_NAME,
+                        selection, selectionArgs);
+            }
+
+            // If one or more rows were updated, then notify all listeners that the data at the given URI has changed.
+            // Updating inventory/# notifies that single row. A supplier change shows up in every item of that
+            // supplier, so it notifies the whole inventory.
+            if (rowsUpdated != 0) {
+                // A new phone number alone shows up in every item of the suppliers that were updated.
+                boolean phoneNumberOnly = supplierChanged
+                        && !values.containsKey(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+                invalidateItem(phoneNumberOnly ? -1 : InventoryEntry.getChangedItemId(uri));
+            }
+            if (supplierChanged) {
+                notifyChange(InventoryEntry.CONTENT_URI);
+                notifyChange(SupplierEntry.CONTENT_URI);
+            } else if (rowsUpdated != 0) {
+                notifyChange(uri);
+            }
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+            endBatch(state, successful);
+        }
+        if (rowsMoved != 0) {
+            movementsAdded(rowsMoved);
         }
 
         // Return the number of rows updated
         return rowsUpdated;
     }
 
+    /**
+     * Update or sell the item with the SKU of the given URI. The SKU is looked up in the same
+     * transaction as the write, so it can't move to another item in between. Return the number
+     * of rows updated, which is 0 if no item has that SKU or a sale was refused.
+     */
+    private int updateItemBySku(@NonNull Uri uri, ContentValues values, boolean sell) {
+        String sku = getSku(uri);
+        int quantity = sell ? getSellQuantity(values) : 0;
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        BatchState state = beginBatch();
+        boolean successful = false;
+        int rowsUpdated = 0;
+        database.beginTransaction();
+        try {
+            long id = findItemIdBySku(database, sku);
+            if (id != -1 && sell) {
+                rowsUpdated = sellItem(id, quantity) < 0 ? 0 : 1;
+            } else if (id != -1) {
+                rowsUpdated = updateItem(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), values,
+                        InventoryEntry._ID + "=?", new String[]{String.valueOf(id)});
+            }
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+            endBatch(state, successful);
+        }
+        return rowsUpdated;
+    }
+
     @Override
     public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+        if (!metrics.isEnabled()) {
+            return doDelete(uri, selection, selectionArgs);
+        }
+        long start = System.nanoTime();
+        int rowsDeleted = doDelete(uri, selection, selectionArgs);
+        metrics.record(sUriMatcher.match(uri), ProviderMetrics.DELETE, uri, rowsDeleted, System.nanoTime() - start);
+        return rowsDeleted;
+    }
+
+    /**
+     * Delete rows, see {@link #delete}.
+     */
+    private int doDelete(Uri uri, String selection, String[] selectionArgs) {
         // Get writable database
         SQLiteDatabase database = dbHelper.getWritableDatabase();
 
@@ -309,7 +2116,7 @@ public class InventoryProvider extends ContentProvider {
         switch (match) {
             case INVENTORY:
                 // Delete all rows that match the selection and selection args
-                rowsDeleted = database.delete(InventoryEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = database.delete(InventoryEntry.TABLE_NAME, withItemQuantity(selection), selectionArgs);
                 break;
             case INVENTORY_ID:
                 // Delete a single row given by the ID in the URI
@@ -317,27 +2124,479 @@ public class InventoryProvider extends ContentProvider {
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 rowsDeleted = database.delete(InventoryContract.InventoryEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case SUPPLIERS:
+                // Delete all suppliers that match the selection. A supplier still referenced by
+                // an item can't be deleted, the foreign key makes the delete fail.
+                rowsDeleted = database.delete(SupplierEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case SUPPLIER_ID:
+                // Delete a single supplier given by the ID in the URI
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                rowsDeleted = database.delete(SupplierEntry.TABLE_NAME, selection, selectionArgs);
+                break;
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
 
-        // If 1 or more rows were deleted, then notify all listeners that the data at the
-        // given URI has changed
+        // If 1 or more rows were deleted, then notify all listeners that the data has changed.
+        // Removing an item changes the shape of the inventory, so the whole inventory is notified
+        // even when a single item was deleted.
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (match == INVENTORY_ID) {
+                invalidateItem(ContentUris.parseId(uri));
+                notifyChange(InventoryEntry.CONTENT_URI);
+            } else if (match == INVENTORY) {
+                invalidateItem(-1);
+                notifyChange(uri);
+            } else {
+                notifyChange(uri);
+            }
         }
 
         // Return the number of rows deleted
         return rowsDeleted;
     }
 
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        if (!metrics.isEnabled()) {
+            return doCall(method, arg, extras);
+        }
+        long start = System.nanoTime();
+        Bundle result = doCall(method, arg, extras);
+        long nanos = System.nanoTime() - start;
+        // A sale is counted with the URI of its item, a call without a URI with its method. Only
+        // the sales accepted count as rows, a refused one has -1 as its new quantity.
+        int rows = 0;
+        if (result != null) {
+            int[] newQuantities = result.getIntArray(InventoryEntry.KEY_NEW_QUANTITIES);
+            if (newQuantities != null) {
+                for (int newQuantity : newQuantities) {
+                    if (newQuantity >= 0) {
+                        rows++;
+                    }
+                }
+            } else if (result.getInt(InventoryEntry.KEY_NEW_QUANTITY, -1) >= 0) {
+                rows = 1;
+            }
+        }
+        metrics.record(arg == null ? -1 : sUriMatcher.match(Uri.parse(arg)), ProviderMetrics.CALL,
+                arg == null ? method : arg, rows, nanos);
+        return result;
+    }
+
+    /**
+     * Call a method, see {@link #call}.
+     */
+    private Bundle doCall(String method, String arg, Bundle extras) {
+        if (InventoryContract.METHOD_SELL.equals(method)) {
+            // The arg is the content URI of the item to sell.
+            if (arg == null || sUriMatcher.match(Uri.parse(arg)) != INVENTORY_ID) {
+                throw new IllegalArgumentException("Selling requires an item URI, got " + arg);
+            }
+            int quantity = extras == null ? 1 : extras.getInt(InventoryEntry.KEY_SELL_QUANTITY, 1);
+            Bundle result = new Bundle();
+            result.putInt(InventoryEntry.KEY_NEW_QUANTITY, sellItem(ContentUris.parseId(Uri.parse(arg)), quantity));
+            return result;
+        }
+        if (InventoryContract.METHOD_SELL_ALL.equals(method)) {
+            long[] ids = extras == null ? null : extras.getLongArray(InventoryEntry.KEY_ITEM_IDS);
+            int[] quantities = extras == null ? null : extras.getIntArray(InventoryEntry.KEY_SELL_QUANTITIES);
+            if (ids == null || quantities == null || ids.length != quantities.length) {
+                throw new IllegalArgumentException("Selling requires as many quantities as item ids");
+            }
+            Bundle result = new Bundle();
+            result.putIntArray(InventoryEntry.KEY_NEW_QUANTITIES, sellItems(ids, quantities));
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Sell units of several items in a single transaction, with a single round of notifications.
+     * Return the quantity left of each item, or -1 where the sale was refused.
+     */
+    private int[] sellItems(long[] ids, int[] quantities) {
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        BatchState state = beginBatch();
+        boolean successful = false;
+        int[] newQuantities = new int[ids.length];
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                newQuantities[i] = sellItem(ids[i], quantities[i]);
+            }
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+            endBatch(state, successful);
+        }
+        return newQuantities;
+    }
+
+    /**
+     * Read the number of units to sell from the given values, defaulting to 1.
+     */
+    private static int getSellQuantity(ContentValues values) {
+        if (values == null || !values.containsKey(InventoryEntry.KEY_SELL_QUANTITY)) {
+            return 1;
+        }
+        Integer quantity = values.getAsInteger(InventoryEntry.KEY_SELL_QUANTITY);
+        if (quantity == null) {
+            throw new IllegalArgumentException("Sale requires a numeric quantity");
+        }
+        return quantity;
+    }
+
+    /**
+     * Sell the given number of units of an item. The sale is added to the stock movements of the
+     * item, guarded in SQL against taking the quantity below zero, so concurrent sales can never
+     * overwrite each other, and the item row is not written at all.
+     * Return the quantity left after the sale, or -1 if there wasn't enough stock or the item
+     * doesn't exist.
+     */
+    private int sellItem(long id, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Sale requires a quantity > 0");
+        }
+
+        // Get writable database
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+
+        int newQuantity = -1;
+        database.beginTransaction();
+        try {
+            if (addMovement(database, id, MovementEntry.KIND_SALE, -quantity) != -1) {
+                newQuantity = (int) DatabaseUtils.longForQuery(database, SQL_ITEM_QUANTITY,
+                        new String[]{String.valueOf(id)});
+            }
+            // Also mark a refused sale successful, it changed nothing. Leaving it unmarked would
+            // roll back the enclosing transaction of a batch.
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (newQuantity < 0) {
+            // Not enough stock (or no such item), nothing was changed.
+            return -1;
+        }
+
+        // Notify all listeners that the data has changed for the item content URI
+        invalidateItem(id);
+        notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id));
+        movementsAdded(1);
+        return newQuantity;
+    }
+
+    /**
+     * Insert many items in a single transaction. Every row goes through the same validation as
+     * {@link #insert}, but the database only commits (and listeners are only notified) once for
+     * the whole array. If any row fails validation, none of the rows are inserted.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        if (!metrics.isEnabled()) {
+            return doBulkInsert(uri, values);
+        }
+        long start = System.nanoTime();
+        int rowsInserted = doBulkInsert(uri, values);
+        metrics.record(sUriMatcher.match(uri), ProviderMetrics.BULK_INSERT, uri, rowsInserted,
+                System.nanoTime() - start);
+        return rowsInserted;
+    }
+
+    /**
+     * Insert many items, see {@link #bulkInsert}.
+     */
+    private int doBulkInsert(Uri uri, ContentValues[] values) {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
+            case INVENTORY:
+                break;
+            default:
+                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        BatchState state = beginBatch();
+        boolean successful = false;
+        int rowsInserted = 0;
+        database.beginTransaction();
+        try {
+            for (ContentValues contentValues : values) {
+                if (insertItem(uri, contentValues) != null) {
+                    rowsInserted++;
+                }
+            }
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+            endBatch(state, successful);
+        }
+
+        // Return the number of rows inserted
+        return rowsInserted;
+    }
+
+    /**
+     * Apply a batch of operations in a single transaction, so that either all of them are
+     * committed or none of them are. Listeners receive one notification for the whole batch.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        if (!metrics.isEnabled()) {
+            return doApplyBatch(operations);
+        }
+        long start = System.nanoTime();
+        ContentProviderResult[] results = doApplyBatch(operations);
+        // Each operation is also counted on its own URI.
+        metrics.record(-1, ProviderMetrics.APPLY_BATCH, "batch", results.length, System.nanoTime() - start);
+        return results;
+    }
+
+    /**
+     * Apply a batch of operations, see {@link #applyBatch}.
+     */
+    private ContentProviderResult[] doApplyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        BatchState state = beginBatch();
+        boolean successful = false;
+        database.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            database.endTransaction();
+            endBatch(state, successful);
+        }
+    }
+
+    /**
+     * Mark the current thread as running a batch. Returns the state of an enclosing batch, if
+     * any, so that nested batches only notify once the outermost one finishes.
+     */
+    private BatchState beginBatch() {
+        BatchState outer = batchState.get();
+        if (outer == null) {
+            batchState.set(new BatchState());
+        }
+        return outer;
+    }
+
+    /**
+     * Finish the batch started by {@link #beginBatch()} and send the notifications recorded
+     * during the batch if the transaction was committed. The coalescer merges them, so a batch
+     * touching many rows sends a single notification for the inventory.
+     */
+    private void endBatch(BatchState outer, boolean successful) {
+        if (outer != null) {
+            // Nested batch, the outermost one will notify.
+            return;
+        }
+        BatchState state = batchState.get();
+        batchState.remove();
+        if (successful) {
+            if (state.allItemsStale) {
+                itemCache.clear();
+            } else {
+                for (long id : state.staleItemIds) {
+                    itemCache.remove(id);
+                }
+                for (long supplierId : state.staleSupplierIds) {
+                    itemCache.removeWhere(InventoryEntry.COLUMN_SUPPLIER_ID, supplierId);
+                }
+            }
+            for (Uri uri : state.changedUris) {
+                notificationCoalescer.notifyChange(uri);
+            }
+            if (state.movementsAdded != 0) {
+                ledgerCompactor.onMovementsAdded(state.movementsAdded);
+            }
+        }
+    }
+
+    /**
+     * Drop an item from {@link #itemCache}, or all items if the id is -1. Inside a batch the item
+     * is only dropped once the transaction has committed, so no other thread can read the old row
+     * again after it was dropped.
+     */
+    private void invalidateItem(long id) {
+        BatchState state = batchState.get();
+        if (state != null) {
+            if (id < 0) {
+                state.allItemsStale = true;
+            } else {
+                state.staleItemIds.add(id);
+            }
+            return;
+        }
+        if (id < 0) {
+            itemCache.clear();
+        } else {
+            itemCache.remove(id);
+        }
+    }
+
+    /**
+     * Tell {@link #ledgerCompactor} that movements were added, once the transaction adding them
+     * has committed: at the end of the batch if one is running on this thread, so a fold never
+     * waits on the lock of a transaction still open, or for movements that may be rolled back.
+     */
+    private void movementsAdded(int count) {
+        BatchState state = batchState.get();
+        if (state != null) {
+            state.movementsAdded += count;
+            return;
+        }
+        ledgerCompactor.onMovementsAdded(count);
+    }
+
+    /**
+     * Drop the items of a supplier from {@link #itemCache}, like {@link #invalidateItem}.
+     */
+    private void invalidateSupplierItems(long supplierId) {
+        BatchState state = batchState.get();
+        if (state != null) {
+            state.staleSupplierIds.add(supplierId);
+            return;
+        }
+        itemCache.removeWhere(InventoryEntry.COLUMN_SUPPLIER_ID, supplierId);
+    }
+
+    /**
+     * Notify all listeners that the data at the given URI has changed, or defer the
+     * notification to the end of the batch if one is running on this thread.
+     * Notifications are held back for {@link NotificationCoalescer#WINDOW_MILLIS} so a burst
+     * of writes is sent once.
+     */
+    private void notifyChange(Uri uri) {
+        if (metrics.isEnabled()) {
+            metrics.record(sUriMatcher.match(uri), ProviderMetrics.NOTIFY, uri, 0, 0);
+        }
+        BatchState state = batchState.get();
+        if (state != null) {
+            state.changedUris.add(uri);
+            return;
+        }
+        notificationCoalescer.notifyChange(uri);
+    }
+
+    /**
+     * Print the hit and miss counts of the item cache, to help sizing it, the number of
+     * notifications sent and the {@link #metrics}. Run with
+     * adb shell dumpsys activity provider com.example.android.inventory
+     * Adding "metrics on", "metrics off" or "metrics reset" first turns the metrics on or off, or
+     * clears them.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length == 2 && "metrics".equals(args[0])) {
+            if ("on".equals(args[1])) {
+                metrics.setEnabled(true);
+            } else if ("off".equals(args[1])) {
+                metrics.setEnabled(false);
+            } else if ("reset".equals(args[1])) {
+                metrics.reset();
+            }
+        }
+        writer.println("Item cache: " + itemCache.size() + "/" + itemCache.maxSize() + " rows, "
+                + itemCache.hitCount() + " hits, " + itemCache.missCount() + " misses, "
+                + itemCache.evictionCount() + " evictions");
+        writer.println("Notifications: " + notificationCoalescer.getSentCount() + " sent");
+        metrics.dump(writer);
+    }
+
+    /**
+     * Open the export URI for reading as CSV.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != INVENTORY_EXPORT) {
+            throw new FileNotFoundException("No file for " + uri);
+        }
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("The export can only be read, not opened with mode " + mode);
+        }
+        return openPipeHelper(uri, InventoryEntry.MIME_TYPE_CSV, null, InventoryEntry.MIME_TYPE_CSV, exporter);
+    }
+
+    @Override
+    public String[] getStreamTypes(@NonNull Uri uri, @NonNull String mimeTypeFilter) {
+        if (sUriMatcher.match(uri) != INVENTORY_EXPORT) {
+            return null;
+        }
+        List<String> types = new ArrayList<String>(EXPORT_MIME_TYPES.length);
+        for (String type : EXPORT_MIME_TYPES) {
+            if (ClipDescription.compareMimeTypes(type, mimeTypeFilter)) {
+                types.add(type);
+            }
+        }
+        return types.isEmpty() ? null : types.toArray(new String[types.size()]);
+    }
+
+    /**
+     * Open the export URI as the first of {@link #EXPORT_MIME_TYPES} matching the filter. A
+     * background thread writes the rows into a pipe while the caller reads the other end, so
+     * the inventory is never held in memory as a whole.
+     */
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(@NonNull Uri uri, @NonNull String mimeTypeFilter, Bundle opts)
+            throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != INVENTORY_EXPORT) {
+            return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+        }
+        String[] types = getStreamTypes(uri, mimeTypeFilter);
+        if (types == null) {
+            throw new FileNotFoundException("The inventory can't be exported as " + mimeTypeFilter);
+        }
+        ParcelFileDescriptor pipe = openPipeHelper(uri, types[0], opts, types[0], exporter);
+        return new AssetFileDescriptor(pipe, 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+    }
+
     @Override
     public String getType(@NonNull Uri uri) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case INVENTORY:
+            case INVENTORY_SEARCH:
+            case SUPPLIER_ITEMS:
+                return InventoryEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case INVENTORY_STATS:
+                return StatsEntry.CONTENT_ITEM_TYPE;
+            case INVENTORY_CHANGES:
+                return ChangeEntry.CONTENT_LIST_TYPE;
+            case INVENTORY_MOVEMENTS:
+                return MovementEntry.CONTENT_LIST_TYPE;
+            case INVENTORY_LOW_STOCK:
+                return LowStockEntry.CONTENT_LIST_TYPE;
+            case INVENTORY_SALES:
+            case INVENTORY_ITEM_SALES:
+                return SalesEntry.CONTENT_LIST_TYPE;
+            case INVENTORY_VELOCITY:
                 return InventoryEntry.CONTENT_LIST_TYPE;
+            case INVENTORY_EXPORT:
+                return InventoryEntry.MIME_TYPE_CSV;
+            case METRICS:
+                return MetricsEntry.CONTENT_LIST_TYPE;
+            case METRICS_SLOW_QUERIES:
+                return MetricsEntry.SLOW_QUERIES_LIST_TYPE;
             case INVENTORY_ID:
+            case INVENTORY_SELL:
+            case INVENTORY_SKU:
+            case INVENTORY_SKU_SELL:
                 return InventoryContract.InventoryEntry.CONTENT_ITEM_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.example.android.inventory.data.InventoryContract.ChangeEntry;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryContract.LowStockEntry;
+import com.example.android.inventory.data.InventoryContract.MovementEntry;
+import com.example.android.inventory.data.InventoryContract.SalesEntry;
+import com.example.android.inventory.data.InventoryContract.StatsEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every query shape the app and {@link InventoryProvider} run against the inventory schema,
+ * with a check that runs EXPLAIN QUERY PLAN on each of them and reports the ones that fall back
+ * to scanning a table or sorting without an index. The shapes are built with the same query
+ * builders and SQL as the provider, so they read the columns the provider reads. The check runs
+ * as a unit test, InventoryQueryPlansTest.
+ * When adding a new kind of query to the provider, add its shape here too.
+ */
+final class InventoryQueryPlans {
+
+    /**
+     * Query shapes, as a description and the SQL, then optionally the one table the query may
+     * read without an index, because it returns every row of it or stops after a few of them. Every "?" is bound to "1". A null
+     * projection reads every column of the projection map, as a client passing none does.
+     */
+    private static final String[][] QUERY_SHAPES = {
+            {"item by id",
+                    InventoryProvider.buildItemQuery().buildQuery(null, InventoryEntry._ID + "=?",
+                            null, null, null, null)},
+            {"item by sku",
+                    InventoryProvider.buildItemQuery().buildQuery(null, InventoryEntry.COLUMN_PRODUCT_SKU + "=?",
+                            null, null, null, null)},
+            {"item id by sku", InventoryProvider.SQL_ITEM_ID_BY_SKU},
+            {"page by id",
+                    InventoryProvider.buildItemQuery().buildQuery(null, InventoryProvider.ID_PAGE_SELECTION,
+                            null, null, InventoryEntry._ID, "50")},
+            {"page by name",
+                    InventoryProvider.buildItemQuery().buildQuery(null, InventoryProvider.NAME_PAGE_SELECTION,
+                            null, null, InventoryProvider.NAME_PAGE_SORT_ORDER, "50")},
+            // The full text search table is a virtual table, scanning it is a lookup in its own index.
+            {"search page",
+                    InventoryProvider.buildItemQuery().buildQuery(null, DatabaseUtils.concatenateWhere(
+                            InventoryProvider.SEARCH_SELECTION, InventoryProvider.ID_PAGE_SELECTION),
+                            null, null, InventoryEntry._ID, "50"),
+                    InventoryEntry.SEARCH_TABLE_NAME},
+            {"items of supplier",
+                    InventoryProvider.buildItemQuery().buildQuery(null, InventoryEntry.COLUMN_SUPPLIER_ID + "=?",
+                            null, null, null, null)},
+            {"quantity of item", InventoryProvider.SQL_ITEM_QUANTITY},
+            {"sell item", InventoryProvider.SQL_ADD_MOVEMENT},
+            {"movements of item",
+                    SQLiteQueryBuilder.buildQueryString(false, MovementEntry.TABLE_NAME, null,
+                            MovementEntry.COLUMN_ITEM_ID + "=?", null, null, MovementEntry._ID, null)},
+            // Reads the movements backwards from the end, only as far as the last fold.
+            {"last fold", InventoryProvider.SQL_LAST_FOLD, MovementEntry.TABLE_NAME},
+            // The largest _id is found at the end of the table, without reading the rest of it.
+            {"last movement", InventoryProvider.SQL_LAST_MOVEMENT, MovementEntry.TABLE_NAME},
+            {"fold movements", InventoryProvider.SQL_FOLD_MOVEMENTS},
+            // The alerts table only holds the items running low, reading all of it is the point.
+            {"low stock alerts",
+                    InventoryProvider.buildLowStockQuery().buildQuery(null, null, null, null,
+                            LowStockEntry.COLUMN_ITEM_ID, null),
+                    LowStockEntry.TABLE_NAME},
+            {"daily sales",
+                    SQLiteQueryBuilder.buildQueryString(false, SalesEntry.DAILY_TABLE_NAME, null,
+                            DatabaseUtils.concatenateWhere(InventoryProvider.SALES_FROM_DAY_SELECTION,
+                                    InventoryProvider.SALES_TO_DAY_SELECTION),
+                            null, null, InventoryProvider.SALES_SORT_ORDER, null)},
+            {"weekly sales",
+                    SQLiteQueryBuilder.buildQueryString(false, SalesEntry.WEEKLY_TABLE_NAME, null,
+                            DatabaseUtils.concatenateWhere(InventoryProvider.SALES_FROM_DAY_SELECTION,
+                                    InventoryProvider.SALES_TO_DAY_SELECTION),
+                            null, null, InventoryProvider.SALES_SORT_ORDER, null)},
+            {"daily sales of item",
+                    SQLiteQueryBuilder.buildQueryString(false, SalesEntry.DAILY_TABLE_NAME, null,
+                            DatabaseUtils.concatenateWhere(DatabaseUtils.concatenateWhere(
+                                    SalesEntry.COLUMN_ITEM_ID + "=?", InventoryProvider.SALES_FROM_DAY_SELECTION),
+                                    InventoryProvider.SALES_TO_DAY_SELECTION),
+                            null, null, InventoryProvider.SALES_SORT_ORDER, null)},
+            // Velocity lists every item, with the sales of each read by primary key.
+            {"velocity",
+                    InventoryProvider.buildVelocityQuery(7).buildQuery(null, null, null, null, null, null),
+                    InventoryEntry.TABLE_NAME},
+            {"changes since",
+                    InventoryProvider.buildChangesQuery().buildQuery(null, ChangeEntry.COLUMN_VERSION + " > ?",
+                            null, null, ChangeEntry.COLUMN_VERSION, "500")},
+            {"stats",
+                    SQLiteQueryBuilder.buildQueryString(false, StatsEntry.TABLE_NAME, null, StatsEntry._ID + "=1",
+                            null, null, null, null)},
+            {"supplier by id",
+                    SQLiteQueryBuilder.buildQueryString(false, SupplierEntry.TABLE_NAME, null,
+                            SupplierEntry._ID + "=?", null, null, null, null)},
+            {"supplier by name",
+                    SQLiteQueryBuilder.buildQueryString(false, SupplierEntry.TABLE_NAME, null,
+                            SupplierEntry.COLUMN_SUPPLIER_NAME + "=?", null, null, null, null)},
+            {"export page", InventoryExporter.SQL_EXPORT_PAGE},
+            {"snapshot page of items", SnapshotFormat.INVENTORY.selectPage},
+            {"snapshot page of suppliers", SnapshotFormat.SUPPLIERS.selectPage},
+            {"delete item",
+                    "DELETE FROM " + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry._ID + "=?"},
+    };
+
+    // Not meant to be instantiated
+    private InventoryQueryPlans() {
+    }
+
+    /**
+     * Explain every query shape and return a description of each plan step that scans a table
+     * it may not read whole, or sorts in a temporary b-tree. An empty list means every query
+     * uses an index.
+     */
+    static List<String> findScans(SQLiteDatabase db) {
+        List<String> problems = new ArrayList<String>();
+        for (String[] shape : QUERY_SHAPES) {
+            String sql = shape[1];
+            String unindexedTable = shape.length > 2 ? shape[2] : null;
+            Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + sql, buildArgs(sql));
+            try {
+                int detailColumnIndex = plan.getColumnIndexOrThrow("detail");
+                while (plan.moveToNext()) {
+                    String detail = plan.getString(detailColumnIndex);
+                    if (isScan(detail, unindexedTable)) {
+                        problems.add(shape[0] + ": " + detail);
+                    }
+                }
+            } finally {
+                plan.close();
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Explain a single query and return its plan steps, one per line.
+     */
+    static String explain(SQLiteDatabase db, String sql) {
+        StringBuilder steps = new StringBuilder();
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + sql, buildArgs(sql));
+        try {
+            int detailColumnIndex = plan.getColumnIndexOrThrow("detail");
+            while (plan.moveToNext()) {
+                if (steps.length() > 0) {
+                    steps.append('\n');
+                }
+                steps.append(plan.getString(detailColumnIndex));
+            }
+        } finally {
+            plan.close();
+        }
+        return steps.toString();
+    }
+
+    /**
+     * Return true if the plan step reads a table other than the given one without searching an
+     * index for the rows, or sorts rows without an index. Only SEARCH steps using an index are
+     * lookups: a SCAN reads the whole table, even when it reads it through a covering index.
+     * Steps that only introduce subqueries are fine.
+     */
+    private static boolean isScan(String detail, String unindexedTable) {
+        if (detail.contains("USE TEMP B-TREE")) {
+            return true;
+        }
+        if (detail.startsWith("SEARCH") && detail.contains(" USING ")) {
+            return false;
+        }
+        if (!detail.startsWith("SEARCH") && !detail.startsWith("SCAN")) {
+            return false;
+        }
+        // Older versions of SQLite write "SCAN TABLE name".
+        String table = detail.replaceFirst("^(SEARCH|SCAN) (TABLE )?", "").split(" ")[0];
+        return !table.equals(unindexedTable);
+    }
+
+    /**
+     * Build one argument for every "?" in the SQL.
+     */
+    private static String[] buildArgs(String sql) {
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.charAt(i) == '?') {
+                count++;
+            }
+        }
+        String[] args = new String[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = "1";
+        }
+        return args;
+    }
+}
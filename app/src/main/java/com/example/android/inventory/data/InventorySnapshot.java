@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Saves the whole inventory, with its suppliers, to a snapshot file and restores it from one.
+ * Unlike a copy of the database file, a snapshot can be taken while the app is running, and
+ * unlike a CSV export it keeps the _ids and restores without going through the checks and
+ * triggers of every insert, so a large inventory is restored in seconds.
+ * <p>
+ * A snapshot can only be restored into a database of the same version. The file layout is
+ * described in {@link SnapshotFormat}. Must not be called from the main thread.
+ */
+public final class InventorySnapshot {
+
+    /**
+     * What a snapshot holds.
+     */
+    public static final class Result {
+        public final long suppliers;
+        public final long items;
+
+        /**
+         * The time the snapshot was taken, in milliseconds since the epoch
+         */
+        public final long createdMillis;
+
+        Result(long suppliers, long items, long createdMillis) {
+            this.suppliers = suppliers;
+            this.items = items;
+            this.createdMillis = createdMillis;
+        }
+    }
+
+    private final ContentResolver contentResolver;
+
+    public InventorySnapshot(Context context) {
+        contentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Write a snapshot of the inventory to the given URI. Reads and writes of the inventory go
+     * on meanwhile: each item is saved as it was when its page of items was read, with its supplier.
+     *
+     * @param destination The URI of the file, opened with {@link ContentResolver#openOutputStream}
+     * @throws IOException if the file can't be written
+     */
+    public Result write(Uri destination) throws IOException {
+        OutputStream out = contentResolver.openOutputStream(destination, "w");
+        if (out == null) {
+            throw new FileNotFoundException("Cannot open " + destination);
+        }
+        ContentProviderClient client = contentResolver.acquireContentProviderClient(InventoryContract.CONTENT_AUTHORITY);
+        try {
+            InventoryProvider provider = (InventoryProvider) client.getLocalContentProvider();
+            return provider.writeSnapshot(out);
+        } finally {
+            client.release();
+            out.close();
+        }
+    }
+
+    /**
+     * Replace the inventory and the suppliers with the ones of a snapshot. The snapshot is
+     * restored in a single transaction, so if it is damaged the inventory is left as it was.
+     *
+     * @param source The URI of the file, which must be a regular file so it can be mapped in memory
+     * @throws IOException if the file can't be read, or isn't a snapshot of this database version
+     */
+    public Result restore(Uri source) throws IOException {
+        ParcelFileDescriptor descriptor = contentResolver.openFileDescriptor(source, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException("Cannot open " + source);
+        }
+        SnapshotReader reader;
+        FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+        try {
+            // The mapping stays valid once the file is closed.
+            reader = new SnapshotReader(in.getChannel());
+        } finally {
+            in.close();
+        }
+        ContentProviderClient client = contentResolver.acquireContentProviderClient(InventoryContract.CONTENT_AUTHORITY);
+        try {
+            InventoryProvider provider = (InventoryProvider) client.getLocalContentProvider();
+            return provider.restoreSnapshot(reader);
+        } finally {
+            client.release();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+
+import com.example.android.inventory.data.InventoryContract.ChangeEntry;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the inventory of the device in sync with the back office, sending and receiving only
+ * the items that changed since the last sync. The device sends the changes of its change log
+ * (see {@link ChangeEntry}) after the last version the back office received, then applies the
+ * changes of the back office after the last version it received from there. Both versions are
+ * saved after each batch, so a sync that fails goes on where it stopped the next time.
+ * <p>
+ * Changes are sent before they are received, so the back office sees the edits made on the device
+ * before answering, and its answer wins. Must not be called from the main thread.
+ */
+public final class InventorySync {
+
+    /**
+     * Number of changes sent or received at a time
+     */
+    static final int BATCH_SIZE = 500;
+
+    private static final String PREFERENCES_NAME = "inventory_sync";
+
+    /**
+     * Last version of the change log of the device the back office received
+     */
+    private static final String KEY_PUSHED_VERSION = "pushed_version";
+
+    /**
+     * Last version of the back office the device received
+     */
+    private static final String KEY_PULLED_VERSION = "pulled_version";
+
+    private static final String[] CHANGE_PROJECTION = {
+            ChangeEntry.COLUMN_VERSION,
+            ChangeEntry.COLUMN_ITEM_ID,
+            ChangeEntry.COLUMN_OPERATION,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_SKU,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER
+    };
+
+    private static final String[] ITEM_PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_SKU,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER
+    };
+
+    /**
+     * The outcome of a sync.
+     */
+    public static final class Result {
+        public final long changesPushed;
+        public final long changesPulled;
+
+        Result(long changesPushed, long changesPulled) {
+            this.changesPushed = changesPushed;
+            this.changesPulled = changesPulled;
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final SharedPreferences preferences;
+    private final SyncTransport transport;
+
+    public InventorySync(Context context, SyncTransport transport) {
+        contentResolver = context.getContentResolver();
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.transport = transport;
+    }
+
+    /**
+     * Send the changes of the device, receive the changes of the back office, then compact the
+     * change log.
+     *
+     * @throws IOException if the transport failed. The batches done so far are kept.
+     */
+    public Result sync() throws IOException {
+        long pushed = push();
+        long pulled = pull();
+        ContentProviderClient client = contentResolver.acquireContentProviderClient(InventoryContract.CONTENT_AUTHORITY);
+        try {
+            ((InventoryProvider) client.getLocalContentProvider()).compactChanges();
+        } finally {
+            client.release();
+        }
+        return new Result(pushed, pulled);
+    }
+
+    /**
+     * Send the changes after the last version sent, and return their number.
+     */
+    private long push() throws IOException {
+        long since = preferences.getLong(KEY_PUSHED_VERSION, 0);
+        long pushed = 0;
+        while (true) {
+            List<SyncChange> changes = new ArrayList<SyncChange>();
+            boolean reset = false;
+            Cursor cursor = contentResolver.query(ChangeEntry.buildChangesUri(since, BATCH_SIZE),
+                    CHANGE_PROJECTION, null, null, null);
+            if (cursor == null) {
+                throw new IOException("Cannot read the change log");
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    if (cursor.getInt(2) == ChangeEntry.OPERATION_RESET) {
+                        // Only send the changes before the reset, then start over from it.
+                        reset = true;
+                        if (changes.isEmpty()) {
+                            since = cursor.getLong(0);
+                        }
+                        break;
+                    }
+                    changes.add(readChange(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (!changes.isEmpty()) {
+                transport.push(changes);
+                pushed += changes.size();
+                since = changes.get(changes.size() - 1).version;
+            } else if (reset) {
+                pushed += pushAll();
+            } else {
+                return pushed;
+            }
+            preferences.edit().putLong(KEY_PUSHED_VERSION, since).apply();
+        }
+    }
+
+    private static SyncChange readChange(Cursor cursor) {
+        long version = cursor.getLong(0);
+        long itemId = cursor.getLong(1);
+        int operation = cursor.getInt(2);
+        if (operation == ChangeEntry.OPERATION_DELETE || cursor.isNull(3)) {
+            // An item updated then deleted before this batch was read is a delete too.
+            return SyncChange.delete(version, itemId);
+        }
+        return new SyncChange(version, itemId, operation, cursor.getString(3), cursor.getLong(4), cursor.getInt(5),
+                cursor.getString(6), cursor.getString(7), cursor.getString(8));
+    }
+
+    /**
+     * Send the whole inventory again after the change log was reset, and return the number of
+     * items sent. The items changed while they are sent are also in the log after the reset, so
+     * they are sent again with their latest values.
+     */
+    private long pushAll() throws IOException {
+        transport.reset();
+        long pushed = 0;
+        long lastId = -1;
+        while (true) {
+            List<SyncChange> changes = new ArrayList<SyncChange>();
+            Cursor cursor = contentResolver.query(InventoryEntry.buildPageUri(InventoryEntry.CONTENT_URI, BATCH_SIZE, lastId),
+                    ITEM_PROJECTION, null, null, null);
+            if (cursor == null) {
+                throw new IOException("Cannot read the inventory");
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    changes.add(new SyncChange(0, lastId, ChangeEntry.OPERATION_INSERT, cursor.getString(1),
+                            cursor.getLong(2), cursor.getInt(3), cursor.getString(4), cursor.getString(5),
+                            cursor.getString(6)));
+                }
+            } finally {
+                cursor.close();
+            }
+            if (changes.isEmpty()) {
+                return pushed;
+            }
+            transport.push(changes);
+            pushed += changes.size();
+            if (changes.size() < BATCH_SIZE) {
+                return pushed;
+            }
+        }
+    }
+
+    /**
+     * Apply the changes of the back office after the last version received, and return their number.
+     */
+    private long pull() throws IOException {
+        long since = preferences.getLong(KEY_PULLED_VERSION, 0);
+        long pulled = 0;
+        ContentProviderClient client = contentResolver.acquireContentProviderClient(InventoryContract.CONTENT_AUTHORITY);
+        try {
+            // The provider runs in this process, so the changes are written straight to its database.
+            InventoryProvider provider = (InventoryProvider) client.getLocalContentProvider();
+            while (true) {
+                List<SyncChange> changes = transport.pull(since, BATCH_SIZE);
+                if (changes.isEmpty()) {
+                    return pulled;
+                }
+                provider.applySyncChanges(changes);
+                pulled += changes.size();
+                since = changes.get(changes.size() - 1).version;
+                preferences.edit().putLong(KEY_PULLED_VERSION, since).apply();
+                if (changes.size() < BATCH_SIZE) {
+                    return pulled;
+                }
+            }
+        } finally {
+            client.release();
+        }
+    }
+}
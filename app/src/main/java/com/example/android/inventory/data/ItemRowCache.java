@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import java.util.Map;
+
+/**
+ * A bounded cache of the most recently read inventory rows, keyed by _id, used by
+ * {@link InventoryProvider} to answer single item queries without going to SQLite.
+ * <p>
+ * Each cached row holds every column of {@link #getColumns()}, so a hit can serve any projection.
+ * A row read while the cache was being invalidated is not stored, so a read racing with a write
+ * can't put back a stale row.
+ */
+final class ItemRowCache {
+
+    /**
+     * The columns of a cached row
+     */
+    private final String[] columns;
+
+    private final LruCache<Long, Object[]> rows;
+
+    /**
+     * Incremented on every invalidation. Guarded by this.
+     */
+    private long version;
+
+    /**
+     * @param columns The columns of a cached row
+     * @param maxRows The maximum number of rows kept
+     */
+    ItemRowCache(String[] columns, int maxRows) {
+        this.columns = columns;
+        rows = new LruCache<Long, Object[]>(maxRows);
+    }
+
+    /**
+     * Return the columns of a cached row.
+     */
+    String[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * Return the version to pass to {@link #put}. Must be read before the row is queried.
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Return a cursor over the cached row with the given projection, or null if the row isn't cached.
+     *
+     * @throws IllegalArgumentException if the projection has a column the rows don't have
+     */
+    Cursor get(long id, String[] projection) {
+        Object[] row = rows.get(id);
+        if (row == null) {
+            return null;
+        }
+        return toCursor(row, projection);
+    }
+
+    /**
+     * Read the current row of a cursor queried with {@link #getColumns()}, cache it unless the
+     * cache was invalidated since version was read, and return it as a cursor with the given projection.
+     */
+    Cursor put(long id, Cursor cursor, long version, String[] projection) {
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    row[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    row[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    row[i] = null;
+                    break;
+            }
+        }
+        synchronized (this) {
+            if (version == this.version) {
+                rows.put(id, row);
+            }
+        }
+        return toCursor(row, projection);
+    }
+
+    /**
+     * Drop the row with the given _id.
+     */
+    synchronized void remove(long id) {
+        version++;
+        rows.remove(id);
+    }
+
+    /**
+     * Drop the rows whose value in the given column is the given value.
+     */
+    synchronized void removeWhere(String column, long value) {
+        version++;
+        int index = indexOf(column);
+        for (Map.Entry<Long, Object[]> entry : rows.snapshot().entrySet()) {
+            Object cached = entry.getValue()[index];
+            if (cached instanceof Long && (Long) cached == value) {
+                rows.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Drop all rows.
+     */
+    synchronized void clear() {
+        version++;
+        rows.evictAll();
+    }
+
+    int hitCount() {
+        return rows.hitCount();
+    }
+
+    int missCount() {
+        return rows.missCount();
+    }
+
+    int evictionCount() {
+        return rows.evictionCount();
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    int maxSize() {
+        return rows.maxSize();
+    }
+
+    private Cursor toCursor(Object[] row, String[] projection) {
+        if (projection == null) {
+            MatrixCursor cursor = new MatrixCursor(columns, 1);
+            cursor.addRow(row);
+            return cursor;
+        }
+        Object[] values = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            values[i] = row[indexOf(projection[i])];
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(values);
+        return cursor;
+    }
+
+    private int indexOf(String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Invalid column " + column);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.database.SQLException;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Folds the stock movements into the quantity of their items on a background thread, see
+ * {@link InventoryProvider#foldMovements()}. A fold runs a few seconds after the first movement
+ * added since the last one, so a burst of sales is folded at once, or as soon as many movements
+ * are waiting, so reading a quantity never has many movements to add.
+ */
+final class LedgerCompactor {
+
+    private static final String LOG_TAG = LedgerCompactor.class.getSimpleName();
+
+    /**
+     * How long after the first movement a fold runs, in milliseconds
+     */
+    static final long DELAY_MILLIS = 5000;
+
+    /**
+     * Number of movements waiting that makes a fold run right away
+     */
+    static final int MAX_PENDING_MOVEMENTS = 500;
+
+    private final InventoryProvider provider;
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    /**
+     * Movements added since the last fold started. Guarded by this.
+     */
+    private int pendingMovements;
+
+    /**
+     * Whether a fold is posted and not started yet. Guarded by this.
+     */
+    private boolean scheduled;
+
+    private final Runnable fold = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (LedgerCompactor.this) {
+                pendingMovements = 0;
+                scheduled = false;
+            }
+            try {
+                provider.foldMovements();
+            } catch (SQLException e) {
+                // The movements stay where they are, and are folded with the next ones.
+                Log.e(LOG_TAG, "Failed to fold the stock movements", e);
+            }
+        }
+    };
+
+    LedgerCompactor(InventoryProvider provider) {
+        this.provider = provider;
+        thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Schedule a fold for the given number of movements just added.
+     */
+    void onMovementsAdded(int count) {
+        synchronized (this) {
+            pendingMovements += count;
+            if (pendingMovements >= MAX_PENDING_MOVEMENTS) {
+                handler.removeCallbacks(fold);
+                handler.post(fold);
+                scheduled = true;
+            } else if (!scheduled) {
+                handler.postDelayed(fold, DELAY_MILLIS);
+                scheduled = true;
+            }
+        }
+    }
+
+    /**
+     * Stop the background thread. The folds not started yet are dropped, their movements stay
+     * where they are until the next run of the app.
+     */
+    void quit() {
+        thread.quit();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the change notifications sent during a short window and sends each distinct URI once
+ * when the window ends, so a burst of writes wakes every observer up once instead of once per write.
+ * <p>
+ * A URI is dropped when one of its ancestors is sent in the same window, since observers of the
+ * ancestor reload everything anyway. When too many rows of a collection changed in one window,
+ * a single notification for the collection replaces them.
+ */
+final class NotificationCoalescer {
+
+    /**
+     * How long notifications are held back, in milliseconds
+     */
+    static final long WINDOW_MILLIS = 100;
+
+    /**
+     * Above this many changed rows of one collection in a window, the collection is notified instead
+     */
+    static final int MAX_ROW_NOTIFICATIONS = 16;
+
+    private final ContentResolver contentResolver;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The URIs to notify at the end of the current window. Guarded by this.
+     */
+    private final Set<Uri> pending = new LinkedHashSet<Uri>();
+
+    /**
+     * Number of notifications sent since the provider started. Guarded by this.
+     */
+    private long sentCount;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    NotificationCoalescer(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    /**
+     * Notify the observers of the given URI at the end of the current window.
+     */
+    void notifyChange(Uri uri) {
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                handler.postDelayed(flush, WINDOW_MILLIS);
+            }
+            pending.add(uri);
+        }
+    }
+
+    /**
+     * Send the notifications collected during the window that just ended.
+     */
+    private void flush() {
+        List<Uri> uris;
+        synchronized (this) {
+            uris = new ArrayList<Uri>(pending);
+            pending.clear();
+        }
+        List<Uri> collapsed = collapse(uris);
+        for (Uri uri : collapsed) {
+            contentResolver.notifyChange(uri, null);
+        }
+        synchronized (this) {
+            sentCount += collapsed.size();
+        }
+    }
+
+    /**
+     * Return the number of notifications sent, after merging.
+     */
+    synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Replace rows by their collection when there are too many of them, then drop every URI that
+     * has an ancestor in the list.
+     */
+    private static List<Uri> collapse(List<Uri> uris) {
+        Map<Uri, Integer> childCounts = new HashMap<Uri, Integer>();
+        for (Uri uri : uris) {
+            Uri parent = getParent(uri);
+            if (parent != null) {
+                Integer count = childCounts.get(parent);
+                childCounts.put(parent, count == null ? 1 : count + 1);
+            }
+        }
+
+        Set<Uri> result = new LinkedHashSet<Uri>();
+        for (Uri uri : uris) {
+            Uri parent = getParent(uri);
+            if (parent != null && childCounts.get(parent) > MAX_ROW_NOTIFICATIONS) {
+                uri = parent;
+            }
+            result.add(uri);
+        }
+
+        List<Uri> collapsed = new ArrayList<Uri>(result.size());
+        for (Uri uri : result) {
+            if (!hasAncestorIn(uri, result)) {
+                collapsed.add(uri);
+            }
+        }
+        return collapsed;
+    }
+
+    /**
+     * Return true if any ancestor of the URI is in the given set.
+     */
+    private static boolean hasAncestorIn(Uri uri, Set<Uri> uris) {
+        for (Uri parent = getParent(uri); parent != null; parent = getParent(parent)) {
+            if (uris.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the URI without its last path segment, or null if it has no path.
+     */
+    private static Uri getParent(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty()) {
+            return null;
+        }
+        Uri.Builder builder = new Uri.Builder().scheme(uri.getScheme()).authority(uri.getAuthority());
+        for (int i = 0; i < segments.size() - 1; i++) {
+            builder.appendPath(segments.get(i));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+import android.util.SparseArray;
+
+import com.example.android.inventory.data.InventoryContract.MetricsEntry;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Counts the calls of {@link InventoryProvider} by URI and operation: how many, how many rows,
+ * and a histogram of how long they took. Queries slower than a threshold are also kept, with
+ * their SQL and its plan, in a short log.
+ * <p>
+ * The metrics are off unless the provider_metrics resource or dumpsys turns them on. While they
+ * are off, the provider only reads {@link #isEnabled} on each call, and nothing is allocated.
+ * <p>
+ * SQLite only runs a query once its cursor is first filled, which the provider leaves to the
+ * client as it always does. So a query is counted when its cursor is filled, on the thread
+ * filling it, with the time spent in the provider and the time of the fill, see
+ * {@link QueryTiming}.
+ */
+final class ProviderMetrics {
+
+    // The operations the calls are counted under, the index of their name in OPERATION_NAMES
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int UPDATE = 2;
+    static final int DELETE = 3;
+    static final int BULK_INSERT = 4;
+    static final int APPLY_BATCH = 5;
+    static final int CALL = 6;
+    static final int NOTIFY = 7;
+
+    private static final String[] OPERATION_NAMES = {
+            "query", "insert", "update", "delete", "bulk_insert", "apply_batch", "call", "notify"
+    };
+
+    /**
+     * Number of histogram buckets. Bucket b counts the calls taking less than 2^b microseconds
+     * but not less than 2^(b-1), and the last one every call from about 4 seconds up.
+     */
+    private static final int BUCKET_COUNT = 24;
+
+    /**
+     * Number of slow queries kept, the oldest is dropped first
+     */
+    private static final int SLOW_QUERY_LOG_SIZE = 20;
+
+    /**
+     * The columns of the rows of {@link #buildCursor}
+     */
+    private static final String[] COLUMNS = {
+            MetricsEntry.COLUMN_URI,
+            MetricsEntry.COLUMN_OPERATION,
+            MetricsEntry.COLUMN_COUNT,
+            MetricsEntry.COLUMN_ROWS,
+            MetricsEntry.COLUMN_TOTAL_MICROS,
+            MetricsEntry.COLUMN_MAX_MICROS,
+            MetricsEntry.COLUMN_P50_MICROS,
+            MetricsEntry.COLUMN_P90_MICROS,
+            MetricsEntry.COLUMN_P99_MICROS,
+            MetricsEntry.COLUMN_HISTOGRAM
+    };
+
+    /**
+     * The columns of the rows of {@link #buildSlowQueryCursor}
+     */
+    private static final String[] SLOW_QUERY_COLUMNS = {
+            MetricsEntry.COLUMN_TIME_MILLIS,
+            MetricsEntry.COLUMN_URI,
+            MetricsEntry.COLUMN_DURATION_MICROS,
+            MetricsEntry.COLUMN_SELECTION,
+            MetricsEntry.COLUMN_SQL,
+            MetricsEntry.COLUMN_PLAN
+    };
+
+    /**
+     * The query being timed on each thread, see {@link QueryTiming#start}
+     */
+    private static final ThreadLocal<QueryTiming> currentTiming = new ThreadLocal<QueryTiming>();
+
+    /**
+     * Creates the cursors of the inventory database like the default factory does. While a query
+     * is timed on the thread, the cursors are {@link TimedCursor}s instead, which keep their
+     * query so the SQL of a slow query can be explained.
+     */
+    static final SQLiteDatabase.CursorFactory CURSOR_FACTORY = new SQLiteDatabase.CursorFactory() {
+        @Override
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable,
+                                SQLiteQuery query) {
+            QueryTiming timing = currentTiming.get();
+            if (timing == null) {
+                return new SQLiteCursor(masterQuery, editTable, query);
+            }
+            timing.lastQuery = query;
+            return new TimedCursor(masterQuery, editTable, query, timing);
+        }
+    };
+
+    /**
+     * The timing of one query of the provider, only made while the metrics are on. The time
+     * spent in the provider is added to the time the returned cursor takes to fill its first
+     * window, and {@link #onTimed} is called once both are known. A cursor closed before it was
+     * filled is counted with no rows. A cursor the provider built without SQL, such as from a
+     * cache, is counted as soon as the provider returns it.
+     */
+    abstract static class QueryTiming {
+        /**
+         * The last query compiled while this was timed. Only used on the thread of the provider.
+         */
+        private SQLiteQuery lastQuery;
+
+        /**
+         * The cursor waiting for its first fill, and the time spent in the provider. Guarded by
+         * this.
+         */
+        private TimedCursor pendingCursor;
+        private long providerNanos;
+
+        /**
+         * Called once the query is timed, on the thread that filled the cursor.
+         *
+         * @param rows  Number of rows of the cursor
+         * @param nanos How long the provider and the first fill took
+         * @param sql   The SQL of the query, or null if it was answered without SQL
+         */
+        abstract void onTimed(int rows, long nanos, String sql);
+
+        /**
+         * Time the cursors created on this thread until {@link #finish}.
+         */
+        void start() {
+            currentTiming.set(this);
+        }
+
+        /**
+         * Stop timing the cursors created on this thread, and wait for the given cursor the
+         * provider returns to be filled.
+         *
+         * @param cursor The cursor returned, or null if the query failed
+         * @param nanos  How long the provider took to build it
+         */
+        void finish(Cursor cursor, long nanos) {
+            currentTiming.remove();
+            if (cursor == null) {
+                return;
+            }
+            if (cursor instanceof TimedCursor && ((TimedCursor) cursor).timing == this
+                    && !((TimedCursor) cursor).counted) {
+                synchronized (this) {
+                    pendingCursor = (TimedCursor) cursor;
+                    providerNanos = nanos;
+                }
+                return;
+            }
+            // Built without SQL, or already filled by the provider, counting is free.
+            onTimed(cursor.getCount(), nanos, lastQuery == null ? null : getSql(lastQuery));
+        }
+
+        /**
+         * Count the given cursor after its first fill, if it is the one the provider returned.
+         */
+        void filled(TimedCursor cursor, int rows, long nanos) {
+            long totalNanos;
+            synchronized (this) {
+                if (cursor != pendingCursor) {
+                    return;
+                }
+                pendingCursor = null;
+                totalNanos = providerNanos + nanos;
+            }
+            onTimed(rows, totalNanos, getSql(cursor.query));
+        }
+    }
+
+    /**
+     * A cursor of a timed query, which times its first fill. Like every {@link SQLiteCursor}, it
+     * fills its first window when it is first counted, including by its first move.
+     */
+    private static final class TimedCursor extends SQLiteCursor {
+        final QueryTiming timing;
+        final SQLiteQuery query;
+        boolean counted;
+
+        TimedCursor(SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query, QueryTiming timing) {
+            super(masterQuery, editTable, query);
+            this.timing = timing;
+            this.query = query;
+        }
+
+        @Override
+        public int getCount() {
+            if (counted) {
+                return super.getCount();
+            }
+            counted = true;
+            long start = System.nanoTime();
+            int count = super.getCount();
+            timing.filled(this, count, System.nanoTime() - start);
+            return count;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            if (!counted) {
+                counted = true;
+                timing.filled(this, 0, 0);
+            }
+        }
+    }
+
+    /**
+     * The counts of one operation on one kind of URI. Guarded by the {@link ProviderMetrics}.
+     */
+    private static final class Entry {
+        final String uri;
+        final int operation;
+        final long[] buckets = new long[BUCKET_COUNT];
+        long count;
+        long rows;
+        long totalNanos;
+        long maxNanos;
+
+        Entry(String uri, int operation) {
+            this.uri = uri;
+            this.operation = operation;
+        }
+
+        /**
+         * Return the upper bound, in microseconds, of the bucket holding the given fraction of
+         * the calls.
+         */
+        long percentileMicros(double fraction) {
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int b = 0; b < BUCKET_COUNT; b++) {
+                seen += buckets[b];
+                if (seen >= rank) {
+                    return 1L << b;
+                }
+            }
+            return 1L << (BUCKET_COUNT - 1);
+        }
+
+        /**
+         * Return the non empty buckets as "upper bound in microseconds:count", separated by spaces.
+         */
+        String histogram() {
+            StringBuilder builder = new StringBuilder();
+            for (int b = 0; b < BUCKET_COUNT; b++) {
+                if (buckets[b] != 0) {
+                    if (builder.length() > 0) {
+                        builder.append(' ');
+                    }
+                    builder.append(1L << b).append(':').append(buckets[b]);
+                }
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * One query of the slow query log.
+     */
+    private static final class SlowQuery {
+        final long timeMillis;
+        final String uri;
+        final long durationMicros;
+        final String selection;
+        final String sql;
+        final String plan;
+
+        SlowQuery(long timeMillis, String uri, long durationMicros, String selection, String sql, String plan) {
+            this.timeMillis = timeMillis;
+            this.uri = uri;
+            this.durationMicros = durationMicros;
+            this.selection = selection;
+            this.sql = sql;
+            this.plan = plan;
+        }
+    }
+
+    private volatile boolean enabled;
+    private final long slowQueryNanos;
+
+    /**
+     * The entries by URI matcher code and operation, see {@link #key}. Guarded by this.
+     */
+    private final SparseArray<Entry> entries = new SparseArray<Entry>();
+
+    /**
+     * The slow queries, a ring where the next one goes at slowQueryCount % size. Guarded by this.
+     */
+    private final SlowQuery[] slowQueries = new SlowQuery[SLOW_QUERY_LOG_SIZE];
+    private long slowQueryCount;
+
+    /**
+     * Constructs a new {@link ProviderMetrics}.
+     *
+     * @param enabled         Whether to count the calls from the start
+     * @param slowQueryMillis Queries taking at least this long are kept in the slow query log
+     */
+    ProviderMetrics(boolean enabled, long slowQueryMillis) {
+        this.enabled = enabled;
+        slowQueryNanos = slowQueryMillis * 1000000L;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Return true if a query taking the given time goes into the slow query log.
+     */
+    boolean isSlow(long nanos) {
+        return nanos >= slowQueryNanos;
+    }
+
+    /**
+     * Return the SQL of the given query.
+     */
+    private static String getSql(SQLiteQuery query) {
+        // The SQL itself isn't public, but the description of the query is "SQLiteQuery: " + SQL.
+        String description = query.toString();
+        int start = description.indexOf(": ");
+        return start < 0 ? null : description.substring(start + 2);
+    }
+
+    /**
+     * Count one call.
+     *
+     * @param code      The URI matcher code of the URI called, or -1 if there is no URI
+     * @param operation The operation called, such as {@link #QUERY}
+     * @param example   The URI or method called, only turned into text the first time the code
+     *                  and operation are seen
+     * @param rows      Number of rows read or written
+     * @param nanos     How long the call took
+     */
+    synchronized void record(int code, int operation, Object example, int rows, long nanos) {
+        int key = key(code, operation);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(String.valueOf(example), operation);
+            entries.put(key, entry);
+        }
+        entry.count++;
+        entry.rows += rows;
+        entry.totalNanos += nanos;
+        entry.maxNanos = Math.max(entry.maxNanos, nanos);
+        long micros = nanos / 1000;
+        entry.buckets[Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1)]++;
+    }
+
+    /**
+     * Add a query to the slow query log, dropping the oldest one if the log is full.
+     */
+    synchronized void addSlowQuery(String uri, long nanos, String selection, String sql, String plan) {
+        slowQueries[(int) (slowQueryCount++ % SLOW_QUERY_LOG_SIZE)] = new SlowQuery(System.currentTimeMillis(),
+                uri, nanos / 1000, selection, sql, plan);
+    }
+
+    /**
+     * Forget every count and slow query.
+     */
+    synchronized void reset() {
+        entries.clear();
+        Arrays.fill(slowQueries, null);
+        slowQueryCount = 0;
+    }
+
+    /**
+     * Return a cursor with one row of counts for each URI and operation, in the columns of
+     * {@link MetricsEntry}.
+     */
+    synchronized Cursor buildCursor() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.valueAt(i);
+            cursor.addRow(new Object[]{entry.uri, OPERATION_NAMES[entry.operation], entry.count, entry.rows,
+                    entry.totalNanos / 1000, entry.maxNanos / 1000, entry.percentileMicros(0.5),
+                    entry.percentileMicros(0.9), entry.percentileMicros(0.99), entry.histogram()});
+        }
+        return cursor;
+    }
+
+    /**
+     * Return a cursor with the slow queries, oldest first, in the columns of {@link MetricsEntry}.
+     */
+    synchronized Cursor buildSlowQueryCursor() {
+        MatrixCursor cursor = new MatrixCursor(SLOW_QUERY_COLUMNS, SLOW_QUERY_LOG_SIZE);
+        for (long i = Math.max(0, slowQueryCount - SLOW_QUERY_LOG_SIZE); i < slowQueryCount; i++) {
+            SlowQuery query = slowQueries[(int) (i % SLOW_QUERY_LOG_SIZE)];
+            cursor.addRow(new Object[]{query.timeMillis, query.uri, query.durationMicros, query.selection,
+                    query.sql, query.plan});
+        }
+        return cursor;
+    }
+
+    /**
+     * Print the counts and the slow query log.
+     */
+    synchronized void dump(PrintWriter writer) {
+        writer.println("Metrics: " + (enabled ? "on" : "off") + ", slow queries from "
+                + slowQueryNanos / 1000000 + " ms");
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.valueAt(i);
+            if (entry.operation == NOTIFY) {
+                // Notifications aren't timed, they are sent later by the NotificationCoalescer.
+                writer.println("  notify " + entry.uri + ": " + entry.count + " calls");
+                continue;
+            }
+            writer.println(String.format(Locale.US, "  %s %s: %d calls, %d rows, avg %d us, p50 < %d us, "
+                            + "p90 < %d us, p99 < %d us, max %d us", OPERATION_NAMES[entry.operation], entry.uri,
+                    entry.count, entry.rows, entry.totalNanos / 1000 / entry.count, entry.percentileMicros(0.5),
+                    entry.percentileMicros(0.9), entry.percentileMicros(0.99), entry.maxNanos / 1000));
+            writer.println("    histogram (us:calls): " + entry.histogram());
+        }
+        writer.println("Slow queries: " + slowQueryCount);
+        for (long i = Math.max(0, slowQueryCount - SLOW_QUERY_LOG_SIZE); i < slowQueryCount; i++) {
+            SlowQuery query = slowQueries[(int) (i % SLOW_QUERY_LOG_SIZE)];
+            writer.println("  " + query.durationMicros / 1000 + " ms " + query.uri
+                    + (query.selection == null ? "" : " where " + query.selection));
+            writer.println("    " + query.sql);
+            writer.println("    " + query.plan.replace("\n", "\n    "));
+        }
+    }
+
+    /**
+     * Return the key of the entry of the given URI matcher code and operation.
+     */
+    private static int key(int code, int operation) {
+        return code * OPERATION_NAMES.length + operation;
+    }
+}
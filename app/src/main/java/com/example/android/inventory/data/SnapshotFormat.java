@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
+
+import java.nio.charset.Charset;
+
+/**
+ * The layout of the snapshot files written by {@link SnapshotWriter} and read by
+ * {@link SnapshotReader}. A file starts with {@link #MAGIC} and {@link #FORMAT_VERSION}, followed
+ * by blocks. Each block is the length of its contents in bytes, the CRC32 of its contents, then
+ * its contents, which start with the kind of block:
+ * <ul>
+ * <li>{@link #BLOCK_HEADER}, always first: the version of the database the snapshot was taken
+ * from, the time it was taken, and the AUTOINCREMENT sequence of each of the {@link #TABLES}.
+ * <li>{@link #BLOCK_ROWS}: the index of the table in {@link #TABLES}, the number of rows, then
+ * the rows column by column. Each integer column is one 8 byte value per row, each text column
+ * the UTF-8 length of every value, or -1 for NULL, followed by all the values. The blocks of a
+ * table may come after those of the next one, but a supplier always comes before its items.
+ * <li>{@link #BLOCK_END}, always last: the number of rows of each table. A file without it was
+ * cut short.
+ * </ul>
+ * Numbers are big-endian. Storing the rows by column keeps the values of a column together, so
+ * they are written and read in tight loops.
+ */
+final class SnapshotFormat {
+
+    /**
+     * First bytes of every snapshot, "INVS"
+     */
+    static final int MAGIC = 0x494e5653;
+
+    /**
+     * Version of the layout, increased when it changes
+     */
+    static final int FORMAT_VERSION = 2;
+
+    static final byte BLOCK_HEADER = 1;
+    static final byte BLOCK_ROWS = 2;
+    static final byte BLOCK_END = 3;
+
+    /**
+     * Most rows in a block, also the number of rows read by each query while taking a snapshot
+     */
+    static final int ROWS_PER_BLOCK = 4096;
+
+    /**
+     * Longest block accepted, so a damaged length can't make the reader allocate without bound
+     */
+    static final int MAX_BLOCK_LENGTH = 64 * 1024 * 1024;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final Table SUPPLIERS = new Table(SupplierEntry.TABLE_NAME,
+            new String[]{SupplierEntry._ID},
+            new String[]{SupplierEntry.COLUMN_SUPPLIER_NAME, SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER});
+
+    /**
+     * The items, with the quantity read with the movements not folded yet, so a snapshot needs
+     * no fold and its items restore with no movements.
+     */
+    static final Table INVENTORY = new Table(InventoryEntry.TABLE_NAME,
+            new String[]{InventoryEntry._ID, InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+                    InventoryEntry.COLUMN_PRODUCT_QUANTITY, InventoryEntry.COLUMN_SUPPLIER_ID,
+                    InventoryEntry.COLUMN_REORDER_THRESHOLD},
+            new String[]{InventoryEntry._ID, InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+                    InventoryDbHelper.quantitySql(InventoryEntry.TABLE_NAME), InventoryEntry.COLUMN_SUPPLIER_ID,
+                    InventoryEntry.COLUMN_REORDER_THRESHOLD},
+            new String[]{InventoryEntry.COLUMN_PRODUCT_NAME, InventoryEntry.COLUMN_PRODUCT_SKU});
+
+    /**
+     * The tables in a snapshot, in the order they are restored: the items point at their supplier.
+     */
+    static final Table[] TABLES = {SUPPLIERS, INVENTORY};
+
+    // Not meant to be instantiated
+    private SnapshotFormat() {
+    }
+
+    /**
+     * The columns of a table kept in a snapshot, with the statements reading and restoring them.
+     * The first integer column is the _id.
+     */
+    static final class Table {
+        final String name;
+        final String[] integerColumns;
+        final String[] textColumns;
+
+        /**
+         * Read the rows, integer columns first, to be followed by a WHERE clause
+         */
+        final String select;
+
+        /**
+         * Read a page of rows after a given _id, integer columns first
+         */
+        final String selectPage;
+
+        /**
+         * Insert a row, integer columns first
+         */
+        final String insert;
+
+        Table(String name, String[] integerColumns, String[] textColumns) {
+            this(name, integerColumns, integerColumns, textColumns);
+        }
+
+        /**
+         * @param integerReads The SQL reading each of the integer columns
+         */
+        Table(String name, String[] integerColumns, String[] integerReads, String[] textColumns) {
+            this.name = name;
+            this.integerColumns = integerColumns;
+            this.textColumns = textColumns;
+
+            StringBuilder columns = new StringBuilder();
+            StringBuilder reads = new StringBuilder();
+            StringBuilder values = new StringBuilder();
+            for (int i = 0; i < integerColumns.length; i++) {
+                appendColumn(columns, reads, values, integerColumns[i], integerReads[i]);
+            }
+            for (String column : textColumns) {
+                appendColumn(columns, reads, values, column, column);
+            }
+            select = "SELECT " + reads + " FROM " + name;
+            selectPage = select + " WHERE " + integerColumns[0] + " > ?"
+                    + " ORDER BY " + integerColumns[0] + " LIMIT " + ROWS_PER_BLOCK;
+            insert = "INSERT INTO " + name + " (" + columns + ") VALUES (" + values + ")";
+        }
+
+        private static void appendColumn(StringBuilder columns, StringBuilder reads, StringBuilder values,
+                                         String column, String read) {
+            if (columns.length() != 0) {
+                columns.append(", ");
+                reads.append(", ");
+                values.append(", ");
+            }
+            columns.append(column);
+            reads.append(read);
+            values.append('?');
+        }
+    }
+}
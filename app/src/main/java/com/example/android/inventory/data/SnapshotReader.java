@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import com.example.android.inventory.data.SnapshotFormat.Table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a snapshot written by {@link SnapshotWriter} one block at a time. The file is mapped in
+ * memory instead of read through a stream, so reading a block costs one copy out of the page
+ * cache, and the checksum of each block is checked before any of its rows is returned.
+ */
+final class SnapshotReader {
+
+    private final ByteBuffer file;
+
+    /**
+     * The contents of the current block, copied out of the file to check their checksum
+     */
+    private byte[] block = new byte[256 * 1024];
+    private final CRC32 crc = new CRC32();
+
+    private final int databaseVersion;
+    private final long createdMillis;
+    private final long[] sequences = new long[SnapshotFormat.TABLES.length];
+
+    /**
+     * The rows read so far for each table
+     */
+    private final long[] rowCounts = new long[SnapshotFormat.TABLES.length];
+
+    /**
+     * The rows of the current block, by table and column
+     */
+    private final long[][][] integers = new long[SnapshotFormat.TABLES.length][][];
+    private final String[][][] texts = new String[SnapshotFormat.TABLES.length][][];
+    private int table;
+    private int rowCount;
+
+    /**
+     * Map the file and read its header.
+     *
+     * @param channel The snapshot file. It can be closed once this returns.
+     * @throws IOException if the file can't be mapped or isn't a snapshot of a known format
+     */
+    SnapshotReader(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The snapshot is too large: " + size + " bytes");
+        }
+        file = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        if (file.remaining() < 8 || file.getInt() != SnapshotFormat.MAGIC) {
+            throw new IOException("Not a snapshot");
+        }
+        int formatVersion = file.getInt();
+        if (formatVersion != SnapshotFormat.FORMAT_VERSION) {
+            throw new IOException("Unknown snapshot format " + formatVersion);
+        }
+
+        ByteBuffer header = readBlock();
+        if (header.get() != SnapshotFormat.BLOCK_HEADER) {
+            throw new IOException("The snapshot has no header");
+        }
+        databaseVersion = header.getInt();
+        createdMillis = header.getLong();
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = header.getLong();
+        }
+
+        for (int i = 0; i < SnapshotFormat.TABLES.length; i++) {
+            integers[i] = new long[SnapshotFormat.TABLES[i].integerColumns.length][SnapshotFormat.ROWS_PER_BLOCK];
+            texts[i] = new String[SnapshotFormat.TABLES[i].textColumns.length][SnapshotFormat.ROWS_PER_BLOCK];
+        }
+    }
+
+    /**
+     * Return the version of the database the snapshot was taken from.
+     */
+    int getDatabaseVersion() {
+        return databaseVersion;
+    }
+
+    /**
+     * Return the time the snapshot was taken, in milliseconds since the epoch.
+     */
+    long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /**
+     * Return the AUTOINCREMENT sequence of the table at the given index of
+     * {@link SnapshotFormat#TABLES} when the snapshot was taken.
+     */
+    long getSequence(int table) {
+        return sequences[table];
+    }
+
+    /**
+     * Read the next block of rows. Return false once all the blocks were read and the row counts
+     * of the end of the file matched.
+     *
+     * @throws IOException if the file is cut short or damaged
+     */
+    boolean next() throws IOException {
+        ByteBuffer contents = readBlock();
+        byte kind = contents.get();
+        if (kind == SnapshotFormat.BLOCK_END) {
+            for (int i = 0; i < rowCounts.length; i++) {
+                long expected = contents.getLong();
+                if (expected != rowCounts[i]) {
+                    throw new IOException("The snapshot should hold " + expected + " rows of "
+                            + SnapshotFormat.TABLES[i].name + " but holds " + rowCounts[i]);
+                }
+            }
+            return false;
+        }
+        if (kind != SnapshotFormat.BLOCK_ROWS) {
+            throw new IOException("Unknown block " + kind);
+        }
+
+        table = contents.get();
+        rowCount = contents.getInt();
+        if (table < 0 || table >= SnapshotFormat.TABLES.length
+                || rowCount <= 0 || rowCount > SnapshotFormat.ROWS_PER_BLOCK) {
+            throw new IOException("Bad block of " + rowCount + " rows of table " + table);
+        }
+        for (long[] values : integers[table]) {
+            for (int row = 0; row < rowCount; row++) {
+                values[row] = contents.getLong();
+            }
+        }
+        for (String[] values : texts[table]) {
+            // The lengths come first, then the values.
+            int offset = contents.position() + rowCount * 4;
+            for (int row = 0; row < rowCount; row++) {
+                int length = contents.getInt();
+                if (length == -1) {
+                    values[row] = null;
+                    continue;
+                }
+                if (length < 0 || offset + length > contents.limit()) {
+                    throw new IOException("Bad text length " + length);
+                }
+                values[row] = new String(block, offset, length, SnapshotFormat.UTF_8);
+                offset += length;
+            }
+            contents.position(offset);
+        }
+        rowCounts[table] += rowCount;
+        return true;
+    }
+
+    /**
+     * Return the index in {@link SnapshotFormat#TABLES} of the table of the current block.
+     */
+    int getTable() {
+        return table;
+    }
+
+    /**
+     * Return the number of rows of the current block.
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Return a value of one of the {@link Table#integerColumns} of the current block.
+     */
+    long getInteger(int column, int row) {
+        return integers[table][column][row];
+    }
+
+    /**
+     * Return a value of one of the {@link Table#textColumns} of the current block, null for NULL.
+     */
+    String getText(int column, int row) {
+        return texts[table][column][row];
+    }
+
+    /**
+     * Copy the next block out of the file and check its checksum. Return its contents.
+     */
+    private ByteBuffer readBlock() throws IOException {
+        if (file.remaining() < 8) {
+            throw new IOException("The snapshot is cut short");
+        }
+        int length = file.getInt();
+        int checksum = file.getInt();
+        if (length <= 0 || length > SnapshotFormat.MAX_BLOCK_LENGTH || length > file.remaining()) {
+            throw new IOException("Bad block length " + length);
+        }
+        if (length > block.length) {
+            block = new byte[Math.max(length, block.length * 2)];
+        }
+        file.get(block, 0, length);
+        crc.reset();
+        crc.update(block, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("The snapshot is damaged, bad checksum at " + (file.position() - length));
+        }
+        return ByteBuffer.wrap(block, 0, length);
+    }
+}
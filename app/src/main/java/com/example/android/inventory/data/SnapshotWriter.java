@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
+import com.example.android.inventory.data.SnapshotFormat.Table;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a snapshot of the database in the layout described by {@link SnapshotFormat}. The rows
+ * are read one block at a time, so taking a snapshot never holds more than a block of rows.
+ * Each block is read by a query of its own, outside of any transaction, so writers go on while
+ * the snapshot is taken. Each row is saved as it was when its block was read, and the supplier
+ * of every item is saved before it, even one added after the suppliers were read.
+ */
+final class SnapshotWriter {
+
+    private final DataOutputStream out;
+
+    /**
+     * The contents of the block being written, reused for every block
+     */
+    private final BlockBuffer block = new BlockBuffer();
+    private final DataOutputStream blockOut = new DataOutputStream(block);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * The rows of the last block read of each table, by column
+     */
+    private final long[][][] integers = new long[SnapshotFormat.TABLES.length][][];
+    private final byte[][][][] texts = new byte[SnapshotFormat.TABLES.length][][][];
+
+    /**
+     * The rows written so far for each table
+     */
+    private final long[] rowCounts = new long[SnapshotFormat.TABLES.length];
+
+    /**
+     * The _ids of the suppliers written so far
+     */
+    private final Set<Long> supplierIds = new HashSet<Long>();
+
+    /**
+     * @param out Where the snapshot is written, through a buffer of its own. Not closed.
+     */
+    SnapshotWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        for (int i = 0; i < SnapshotFormat.TABLES.length; i++) {
+            Table table = SnapshotFormat.TABLES[i];
+            integers[i] = new long[table.integerColumns.length][SnapshotFormat.ROWS_PER_BLOCK];
+            texts[i] = new byte[table.textColumns.length][SnapshotFormat.ROWS_PER_BLOCK][];
+        }
+    }
+
+    /**
+     * Write a snapshot of all the {@link SnapshotFormat#TABLES}. Not meant to be called inside a
+     * transaction, which would keep the writers out until the snapshot is written.
+     *
+     * @param createdMillis The time the snapshot is taken, in milliseconds since the epoch
+     * @return The number of rows written for each table
+     */
+    long[] write(SQLiteDatabase db, long createdMillis) throws IOException {
+        out.writeInt(SnapshotFormat.MAGIC);
+        out.writeInt(SnapshotFormat.FORMAT_VERSION);
+
+        beginBlock(SnapshotFormat.BLOCK_HEADER);
+        blockOut.writeInt(db.getVersion());
+        blockOut.writeLong(createdMillis);
+        for (Table table : SnapshotFormat.TABLES) {
+            blockOut.writeLong(DatabaseUtils.longForQuery(db,
+                    "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name = ?", new String[]{table.name}));
+        }
+        endBlock();
+
+        for (int i = 0; i < SnapshotFormat.TABLES.length; i++) {
+            writeTable(db, i);
+        }
+
+        beginBlock(SnapshotFormat.BLOCK_END);
+        for (long rowCount : rowCounts) {
+            blockOut.writeLong(rowCount);
+        }
+        endBlock();
+        out.flush();
+        return rowCounts.clone();
+    }
+
+    /**
+     * Write the rows of a table, one block per page.
+     */
+    private void writeTable(SQLiteDatabase db, int index) throws IOException {
+        Table table = SnapshotFormat.TABLES[index];
+        long lastId = -1;
+        while (true) {
+            int rows = readRows(db, index, table.selectPage, new String[]{String.valueOf(lastId)});
+            if (table == SnapshotFormat.INVENTORY && !writeSuppliers(db, rows)) {
+                // A supplier of the page was deleted since the page was read, so its items have
+                // moved to another supplier or are gone. Read the page again.
+                continue;
+            }
+            if (rows == 0) {
+                return;
+            }
+            writeRows(index, rows);
+            lastId = integers[index][0][rows - 1];
+            if (rows < SnapshotFormat.ROWS_PER_BLOCK) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write the suppliers of the items of the last page read that were not written yet, added
+     * since the suppliers were read. Return false if one of them doesn't exist anymore.
+     */
+    private boolean writeSuppliers(SQLiteDatabase db, int rows) throws IOException {
+        int inventory = indexOf(SnapshotFormat.INVENTORY);
+        long[] itemSupplierIds = integers[inventory][
+                Arrays.asList(SnapshotFormat.INVENTORY.integerColumns).indexOf(InventoryEntry.COLUMN_SUPPLIER_ID)];
+        Set<Long> missing = new LinkedHashSet<Long>();
+        for (int row = 0; row < rows; row++) {
+            if (!supplierIds.contains(itemSupplierIds[row])) {
+                missing.add(itemSupplierIds[row]);
+            }
+        }
+        if (missing.isEmpty()) {
+            return true;
+        }
+
+        // The _ids are numbers, written into the SQL.
+        StringBuilder ids = new StringBuilder();
+        for (long id : missing) {
+            if (ids.length() != 0) {
+                ids.append(", ");
+            }
+            ids.append(id);
+        }
+        int suppliers = indexOf(SnapshotFormat.SUPPLIERS);
+        int found = readRows(db, suppliers, SnapshotFormat.SUPPLIERS.select + " WHERE "
+                + SupplierEntry._ID + " IN (" + ids + ")", null);
+        if (found != 0) {
+            writeRows(suppliers, found);
+        }
+        return found == missing.size();
+    }
+
+    /**
+     * Read the rows of a table returned by the given SQL, at most a block of them, into
+     * {@link #integers} and {@link #texts}. Return their number.
+     */
+    private int readRows(SQLiteDatabase db, int index, String sql, String[] args) {
+        Table table = SnapshotFormat.TABLES[index];
+        int integerCount = table.integerColumns.length;
+        long[][] integerValues = integers[index];
+        byte[][][] textValues = texts[index];
+        int rows = 0;
+        Cursor cursor = db.rawQuery(sql, args);
+        try {
+            while (cursor.moveToNext()) {
+                for (int column = 0; column < integerCount; column++) {
+                    integerValues[column][rows] = cursor.getLong(column);
+                }
+                for (int column = 0; column < textValues.length; column++) {
+                    String value = cursor.getString(integerCount + column);
+                    textValues[column][rows] = value == null ? null : value.getBytes(SnapshotFormat.UTF_8);
+                }
+                rows++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Write the rows read last for a table as a block.
+     */
+    private void writeRows(int index, int rows) throws IOException {
+        beginBlock(SnapshotFormat.BLOCK_ROWS);
+        blockOut.writeByte(index);
+        blockOut.writeInt(rows);
+        for (long[] values : integers[index]) {
+            for (int row = 0; row < rows; row++) {
+                blockOut.writeLong(values[row]);
+            }
+        }
+        for (byte[][] values : texts[index]) {
+            for (int row = 0; row < rows; row++) {
+                blockOut.writeInt(values[row] == null ? -1 : values[row].length);
+            }
+            for (int row = 0; row < rows; row++) {
+                if (values[row] != null) {
+                    blockOut.write(values[row]);
+                }
+            }
+        }
+        endBlock();
+
+        if (SnapshotFormat.TABLES[index] == SnapshotFormat.SUPPLIERS) {
+            for (int row = 0; row < rows; row++) {
+                supplierIds.add(integers[index][0][row]);
+            }
+        }
+        rowCounts[index] += rows;
+    }
+
+    private static int indexOf(Table table) {
+        return Arrays.asList(SnapshotFormat.TABLES).indexOf(table);
+    }
+
+    private void beginBlock(byte kind) throws IOException {
+        block.reset();
+        blockOut.writeByte(kind);
+    }
+
+    /**
+     * Write the block built since {@link #beginBlock}, preceded by its length and checksum.
+     */
+    private void endBlock() throws IOException {
+        blockOut.flush();
+        crc.reset();
+        crc.update(block.buffer(), 0, block.size());
+        out.writeInt(block.size());
+        out.writeInt((int) crc.getValue());
+        block.writeTo(out);
+    }
+
+    /**
+     * Gives access to the bytes written so far without copying them.
+     */
+    private static final class BlockBuffer extends ByteArrayOutputStream {
+        BlockBuffer() {
+            super(256 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A named set of SQLite storage settings the inventory database is opened with: the journal
+ * mode, the synchronous mode and the page size. {@link InventoryDbHelper} applies the profile
+ * when it opens the database. The profile to use is picked by name, see {@link #forName(String)}.
+ * <p>
+ * The page cache and memory mapping sizes are left to the platform. They hold for a single
+ * connection, and the extra connections WAL opens for concurrent reads can't be configured.
+ */
+final class StorageProfile {
+
+    /**
+     * The platform defaults: rollback journal, default synchronous mode and page size.
+     */
+    static final StorageProfile PLATFORM = new StorageProfile("platform", false, null, 0);
+
+    /**
+     * A till selling items all day. WAL lets the catalog read while a sale is written, and
+     * synchronous NORMAL only syncs at checkpoints, so a sale costs no fsync. A power cut can
+     * lose the last sales, but never corrupts the database.
+     */
+    static final StorageProfile POS_TERMINAL = new StorageProfile("pos-terminal", true, "NORMAL", 4096);
+
+    /**
+     * A back office machine running reports over the whole inventory. Larger pages make the
+     * full table reads cheaper, and synchronous FULL keeps every committed change across a
+     * power cut.
+     */
+    static final StorageProfile BACK_OFFICE = new StorageProfile("back-office", true, "FULL", 8192);
+
+    private static final StorageProfile[] PROFILES = {PLATFORM, POS_TERMINAL, BACK_OFFICE};
+
+    private final String name;
+    private final boolean writeAheadLogging;
+    private final String synchronous;
+    private final int pageSize;
+
+    /**
+     * @param name              Name the profile is picked by
+     * @param writeAheadLogging Whether to use a write-ahead log instead of the rollback journal
+     * @param synchronous       The synchronous mode (OFF, NORMAL or FULL), null to keep the default
+     * @param pageSize          Page size in bytes, 0 to keep the default. Only applies to a new database.
+     */
+    private StorageProfile(String name, boolean writeAheadLogging, String synchronous, int pageSize) {
+        this.name = name;
+        this.writeAheadLogging = writeAheadLogging;
+        this.synchronous = synchronous;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Return the profile with the given name.
+     *
+     * @throws IllegalArgumentException if there is no such profile
+     */
+    static StorageProfile forName(String name) {
+        for (StorageProfile profile : PROFILES) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage profile " + name);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Apply the profile to the database. Must be called from
+     * {@link android.database.sqlite.SQLiteOpenHelper#onConfigure(SQLiteDatabase)}, before the
+     * schema is created, since the page size can't change once the file has tables.
+     * <p>
+     * The page size and journal mode belong to the file. The synchronous mode only holds for the
+     * primary connection, which does all the writing, so it covers every commit.
+     */
+    void apply(SQLiteDatabase db) {
+        if (pageSize > 0) {
+            pragma(db, "page_size = " + pageSize);
+        }
+        // Switching the journal mode resets the synchronous mode, so it's set afterwards.
+        if (writeAheadLogging) {
+            db.enableWriteAheadLogging();
+        }
+        if (synchronous != null) {
+            pragma(db, "synchronous = " + synchronous);
+        }
+    }
+
+    /**
+     * Run a PRAGMA statement. Some of them return the new value as a row, which execSQL
+     * refuses, so they are run as queries.
+     */
+    private static void pragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import com.example.android.inventory.data.InventoryContract.ChangeEntry;
+
+/**
+ * One change of an item exchanged with the back office by {@link InventorySync}: what happened to
+ * the item, and its values after the change unless it was deleted.
+ */
+public final class SyncChange {
+
+    /**
+     * The version of the change on the side that made it, see {@link ChangeEntry#COLUMN_VERSION}
+     */
+    public final long version;
+    public final long itemId;
+
+    /**
+     * One of {@link ChangeEntry#OPERATION_INSERT}, {@link ChangeEntry#OPERATION_UPDATE} and
+     * {@link ChangeEntry#OPERATION_DELETE}
+     */
+    public final int operation;
+
+    // The values of the item, null for a deleted item
+    public final String name;
+    public final Long priceCents;
+    public final Integer quantity;
+    public final String sku;
+    public final String supplierName;
+    public final String supplierPhoneNumber;
+
+    public SyncChange(long version, long itemId, int operation, String name, Long priceCents, Integer quantity,
+                      String sku, String supplierName, String supplierPhoneNumber) {
+        this.version = version;
+        this.itemId = itemId;
+        this.operation = operation;
+        this.name = name;
+        this.priceCents = priceCents;
+        this.quantity = quantity;
+        this.sku = sku;
+        this.supplierName = supplierName;
+        this.supplierPhoneNumber = supplierPhoneNumber;
+    }
+
+    /**
+     * Return the change deleting an item.
+     */
+    public static SyncChange delete(long version, long itemId) {
+        return new SyncChange(version, itemId, ChangeEntry.OPERATION_DELETE, null, null, null, null, null, null);
+    }
+
+    @Override
+    public String toString() {
+        return "SyncChange{version=" + version + ", itemId=" + itemId + ", operation=" + operation + "}";
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.inventory.data;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * How {@link InventorySync} talks to the back office. Every call is made on the thread running
+ * the sync and may block. A call that throws is retried by the next sync, so the back office
+ * must accept the same changes more than once.
+ */
+public interface SyncTransport {
+
+    /**
+     * Send the changes made on the device, in version order.
+     */
+    void push(List<SyncChange> changes) throws IOException;
+
+    /**
+     * Tell the back office that the device is about to send its whole inventory again, as
+     * inserts, because its change log was reset. The items it sent before and doesn't send again
+     * no longer exist on the device.
+     */
+    void reset() throws IOException;
+
+    /**
+     * Return the changes made by the back office after the given version of the back office, in
+     * version order and at most limit of them. Fewer than limit changes means there are no more.
+     */
+    List<SyncChange> pull(long sinceVersion, int limit) throws IOException;
+}
@@ -0,0 +1,98 @@
+package com.example.android.inventory;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import com.example.android.inventory.benchmark.BenchmarkRunner;
+import com.example.android.inventory.benchmark.BenchmarkSettings;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Benchmark of binding the rows of the catalog in {@link InventoryAdapter}, at each of the list
+ * sizes given by the benchmark.rows system property, see {@link BenchmarkSettings}. Like a
+ * scrolling {@link android.support.v7.widget.RecyclerView}, a few view holders are bound again
+ * and again, here to rows picked all over the list. Creating the holders is measured apart.
+ * <p>
+ * The views are the ones of Robolectric, so the timings are for comparing one run with the next.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class InventoryAdapterBenchmark {
+
+    /**
+     * Number of view holders bound in turn, about a screen of rows
+     */
+    private static final int HOLDER_COUNT = 10;
+
+    @Test
+    public void benchmark() throws Exception {
+        long[] sizes = BenchmarkSettings.getRowCounts();
+        Assume.assumeTrue(sizes.length > 0);
+        BenchmarkRunner runner = BenchmarkSettings.newRunner();
+
+        Context context = new ContextThemeWrapper(RuntimeEnvironment.application, R.style.AppTheme);
+        final FrameLayout parent = new FrameLayout(context);
+        for (long size : sizes) {
+            final int itemCount = (int) size;
+            final InventoryAdapter adapter = new InventoryAdapter(context, SalesBuffer.getInstance(context),
+                    new InventoryAdapter.Listener() {
+                        @Override
+                        public void onItemPressed(long id) {
+                        }
+
+                        @Override
+                        public void onItemClick(InventoryItem item) {
+                        }
+
+                        @Override
+                        public void onSellClick(InventoryItem item) {
+                        }
+                    });
+            // The adapter shows an empty list, so the new list is set without comparing them.
+            adapter.setItems(buildItems(itemCount));
+
+            runner.run("create view holder", size, 1, new BenchmarkRunner.Operation() {
+                @Override
+                public void run(int invocation) {
+                    BenchmarkRunner.consume(adapter.onCreateViewHolder(parent, 0).getItemViewType());
+                }
+            });
+
+            final InventoryAdapter.ViewHolder[] holders = new InventoryAdapter.ViewHolder[HOLDER_COUNT];
+            for (int i = 0; i < holders.length; i++) {
+                holders[i] = adapter.onCreateViewHolder(parent, 0);
+            }
+            runner.run("bind view holder", size, 1, new BenchmarkRunner.Operation() {
+                @Override
+                public void run(int invocation) {
+                    // A large prime stride visits the rows in no particular order.
+                    int position = (int) ((invocation * 7919L) % itemCount);
+                    adapter.onBindViewHolder(holders[invocation % HOLDER_COUNT], position);
+                }
+            });
+        }
+    }
+
+    /**
+     * Build a list of rows like the catalog reads, one in ten out of stock.
+     */
+    private static List<InventoryItem> buildItems(int count) {
+        List<InventoryItem> items = new ArrayList<InventoryItem>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new InventoryItem(i + 1, String.format(Locale.US, "Item %08d", i), 100 + i % 10000,
+                    i % 10 == 0 ? 0 : i % 100));
+        }
+        return items;
+    }
+}
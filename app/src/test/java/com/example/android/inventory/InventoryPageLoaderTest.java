@@ -0,0 +1,173 @@
+package com.example.android.inventory;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.ProviderInfo;
+import android.net.Uri;
+
+import com.example.android.inventory.data.InventoryContract;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of {@link InventoryPageLoader} reading the changes of the provider, with the loads run
+ * one step at a time on the test thread: a change made while a load runs, and several rows
+ * entering a page at once.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class InventoryPageLoaderTest {
+
+    /**
+     * Number of items in the inventory, over three pages
+     */
+    private static final int ITEM_COUNT = 120;
+
+    private InventoryProvider provider;
+
+    @Before
+    public void setUp() {
+        provider = new InventoryProvider();
+        ProviderInfo info = new ProviderInfo();
+        info.authority = InventoryContract.CONTENT_AUTHORITY;
+        provider.attachInfo(RuntimeEnvironment.application, info);
+        ShadowContentResolver.registerProvider(InventoryContract.CONTENT_AUTHORITY, provider);
+
+        // Every tenth item is an apple, the _ids run from 1.
+        ContentValues[] values = new ContentValues[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            values[i] = new ContentValues();
+            values[i].put(InventoryEntry.COLUMN_PRODUCT_NAME, ((i + 1) % 10 == 0 ? "Apple " : "Pear ") + (i + 1));
+            values[i].put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, 100);
+            values[i].put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 10);
+            values[i].put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Orchard");
+            values[i].put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "555");
+        }
+        provider.bulkInsert(InventoryEntry.CONTENT_URI, values);
+    }
+
+    @Test
+    public void itemChangedWhileLoadingIsReadByTheNextLoad() {
+        ManualPageLoader loader = startLoader(InventoryEntry.CONTENT_URI);
+        loader.deliverResult(loader.loadInBackground());
+        loader.loadNextPage();
+        loader.deliverResult(loader.loadInBackground());
+
+        // A load starts for a sale on the first page, and another sale on the second page
+        // cancels it. Its result is dropped.
+        setQuantity(10, 3);
+        loader.onItemsChanged(10);
+        List<InventoryItem> dropped = loader.loadInBackground();
+        setQuantity(60, 4);
+        loader.onItemsChanged(60);
+        loader.onCanceled(dropped);
+
+        List<InventoryItem> items = loader.loadInBackground();
+        loader.deliverResult(items);
+        assertEquals(100, items.size());
+        assertEquals(3, find(items, 10).getQuantity());
+        assertEquals(4, find(items, 60).getQuantity());
+    }
+
+    @Test
+    public void structuralChangeWhileLoadingIsReadByTheNextLoad() {
+        ManualPageLoader loader = startLoader(InventoryEntry.CONTENT_URI);
+        loader.deliverResult(loader.loadInBackground());
+        loader.loadNextPage();
+        loader.deliverResult(loader.loadInBackground());
+
+        // A load starts for a deleted item, and a sale cancels it.
+        provider.delete(itemUri(5), null, null);
+        loader.onItemsChanged(-1);
+        List<InventoryItem> dropped = loader.loadInBackground();
+        setQuantity(60, 4);
+        loader.onItemsChanged(60);
+        loader.onCanceled(dropped);
+
+        List<InventoryItem> items = loader.loadInBackground();
+        loader.deliverResult(items);
+        assertNull(find(items, 5));
+        assertEquals(4, find(items, 60).getQuantity());
+    }
+
+    @Test
+    public void rowsEnteringAPageAreAllRead() {
+        ManualPageLoader loader = startLoader(InventoryEntry.buildSearchUri("apple"));
+        List<InventoryItem> before = loader.loadInBackground();
+        loader.deliverResult(before);
+        assertEquals(ITEM_COUNT / 10, before.size());
+
+        // Two items of the page start matching the search.
+        rename(15, "Apple 15");
+        loader.onItemsChanged(15);
+        rename(25, "Apple 25");
+        loader.onItemsChanged(25);
+
+        List<InventoryItem> items = loader.loadInBackground();
+        loader.deliverResult(items);
+        assertEquals(before.size() + 2, items.size());
+        assertEquals("Apple 15", find(items, 15).getName());
+        assertEquals("Apple 25", find(items, 25).getName());
+        assertEquals(ITEM_COUNT, items.get(items.size() - 1).getId());
+    }
+
+    private static ManualPageLoader startLoader(Uri baseUri) {
+        ManualPageLoader loader = new ManualPageLoader(RuntimeEnvironment.application, baseUri);
+        loader.startLoading();
+        return loader;
+    }
+
+    private static Uri itemUri(long id) {
+        return ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+    }
+
+    private void setQuantity(long id, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        provider.update(itemUri(id), values, null, null);
+    }
+
+    private void rename(long id, String name) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        provider.update(itemUri(id), values, null, null);
+    }
+
+    private static InventoryItem find(List<InventoryItem> items, long id) {
+        for (InventoryItem item : items) {
+            if (item.getId() == id) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A loader that starts no load of its own. The test runs each load itself, then delivers or
+     * drops its result as the framework would.
+     */
+    private static final class ManualPageLoader extends InventoryPageLoader {
+
+        ManualPageLoader(Context context, Uri baseUri) {
+            super(context, baseUri);
+        }
+
+        @Override
+        protected void onForceLoad() {
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventory.BuildConfig;
+import com.example.android.inventory.benchmark.BenchmarkResult;
+import com.example.android.inventory.benchmark.BenchmarkRunner;
+import com.example.android.inventory.benchmark.BenchmarkSettings;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmarks of {@link InventoryProvider} on a plain JVM, with the SQLite of Robolectric: single
+ * row operations, batches compared with the same rows written one at a time, and reads of the
+ * whole catalog, exports included, at each of the table sizes given by the benchmark.rows system
+ * property, for instance 1000,100000,500000. The
+ * catalog is grown from one size to the next, so every size is filled once. Nothing runs unless
+ * the sizes are given, see the testOptions of the app.
+ * <p>
+ * The timings are of the JVM, not of a device, so they are for comparing one run with the next.
+ * The results are appended to the file named by the benchmark.output system property.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class InventoryProviderBenchmark {
+
+    /**
+     * Number of items written or sold by each invocation of the batch benchmarks
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Number of suppliers the catalog items are spread over
+     */
+    private static final int SUPPLIER_COUNT = 100;
+
+    /**
+     * Quantity of the catalog items, enough for every sale of the benchmarks
+     */
+    private static final int STARTING_QUANTITY = 1000000;
+
+    /**
+     * The columns read for each row of the catalog, as the list of the catalog does
+     */
+    private static final String[] CATALOG_PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY
+    };
+
+    /**
+     * Name and MIME type of each format the catalog is exported as
+     */
+    private static final String[][] EXPORT_FORMATS = {
+            {"csv", InventoryEntry.MIME_TYPE_CSV},
+            {"json", InventoryEntry.MIME_TYPE_JSON}
+    };
+
+    private final Random random = new Random(42);
+    private InventoryProvider provider;
+
+    /**
+     * Number of items in the catalog
+     */
+    private long itemCount;
+
+    /**
+     * Number of items inserted so far. The item built from newItem number n gets the _id n + 1.
+     */
+    private int insertedCount;
+
+    /**
+     * The numbers of the items deleted, which random items are never picked from
+     */
+    private final BitSet deletedNumbers = new BitSet();
+
+    @Test
+    public void benchmark() throws Exception {
+        long[] sizes = BenchmarkSettings.getRowCounts();
+        Assume.assumeTrue(sizes.length > 0);
+        BenchmarkRunner runner = BenchmarkSettings.newRunner();
+
+        provider = new InventoryProvider();
+        ProviderInfo info = new ProviderInfo();
+        info.authority = InventoryContract.CONTENT_AUTHORITY;
+        provider.attachInfo(RuntimeEnvironment.application, info);
+
+        for (long size : sizes) {
+            fill(size);
+            benchmarkSingleRows(runner);
+            benchmarkBatches(runner);
+            benchmarkCatalog(runner);
+        }
+    }
+
+    /**
+     * Add items until the catalog holds the given number of rows, through bulkInsert.
+     */
+    private void fill(long size) {
+        while (itemCount < size) {
+            int count = (int) Math.min(1000, size - itemCount);
+            ContentValues[] values = new ContentValues[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = newItem();
+            }
+            provider.bulkInsert(InventoryEntry.CONTENT_URI, values);
+            itemCount += count;
+        }
+    }
+
+    private void benchmarkSingleRows(BenchmarkRunner runner) throws Exception {
+        int firstInserted = insertedCount;
+        runner.run("insert", itemCount, 1, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) {
+                BenchmarkRunner.consume(ContentUris.parseId(provider.insert(InventoryEntry.CONTENT_URI, newItem())));
+            }
+        });
+        deleteInsertedSince(firstInserted);
+
+        runner.run("query by id", itemCount, 1, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) {
+                readAll(provider.query(randomItemUri(), CATALOG_PROJECTION, null, null, null));
+            }
+        });
+
+        runner.run("query by sku", itemCount, 1, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) {
+                readAll(provider.query(InventoryEntry.buildSkuUri(skuOf(randomItemId() - 1)), CATALOG_PROJECTION,
+                        null, null, null));
+            }
+        });
+
+        final ContentValues price = new ContentValues();
+        runner.run("update price", itemCount, 1, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) {
+                price.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, 100 + invocation % 1000);
+                BenchmarkRunner.consume(provider.update(randomItemUri(), price, null, null));
+            }
+        });
+
+        final ContentValues sale = saleOfOne();
+        runner.run("sell", itemCount, 1, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) {
+                BenchmarkRunner.consume(provider.update(
+                        InventoryEntry.buildSellUri(randomItemId()), sale, null, null));
+            }
+        });
+
+        // Each invocation deletes an item inserted for it, so the catalog keeps its size.
+        final Uri[] deleted = new Uri[1];
+        runner.run("delete", itemCount, 1, new BenchmarkRunner.Setup() {
+            @Override
+            public void run(int invocation) {
+                deletedNumbers.set(insertedCount);
+                deleted[0] = provider.insert(InventoryEntry.CONTENT_URI, newItem());
+            }
+        }, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) {
+                BenchmarkRunner.consume(provider.delete(deleted[0], null, null));
+            }
+        });
+    }
+
+    private void benchmarkBatches(BenchmarkRunner runner) throws Exception {
+        // The same rows inserted one at a time, each in its own transaction, then with a single
+        // bulkInsert, so the two rates are per row at the same table size.
+        int firstInserted = insertedCount;
+        BenchmarkResult singleRows = runner.run("insert one by one", itemCount, BATCH_SIZE,
+                new BenchmarkRunner.Operation() {
+                    @Override
+                    public void run(int invocation) {
+                        for (int i = 0; i < BATCH_SIZE; i++) {
+                            BenchmarkRunner.consume(ContentUris.parseId(
+                                    provider.insert(InventoryEntry.CONTENT_URI, newItem())));
+                        }
+                    }
+                });
+        deleteInsertedSince(firstInserted);
+
+        firstInserted = insertedCount;
+        BenchmarkResult bulk = runner.run("bulk insert", itemCount, BATCH_SIZE, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) {
+                ContentValues[] values = new ContentValues[BATCH_SIZE];
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    values[i] = newItem();
+                }
+                BenchmarkRunner.consume(provider.bulkInsert(InventoryEntry.CONTENT_URI, values));
+            }
+        });
+        deleteInsertedSince(firstInserted);
+        System.out.println(String.format(Locale.US, "%,d rows: insert %,.0f rows/s, bulkInsert %,.0f rows/s (%.1fx)",
+                itemCount, 1e9 / singleRows.getNanosPerOperation(), 1e9 / bulk.getNanosPerOperation(),
+                singleRows.getNanosPerOperation() / bulk.getNanosPerOperation()));
+
+        runner.run("batch sell", itemCount, BATCH_SIZE, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) throws Exception {
+                ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(BATCH_SIZE);
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    operations.add(ContentProviderOperation.newUpdate(InventoryEntry.buildSellUri(randomItemId()))
+                            .withValue(InventoryEntry.KEY_SELL_QUANTITY, 1).build());
+                }
+                BenchmarkRunner.consume(provider.applyBatch(operations).length);
+            }
+        });
+
+        runner.run("fold movements", itemCount, 1, new BenchmarkRunner.Setup() {
+            @Override
+            public void run(int invocation) {
+                provider.update(InventoryEntry.buildSellUri(randomItemId()), saleOfOne(), null, null);
+            }
+        }, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) {
+                BenchmarkRunner.consume(provider.foldMovements());
+            }
+        });
+    }
+
+    private void benchmarkCatalog(BenchmarkRunner runner) throws Exception {
+        runner.run("scan catalog", itemCount, (int) itemCount, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) {
+                readAll(provider.query(InventoryEntry.CONTENT_URI, CATALOG_PROJECTION, null, null, null));
+            }
+        });
+
+        runner.run("page by name", itemCount, 1, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) {
+                long after = randomItemId();
+                Uri page = InventoryEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(InventoryContract.QUERY_PARAMETER_LIMIT, "50")
+                        .appendQueryParameter(InventoryContract.QUERY_PARAMETER_PAGE_BY, InventoryContract.PAGE_BY_NAME)
+                        .appendQueryParameter(InventoryContract.QUERY_PARAMETER_AFTER_NAME, nameOf(after - 1))
+                        .appendQueryParameter(InventoryContract.QUERY_PARAMETER_AFTER_ID, String.valueOf(after))
+                        .build();
+                readAll(provider.query(page, CATALOG_PROJECTION, null, null, null));
+            }
+        });
+
+        runner.run("write snapshot", itemCount, (int) itemCount, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int invocation) throws IOException {
+                provider.writeSnapshot(new NullOutputStream());
+            }
+        });
+
+        for (String[] export : EXPORT_FORMATS) {
+            benchmarkExport(runner, export[0], export[1]);
+        }
+
+        final File snapshot = File.createTempFile("inventory", ".snapshot");
+        try {
+            OutputStream out = new FileOutputStream(snapshot);
+            try {
+                provider.writeSnapshot(out);
+            } finally {
+                out.close();
+            }
+            final SnapshotReader[] reader = new SnapshotReader[1];
+            runner.run("restore snapshot", itemCount, (int) itemCount, new BenchmarkRunner.Setup() {
+                @Override
+                public void run(int invocation) throws IOException {
+                    FileInputStream in = new FileInputStream(snapshot);
+                    try {
+                        reader[0] = new SnapshotReader(in.getChannel());
+                    } finally {
+                        in.close();
+                    }
+                }
+            }, new BenchmarkRunner.Operation() {
+                @Override
+                public void run(int invocation) throws IOException {
+                    BenchmarkRunner.consume(provider.restoreSnapshot(reader[0]).items);
+                }
+            });
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    /**
+     * Export the whole catalog in the given format, then export it once more to find how much
+     * heap the export takes, and print both.
+     */
+    private void benchmarkExport(BenchmarkRunner runner, String name, final String mimeType) throws Exception {
+        BenchmarkResult export = runner.run("export " + name, itemCount, (int) itemCount,
+                new BenchmarkRunner.Operation() {
+                    @Override
+                    public void run(int invocation) throws IOException {
+                        provider.writeExport(new NullOutputStream(), mimeType);
+                    }
+                });
+
+        List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        long usedBefore = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+            usedBefore += pool.getUsage().getUsed();
+        }
+        provider.writeExport(new NullOutputStream(), mimeType);
+        long peakUsed = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakUsed += pool.getPeakUsage().getUsed();
+        }
+        // The garbage counts until it is collected, so a streaming export peaks at about the
+        // size of the young generation, whatever the size of the catalog.
+        System.out.println(String.format(Locale.US, "%,d rows: export %s %,.0f rows/s, peak heap %,d KiB above %,d KiB",
+                itemCount, name, 1e9 / export.getNanosPerOperation(), (peakUsed - usedBefore) / 1024,
+                usedBefore / 1024));
+    }
+
+    /**
+     * Build the values of a new item. Each item has its own name and SKU, and one of
+     * {@link #SUPPLIER_COUNT} suppliers.
+     */
+    private ContentValues newItem() {
+        int number = insertedCount++;
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, nameOf(number));
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, 100 + number % 10000);
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, STARTING_QUANTITY);
+        values.put(InventoryEntry.COLUMN_PRODUCT_SKU, skuOf(number));
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Supplier " + number % SUPPLIER_COUNT);
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "555-" + number % SUPPLIER_COUNT);
+        return values;
+    }
+
+    private static String nameOf(long number) {
+        return String.format(Locale.US, "Item %08d", number);
+    }
+
+    private static String skuOf(long number) {
+        return String.format(Locale.US, "%012d", number);
+    }
+
+    private static ContentValues saleOfOne() {
+        ContentValues sale = new ContentValues();
+        sale.put(InventoryEntry.KEY_SELL_QUANTITY, 1);
+        return sale;
+    }
+
+    /**
+     * Return the _id of a random item of the catalog.
+     */
+    private long randomItemId() {
+        int number;
+        do {
+            number = random.nextInt(insertedCount);
+        } while (deletedNumbers.get(number));
+        return number + 1;
+    }
+
+    private Uri randomItemUri() {
+        return ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, randomItemId());
+    }
+
+    /**
+     * Delete the items inserted by a benchmark, starting with the given number, so the catalog
+     * is back to its size.
+     */
+    private void deleteInsertedSince(int firstNumber) {
+        provider.delete(InventoryEntry.CONTENT_URI, InventoryEntry._ID + " > ?",
+                new String[]{String.valueOf(firstNumber)});
+        deletedNumbers.set(firstNumber, insertedCount);
+    }
+
+    /**
+     * Read every column of every row, as the app would, then close the cursor.
+     */
+    private static void readAll(Cursor cursor) {
+        try {
+            long sum = 0;
+            while (cursor.moveToNext()) {
+                sum += cursor.getLong(0) + cursor.getString(1).length() + cursor.getLong(2) + cursor.getInt(3);
+            }
+            BenchmarkRunner.consume(sum);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Discards what is written, so writing a snapshot only costs reading and encoding the rows.
+     */
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventory.BuildConfig;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryContract.MovementEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link InventoryProvider} reading and writing the quantity of the items through the
+ * stock movements: selections on the quantity see the movements not folded yet, concurrent sales
+ * all count, and a refused sale changes nothing, not even the other sales of its batch.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class InventoryProviderTest {
+
+    private InventoryProvider provider;
+
+    @Before
+    public void setUp() {
+        provider = new InventoryProvider();
+        ProviderInfo info = new ProviderInfo();
+        info.authority = InventoryContract.CONTENT_AUTHORITY;
+        provider.attachInfo(RuntimeEnvironment.application, info);
+    }
+
+    @After
+    public void tearDown() {
+        provider.shutdown();
+    }
+
+    @Test
+    public void querySelectionSeesUnfoldedSale() {
+        long soldOut = insertItem("Apple", 5);
+        insertItem("Pear", 5);
+        sell(soldOut, 5);
+
+        assertEquals(String.valueOf(soldOut), queryIds(InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = ?", "0"));
+        assertEquals(String.valueOf(soldOut), queryIds("inventory.\"product_quantity\" < 1", null));
+        // Only the column is replaced, not a string that happens to spell its name.
+        assertEquals("", queryIds(InventoryEntry.COLUMN_PRODUCT_NAME + " = 'product_quantity'", null));
+    }
+
+    @Test
+    public void updateSelectionSeesUnfoldedSale() {
+        long soldOut = insertItem("Apple", 5);
+        long inStock = insertItem("Pear", 5);
+        sell(soldOut, 5);
+
+        // The quantity changes before the name is written, the selection still matches the item.
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 10);
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Restocked apple");
+        assertEquals(1, provider.update(InventoryEntry.CONTENT_URI, values,
+                InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = 0", null));
+
+        assertEquals(10, getQuantity(soldOut));
+        assertEquals("Restocked apple", getName(soldOut));
+        assertEquals(5, getQuantity(inStock));
+        assertEquals("Pear", getName(inStock));
+    }
+
+    @Test
+    public void deleteSelectionSeesUnfoldedSale() {
+        long soldOut = insertItem("Apple", 5);
+        long inStock = insertItem("Pear", 5);
+        sell(soldOut, 5);
+
+        assertEquals(1, provider.delete(InventoryEntry.CONTENT_URI,
+                InventoryEntry.COLUMN_PRODUCT_QUANTITY + " <= 0", null));
+        assertEquals(String.valueOf(inStock), queryIds(null, null));
+    }
+
+    @Test
+    public void concurrentSalesAllCount() throws InterruptedException {
+        final long id = insertItem("Apple", 100);
+        final int threadCount = 4;
+        final int salesPerThread = 20;
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < salesPerThread; i++) {
+                            assertTrue(callSell(id, 1) >= 0);
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(Collections.<Throwable>emptyList(), failures);
+        assertEquals(100 - threadCount * salesPerThread, getQuantity(id));
+        assertEquals(threadCount * salesPerThread, countSales(id));
+    }
+
+    @Test
+    public void refusedSaleLeavesNoMovement() {
+        long id = insertItem("Apple", 3);
+
+        assertEquals(-1, callSell(id, 5));
+        assertEquals(3, getQuantity(id));
+        assertEquals(0, countSales(id));
+    }
+
+    @Test
+    public void refusedSaleKeepsOtherSalesOfBatch() {
+        long apple = insertItem("Apple", 5);
+        long pear = insertItem("Pear", 1);
+        long plum = insertItem("Plum", 5);
+
+        Bundle extras = new Bundle();
+        extras.putLongArray(InventoryEntry.KEY_ITEM_IDS, new long[]{apple, pear, plum});
+        extras.putIntArray(InventoryEntry.KEY_SELL_QUANTITIES, new int[]{2, 3, 1});
+        Bundle result = provider.call(InventoryContract.METHOD_SELL_ALL, null, extras);
+
+        assertArrayEquals(new int[]{3, -1, 4}, result.getIntArray(InventoryEntry.KEY_NEW_QUANTITIES));
+        assertEquals(3, getQuantity(apple));
+        assertEquals(1, getQuantity(pear));
+        assertEquals(4, getQuantity(plum));
+        assertEquals(0, countSales(pear));
+    }
+
+    private long insertItem(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, 100);
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Orchard");
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "555");
+        return ContentUris.parseId(provider.insert(InventoryEntry.CONTENT_URI, values));
+    }
+
+    private void sell(long id, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.KEY_SELL_QUANTITY, quantity);
+        assertEquals(1, provider.update(InventoryEntry.buildSellUri(id), values, null, null));
+    }
+
+    /**
+     * Sell units of an item through {@link InventoryContract#METHOD_SELL}, and return the
+     * quantity left, or -1 if the sale was refused.
+     */
+    private int callSell(long id, int quantity) {
+        Bundle extras = new Bundle();
+        extras.putInt(InventoryEntry.KEY_SELL_QUANTITY, quantity);
+        Bundle result = provider.call(InventoryContract.METHOD_SELL,
+                ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id).toString(), extras);
+        return result.getInt(InventoryEntry.KEY_NEW_QUANTITY);
+    }
+
+    private int countSales(long id) {
+        Cursor cursor = provider.query(InventoryEntry.buildMovementsUri(id), new String[]{MovementEntry._ID},
+                MovementEntry.COLUMN_KIND + "=" + MovementEntry.KIND_SALE, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the _ids of the items matching the selection, in order and separated by commas.
+     */
+    private String queryIds(String selection, String arg) {
+        Cursor cursor = provider.query(InventoryEntry.CONTENT_URI, new String[]{InventoryEntry._ID}, selection,
+                arg == null ? null : new String[]{arg}, InventoryEntry._ID);
+        try {
+            StringBuilder ids = new StringBuilder();
+            while (cursor.moveToNext()) {
+                if (ids.length() > 0) {
+                    ids.append(',');
+                }
+                ids.append(cursor.getLong(0));
+            }
+            return ids.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int getQuantity(long id) {
+        Cursor cursor = queryItem(id, InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String getName(long id) {
+        Cursor cursor = queryItem(id, InventoryEntry.COLUMN_PRODUCT_NAME);
+        try {
+            cursor.moveToFirst();
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Cursor queryItem(long id, String column) {
+        Uri uri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+        return provider.query(uri, new String[]{column}, null, null, null);
+    }
+}
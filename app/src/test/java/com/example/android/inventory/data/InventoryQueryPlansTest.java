@@ -0,0 +1,54 @@
+package com.example.android.inventory.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.inventory.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that every query shape of {@link InventoryQueryPlans} finds its rows through an index
+ * of a freshly created database, so a query that loses its index fails the build.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class InventoryQueryPlansTest {
+
+    private InventoryDbHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        dbHelper = new InventoryDbHelper(RuntimeEnvironment.application);
+        db = dbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void everyQueryUsesAnIndex() {
+        List<String> scans = InventoryQueryPlans.findScans(db);
+        assertTrue("Queries scanning a table:\n" + join(scans), scans.isEmpty());
+    }
+
+    private static String join(List<String> lines) {
+        StringBuilder joined = new StringBuilder();
+        for (String line : lines) {
+            joined.append(line).append('\n');
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventory.BuildConfig;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.data.InventoryContract.SalesEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link InventoryProvider} writing and restoring snapshots: the quantities saved hold
+ * the movements not folded yet, and a restore keeps the sales history.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class InventorySnapshotTest {
+
+    private InventoryProvider provider;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        provider = new InventoryProvider();
+        ProviderInfo info = new ProviderInfo();
+        info.authority = InventoryContract.CONTENT_AUTHORITY;
+        provider.attachInfo(RuntimeEnvironment.application, info);
+        file = File.createTempFile("inventory", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        provider.shutdown();
+        file.delete();
+    }
+
+    @Test
+    public void snapshotHoldsUnfoldedMovements() throws IOException {
+        long id = insertItem("Apple", 5);
+        sell(id, 2);
+
+        InventorySnapshot.Result written = writeSnapshot();
+        assertEquals(1, written.items);
+        assertEquals(1, written.suppliers);
+        setQuantity(id, 9);
+
+        restoreSnapshot();
+        assertEquals(3, getQuantity(id));
+    }
+
+    @Test
+    public void restoreKeepsSalesHistory() throws IOException {
+        long id = insertItem("Apple", 5);
+        sell(id, 2);
+        writeSnapshot();
+        sell(id, 1);
+
+        restoreSnapshot();
+        assertEquals(3, getUnitsSold(id));
+    }
+
+    private InventorySnapshot.Result writeSnapshot() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            return provider.writeSnapshot(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void restoreSnapshot() throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            provider.restoreSnapshot(new SnapshotReader(in.getChannel()));
+        } finally {
+            in.close();
+        }
+    }
+
+    private long insertItem(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, 100);
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Orchard");
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "555");
+        return ContentUris.parseId(provider.insert(InventoryEntry.CONTENT_URI, values));
+    }
+
+    private void sell(long id, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.KEY_SELL_QUANTITY, quantity);
+        assertEquals(1, provider.update(InventoryEntry.buildSellUri(id), values, null, null));
+    }
+
+    private void setQuantity(long id, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        provider.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), values, null, null);
+    }
+
+    private int getQuantity(long id) {
+        Uri uri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+        Cursor cursor = provider.query(uri, new String[]{InventoryEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the units of the item sold on every day of its daily rollups.
+     */
+    private int getUnitsSold(long id) {
+        Cursor cursor = provider.query(SalesEntry.CONTENT_URI, new String[]{SalesEntry.COLUMN_UNITS_SOLD},
+                SalesEntry.COLUMN_ITEM_ID + "=?", new String[]{String.valueOf(id)}, null);
+        try {
+            int units = 0;
+            while (cursor.moveToNext()) {
+                units += cursor.getInt(0);
+            }
+            return units;
+        } finally {
+            cursor.close();
+        }
+    }
+}
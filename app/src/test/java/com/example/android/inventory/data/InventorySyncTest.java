@@ -0,0 +1,278 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+
+import com.example.android.inventory.BuildConfig;
+import com.example.android.inventory.data.InventoryContract.ChangeEntry;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link InventorySync} against a {@link LocalSyncServer}: changes going both ways, a
+ * sync resuming after the transport failed, the whole inventory sent again after the change log
+ * was reset, and pulled changes not sent back.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class InventorySyncTest {
+
+    private InventoryProvider provider;
+    private LocalSyncServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        provider = new InventoryProvider();
+        ProviderInfo info = new ProviderInfo();
+        info.authority = InventoryContract.CONTENT_AUTHORITY;
+        provider.attachInfo(RuntimeEnvironment.application, info);
+        ShadowContentResolver.registerProvider(InventoryContract.CONTENT_AUTHORITY, provider);
+        server = new LocalSyncServer();
+        // A new database starts with a reset, sync it so the tests only send their own changes.
+        new InventorySync(RuntimeEnvironment.application, server).sync();
+    }
+
+    @After
+    public void tearDown() {
+        provider.shutdown();
+    }
+
+    @Test
+    public void changesGoBothWays() throws IOException {
+        long apple = insertItems(2);
+        server.putItem(1000, "Plum", 250, 7, null, "Orchard", "555");
+
+        InventorySync.Result result = new InventorySync(RuntimeEnvironment.application, server).sync();
+        assertEquals(2, result.changesPushed);
+        assertEquals(1, result.changesPulled);
+        assertEquals("[" + apple + ", " + (apple + 1) + ", 1000]", getServerItemIds());
+        assertEquals("Plum", getName(1000));
+        assertEquals(7, getQuantity(1000));
+
+        // Edits on either side only send what changed.
+        rename(apple, "Green apple");
+        server.deleteItem(1000);
+        result = new InventorySync(RuntimeEnvironment.application, server).sync();
+        assertEquals(1, result.changesPushed);
+        assertEquals(1, result.changesPulled);
+        assertEquals("Green apple", getServerItem(apple).name);
+        assertNull(getName(1000));
+    }
+
+    @Test
+    public void pushResumesAfterTransportFailure() throws IOException {
+        int count = InventorySync.BATCH_SIZE * 2 + 10;
+        insertItems(count);
+
+        FailingTransport failing = new FailingTransport(server, 1);
+        try {
+            new InventorySync(RuntimeEnvironment.application, failing).sync();
+            fail("The second batch should fail");
+        } catch (IOException expected) {
+            // The first batch was sent and saved.
+        }
+        assertEquals(InventorySync.BATCH_SIZE, server.getItems().size());
+
+        InventorySync.Result result = new InventorySync(RuntimeEnvironment.application, server).sync();
+        assertEquals(count - InventorySync.BATCH_SIZE, result.changesPushed);
+        assertEquals(count, server.getItems().size());
+    }
+
+    @Test
+    public void pullResumesAfterTransportFailure() throws IOException {
+        int count = InventorySync.BATCH_SIZE + 10;
+        for (int i = 0; i < count; i++) {
+            server.putItem(1000 + i, "Plum " + i, 250, 7, null, "Orchard", "555");
+        }
+
+        FailingTransport failing = new FailingTransport(server, 1);
+        try {
+            new InventorySync(RuntimeEnvironment.application, failing).sync();
+            fail("The second batch should fail");
+        } catch (IOException expected) {
+            // The first batch was applied and saved.
+        }
+        assertEquals(InventorySync.BATCH_SIZE, countItems());
+
+        InventorySync.Result result = new InventorySync(RuntimeEnvironment.application, server).sync();
+        assertEquals(count - InventorySync.BATCH_SIZE, result.changesPulled);
+        assertEquals(count, countItems());
+        assertEquals("Plum " + (count - 1), getName(1000 + count - 1));
+    }
+
+    @Test
+    public void resetSendsWholeInventoryAgain() throws IOException {
+        long first = insertItems(3);
+        new InventorySync(RuntimeEnvironment.application, server).sync();
+
+        // An item the back office holds but the device never had, which the reset drops.
+        server.push(Collections.singletonList(new SyncChange(0, 999, ChangeEntry.OPERATION_INSERT, "Ghost", 1L, 1,
+                null, "Orchard", "555")));
+        rename(first, "Green apple");
+        provider.delete(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, first + 1), null, null);
+        // Three changes are left after compaction, the two oldest become a reset.
+        provider.compactChanges(1);
+
+        InventorySync.Result result = new InventorySync(RuntimeEnvironment.application, server).sync();
+        // The whole inventory, then the delete logged after the reset.
+        assertEquals(3, result.changesPushed);
+        assertEquals("[" + first + ", " + (first + 2) + "]", getServerItemIds());
+        assertEquals("Green apple", getServerItem(first).name);
+    }
+
+    @Test
+    public void pulledChangesAreNotSentBack() throws IOException {
+        insertItems(1);
+        new InventorySync(RuntimeEnvironment.application, server).sync();
+
+        server.putItem(1000, "Plum", 250, 7, null, "Orchard", "555");
+        InventorySync.Result result = new InventorySync(RuntimeEnvironment.application, server).sync();
+        assertEquals(0, result.changesPushed);
+        assertEquals(1, result.changesPulled);
+
+        result = new InventorySync(RuntimeEnvironment.application, server).sync();
+        assertEquals(0, result.changesPushed);
+        assertEquals(0, result.changesPulled);
+        Cursor changes = provider.query(ChangeEntry.buildChangesUri(0, 100),
+                new String[]{ChangeEntry.COLUMN_ITEM_ID}, ChangeEntry.COLUMN_ITEM_ID + "=1000", null, null);
+        try {
+            assertEquals(0, changes.getCount());
+        } finally {
+            changes.close();
+        }
+    }
+
+    /**
+     * Insert the given number of items in one batch, and return the _id of the first.
+     */
+    private long insertItems(int count) {
+        ContentValues[] values = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = new ContentValues();
+            values[i].put(InventoryEntry.COLUMN_PRODUCT_NAME, "Apple " + i);
+            values[i].put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, 100);
+            values[i].put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 10);
+            values[i].put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Orchard");
+            values[i].put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "555");
+        }
+        provider.bulkInsert(InventoryEntry.CONTENT_URI, values);
+        Cursor cursor = provider.query(InventoryEntry.CONTENT_URI, new String[]{InventoryEntry._ID}, null, null,
+                InventoryEntry._ID + " DESC");
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0) - count + 1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void rename(long id, String name) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        provider.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), values, null, null);
+    }
+
+    private String getName(long id) {
+        Cursor cursor = provider.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                new String[]{InventoryEntry.COLUMN_PRODUCT_NAME}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int getQuantity(long id) {
+        Cursor cursor = provider.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                new String[]{InventoryEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countItems() {
+        Cursor cursor = provider.query(InventoryEntry.CONTENT_URI, new String[]{InventoryEntry._ID}, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String getServerItemIds() {
+        List<Long> ids = new ArrayList<Long>();
+        for (SyncChange item : server.getItems()) {
+            ids.add(item.itemId);
+        }
+        Collections.sort(ids);
+        return ids.toString();
+    }
+
+    private SyncChange getServerItem(long id) {
+        for (SyncChange item : server.getItems()) {
+            if (item.itemId == id) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Passes the calls on to another transport, but fails the push or pull made after the given
+     * number of them succeeded, like a connection dropped in the middle of a sync.
+     */
+    private static final class FailingTransport implements SyncTransport {
+        private final SyncTransport transport;
+        private int callsLeft;
+
+        FailingTransport(SyncTransport transport, int callsBeforeFailure) {
+            this.transport = transport;
+            callsLeft = callsBeforeFailure;
+        }
+
+        @Override
+        public void push(List<SyncChange> changes) throws IOException {
+            countCall();
+            transport.push(changes);
+        }
+
+        @Override
+        public void reset() throws IOException {
+            transport.reset();
+        }
+
+        @Override
+        public List<SyncChange> pull(long sinceVersion, int limit) throws IOException {
+            countCall();
+            return transport.pull(sinceVersion, limit);
+        }
+
+        private void countCall() throws IOException {
+            if (callsLeft-- == 0) {
+                throw new IOException("Connection dropped");
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+import com.example.android.inventory.BuildConfig;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link ItemRowCache} and of {@link InventoryProvider} keeping it: an update, a sale and
+ * a new supplier phone number drop the cached rows, a batch rolled back leaves them, and a row read
+ * while the cache was invalidated is not kept.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ItemRowCacheTest {
+
+    private InventoryProvider provider;
+
+    @Before
+    public void setUp() {
+        provider = new InventoryProvider();
+        ProviderInfo info = new ProviderInfo();
+        info.authority = InventoryContract.CONTENT_AUTHORITY;
+        provider.attachInfo(RuntimeEnvironment.application, info);
+    }
+
+    @After
+    public void tearDown() {
+        provider.shutdown();
+    }
+
+    @Test
+    public void updateDropsCachedRow() {
+        long id = insertItem("Apple");
+        assertEquals("Apple", getName(id));
+        assertCached(id);
+
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Green apple");
+        provider.update(itemUri(id), values, null, null);
+
+        assertNotCached(id);
+        assertEquals("Green apple", getName(id));
+    }
+
+    @Test
+    public void saleDropsCachedRow() {
+        long id = insertItem("Apple");
+        assertEquals(5, getQuantity(id));
+
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.KEY_SELL_QUANTITY, 2);
+        provider.update(InventoryEntry.buildSellUri(id), values, null, null);
+
+        assertNotCached(id);
+        assertEquals(3, getQuantity(id));
+    }
+
+    @Test
+    public void phoneNumberChangeDropsRowsOfSupplier() {
+        long apple = insertItem("Apple");
+        long pear = insertItem("Pear");
+        getName(apple);
+        getName(pear);
+
+        // The number belongs to the supplier, so the other item of the supplier shows it too.
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "666");
+        provider.update(itemUri(apple), values, null, null);
+
+        assertNotCached(pear);
+        assertEquals("666", getPhoneNumber(pear));
+    }
+
+    @Test
+    public void rolledBackBatchKeepsCachedRow() {
+        long id = insertItem("Apple");
+        getName(id);
+
+        ContentValues rename = new ContentValues();
+        rename.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Green apple");
+        ContentValues badPrice = new ContentValues();
+        badPrice.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, -1);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newUpdate(itemUri(id)).withValues(rename).build());
+        operations.add(ContentProviderOperation.newUpdate(itemUri(id)).withValues(badPrice).build());
+        try {
+            provider.applyBatch(operations);
+            fail("The batch should be refused");
+        } catch (IllegalArgumentException expected) {
+            // The rename was rolled back with the rest of the batch.
+        } catch (OperationApplicationException e) {
+            throw new AssertionError(e);
+        }
+
+        assertCached(id);
+        assertEquals("Apple", getName(id));
+    }
+
+    @Test
+    public void rowReadDuringInvalidationIsNotKept() {
+        ItemRowCache cache = new ItemRowCache(new String[]{InventoryEntry._ID, InventoryEntry.COLUMN_PRODUCT_NAME}, 10);
+        long version = cache.getVersion();
+        // The row is invalidated after its version was read, the row read may be the old one.
+        cache.remove(1);
+        Cursor row = readRow(cache.getColumns(), 1, "Apple");
+        try {
+            assertEquals("Apple", getString(cache.put(1, row, version, null), 1));
+        } finally {
+            row.close();
+        }
+        assertNull(cache.get(1, null));
+
+        version = cache.getVersion();
+        row = readRow(cache.getColumns(), 1, "Green apple");
+        try {
+            cache.put(1, row, version, null);
+        } finally {
+            row.close();
+        }
+        assertEquals("Green apple", getString(cache.get(1, null), 1));
+    }
+
+    private long insertItem(String name) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, 100);
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 5);
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Orchard");
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "555");
+        return ContentUris.parseId(provider.insert(InventoryEntry.CONTENT_URI, values));
+    }
+
+    private static Uri itemUri(long id) {
+        return ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+    }
+
+    private void assertCached(long id) {
+        assertNotNull(provider.getItemCache().get(id, null));
+    }
+
+    private void assertNotCached(long id) {
+        assertNull(provider.getItemCache().get(id, null));
+    }
+
+    private String getName(long id) {
+        return getString(provider.query(itemUri(id), new String[]{InventoryEntry.COLUMN_PRODUCT_NAME}, null, null,
+                null), 0);
+    }
+
+    private String getPhoneNumber(long id) {
+        return getString(provider.query(itemUri(id), new String[]{InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER},
+                null, null, null), 0);
+    }
+
+    private int getQuantity(long id) {
+        return Integer.parseInt(getString(provider.query(itemUri(id),
+                new String[]{InventoryEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null), 0));
+    }
+
+    /**
+     * Return the given column of the first row of a cursor, and close it.
+     */
+    private static String getString(Cursor cursor, int column) {
+        try {
+            cursor.moveToFirst();
+            return cursor.getString(column);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return a cursor on a row of the given columns, like the query of a cache miss reads it.
+     */
+    private static Cursor readRow(String[] columns, long id, String name) {
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        cursor.addRow(new Object[]{id, name});
+        cursor.moveToFirst();
+        return cursor;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.android.inventory.data;
+
+import com.example.android.inventory.data.InventoryContract.ChangeEntry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A back office kept in memory, standing in for the real one in {@link InventorySyncTest}.
+ * It holds the items pushed by the device, and the changes made with {@link #putItem} and
+ * {@link #deleteItem} play the edits made in the back office, which the device pulls.
+ */
+final class LocalSyncServer implements SyncTransport {
+
+    /**
+     * The items of the device as the back office knows them, by _id
+     */
+    private final Map<Long, SyncChange> items = new LinkedHashMap<Long, SyncChange>();
+
+    /**
+     * The changes made in the back office, in version order
+     */
+    private final List<SyncChange> edits = new ArrayList<SyncChange>();
+    private long version;
+
+    @Override
+    public synchronized void push(List<SyncChange> changes) {
+        for (SyncChange change : changes) {
+            if (change.operation == ChangeEntry.OPERATION_DELETE) {
+                items.remove(change.itemId);
+            } else {
+                items.put(change.itemId, change);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        items.clear();
+    }
+
+    @Override
+    public synchronized List<SyncChange> pull(long sinceVersion, int limit) {
+        List<SyncChange> changes = new ArrayList<SyncChange>();
+        for (SyncChange edit : edits) {
+            if (edit.version > sinceVersion && changes.size() < limit) {
+                changes.add(edit);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Insert or update an item in the back office.
+     */
+    public synchronized void putItem(long itemId, String name, long priceCents, int quantity, String sku,
+                                     String supplierName, String supplierPhoneNumber) {
+        int operation = items.containsKey(itemId) ? ChangeEntry.OPERATION_UPDATE : ChangeEntry.OPERATION_INSERT;
+        SyncChange change = new SyncChange(++version, itemId, operation, name, priceCents, quantity, sku,
+                supplierName, supplierPhoneNumber);
+        items.put(itemId, change);
+        edits.add(change);
+    }
+
+    /**
+     * Delete an item in the back office.
+     */
+    public synchronized void deleteItem(long itemId) {
+        items.remove(itemId);
+        edits.add(SyncChange.delete(++version, itemId));
+    }
+
+    /**
+     * Return the items of the device as the back office knows them.
+     */
+    public synchronized List<SyncChange> getItems() {
+        return new ArrayList<SyncChange>(items.values());
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventory.BuildConfig;
+import com.example.android.inventory.benchmark.BenchmarkResult;
+import com.example.android.inventory.benchmark.BenchmarkRunner;
+import com.example.android.inventory.benchmark.BenchmarkSettings;
+import com.example.android.inventory.data.InventoryContract.InventoryEntry;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmarks of concurrent reads and writes of {@link InventoryProvider} under each
+ * {@link StorageProfile}: item reads while another thread sells, and sales while another thread
+ * pages through the catalog, at each of the table sizes given by the benchmark.rows system
+ * property. Every profile starts from a new database file, so its page size applies. Nothing runs
+ * unless the sizes are given, see the testOptions of the app.
+ * <p>
+ * Robolectric runs every SQLite call on a single thread of its own, so the reads WAL lets run
+ * beside a write on a device still queue behind it here. The timings compare what each profile
+ * costs a thread sharing the database with another, from one run to the next. The results are
+ * appended to the file named by the benchmark.output system property.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class StorageProfileBenchmark {
+
+    private static final StorageProfile[] PROFILES = {
+            StorageProfile.PLATFORM, StorageProfile.POS_TERMINAL, StorageProfile.BACK_OFFICE
+    };
+
+    /**
+     * Number of rows of each page the background reader reads
+     */
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * The columns read for each row, as the list of the catalog does
+     */
+    private static final String[] CATALOG_PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY
+    };
+
+    private final Random random = new Random(42);
+    private InventoryProvider provider;
+
+    /**
+     * Number of items in the catalog. Nothing is deleted, so their _ids run from 1 to this.
+     */
+    private long itemCount;
+
+    @Test
+    public void benchmark() throws Exception {
+        long[] sizes = BenchmarkSettings.getRowCounts();
+        Assume.assumeTrue(sizes.length > 0);
+        BenchmarkRunner runner = BenchmarkSettings.newRunner();
+
+        for (StorageProfile profile : PROFILES) {
+            RuntimeEnvironment.application.deleteDatabase(InventoryDbHelper.DATABASE_NAME);
+            provider = new InventoryProvider(profile);
+            ProviderInfo info = new ProviderInfo();
+            info.authority = InventoryContract.CONTENT_AUTHORITY;
+            provider.attachInfo(RuntimeEnvironment.application, info);
+            itemCount = 0;
+            try {
+                for (long size : sizes) {
+                    fill(size);
+                    benchmarkConcurrency(runner, profile.getName());
+                }
+            } finally {
+                provider.shutdown();
+            }
+        }
+        RuntimeEnvironment.application.deleteDatabase(InventoryDbHelper.DATABASE_NAME);
+    }
+
+    /**
+     * Add items until the catalog holds the given number of rows, through bulkInsert.
+     */
+    private void fill(long size) {
+        while (itemCount < size) {
+            int count = (int) Math.min(1000, size - itemCount);
+            ContentValues[] values = new ContentValues[count];
+            for (int i = 0; i < count; i++) {
+                long number = itemCount + i;
+                values[i] = new ContentValues();
+                values[i].put(InventoryEntry.COLUMN_PRODUCT_NAME, String.format(Locale.US, "Item %08d", number));
+                values[i].put(InventoryEntry.COLUMN_PRODUCT_PRICE_CENTS, 100 + number % 10000);
+                values[i].put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 1000000);
+                values[i].put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Supplier " + number % 100);
+                values[i].put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "555-" + number % 100);
+            }
+            provider.bulkInsert(InventoryEntry.CONTENT_URI, values);
+            itemCount += count;
+        }
+    }
+
+    private void benchmarkConcurrency(BenchmarkRunner runner, String profileName) throws Exception {
+        final ContentValues sale = new ContentValues();
+        sale.put(InventoryEntry.KEY_SELL_QUANTITY, 1);
+
+        BackgroundLoop seller = new BackgroundLoop("seller") {
+            @Override
+            void runOnce(Random random) {
+                provider.update(InventoryEntry.buildSellUri(randomItemId(random)), sale, null, null);
+            }
+        };
+        seller.start();
+        BenchmarkResult reads;
+        try {
+            reads = runner.run(profileName + " query by id while selling", itemCount, 1,
+                    new BenchmarkRunner.Operation() {
+                        @Override
+                        public void run(int invocation) {
+                            readAll(provider.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI,
+                                    randomItemId(random)), CATALOG_PROJECTION, null, null, null));
+                        }
+                    });
+        } finally {
+            seller.finish();
+        }
+
+        BackgroundLoop reader = new BackgroundLoop("reader") {
+            @Override
+            void runOnce(Random random) {
+                Uri page = InventoryEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(InventoryContract.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                        .appendQueryParameter(InventoryContract.QUERY_PARAMETER_AFTER_ID,
+                                String.valueOf(randomItemId(random) - 1))
+                        .build();
+                readAll(provider.query(page, CATALOG_PROJECTION, null, null, null));
+            }
+        };
+        reader.start();
+        BenchmarkResult sales;
+        try {
+            sales = runner.run(profileName + " sell while paging", itemCount, 1, new BenchmarkRunner.Operation() {
+                @Override
+                public void run(int invocation) {
+                    BenchmarkRunner.consume(provider.update(
+                            InventoryEntry.buildSellUri(randomItemId(random)), sale, null, null));
+                }
+            });
+        } finally {
+            reader.finish();
+        }
+
+        System.out.println(String.format(Locale.US,
+                "%,d rows, %s: query by id p50 %,d ns p99 %,d ns beside %,.0f sales/s,"
+                        + " sell p50 %,d ns p99 %,d ns beside %,.0f pages/s",
+                itemCount, profileName,
+                reads.getPercentileNanos(0.5), reads.getPercentileNanos(0.99), seller.getRate(),
+                sales.getPercentileNanos(0.5), sales.getPercentileNanos(0.99), reader.getRate()));
+    }
+
+    /**
+     * Return the _id of a random item of the catalog.
+     */
+    private long randomItemId(Random random) {
+        return 1 + (long) (random.nextDouble() * itemCount);
+    }
+
+    /**
+     * Read every column of every row, as the app would, then close the cursor.
+     */
+    private static void readAll(Cursor cursor) {
+        try {
+            long sum = 0;
+            while (cursor.moveToNext()) {
+                sum += cursor.getLong(0) + cursor.getString(1).length() + cursor.getLong(2) + cursor.getInt(3);
+            }
+            BenchmarkRunner.consume(sum);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Runs an operation over and over on a thread of its own, while a benchmark runs on the
+     * test thread, and counts how many times it ran.
+     */
+    private abstract static class BackgroundLoop extends Thread {
+        private final Random random = new Random(7);
+        private volatile boolean finished;
+        private volatile Throwable failure;
+        private long count;
+        private long nanos;
+
+        BackgroundLoop(String name) {
+            super(name);
+        }
+
+        abstract void runOnce(Random random) throws Exception;
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                while (!finished) {
+                    runOnce(random);
+                    count++;
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+            nanos = System.nanoTime() - start;
+        }
+
+        /**
+         * Stop the loop and wait for it, then rethrow what made it fail, if anything.
+         */
+        void finish() throws Exception {
+            finished = true;
+            join();
+            if (failure != null) {
+                AssertionError error = new AssertionError(getName() + " failed");
+                error.initCause(failure);
+                throw error;
+            }
+        }
+
+        /**
+         * Return how many times the operation ran per second, once {@link #finish} returned.
+         */
+        double getRate() {
+            return nanos == 0 ? 0 : count * 1e9 / nanos;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.android.inventory.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * {@link BenchmarkResult} holds the timings of one benchmark at one table size, see
+ * {@link BenchmarkRunner#run}.
+ */
+public final class BenchmarkResult {
+
+    private final String name;
+    private final long rows;
+    private final int operationsPerInvocation;
+    private final long[] sortedNanos;
+    private final long totalNanos;
+
+    /**
+     * Constructs a new {@link BenchmarkResult}.
+     *
+     * @param name                    The name of the benchmark
+     * @param rows                    Number of rows in the inventory while it ran
+     * @param operationsPerInvocation Number of operations, such as rows written, in each invocation
+     * @param nanos                   The time of each measured invocation, in nanoseconds
+     * @param count                   Number of measured invocations in nanos
+     */
+    BenchmarkResult(String name, long rows, int operationsPerInvocation, long[] nanos, int count) {
+        this.name = name;
+        this.rows = rows;
+        this.operationsPerInvocation = operationsPerInvocation;
+        sortedNanos = Arrays.copyOf(nanos, count);
+        Arrays.sort(sortedNanos);
+        long total = 0;
+        for (long time : sortedNanos) {
+            total += time;
+        }
+        totalNanos = total;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public int getInvocations() {
+        return sortedNanos.length;
+    }
+
+    /**
+     * Return the average time of one operation, in nanoseconds.
+     */
+    public double getNanosPerOperation() {
+        return (double) totalNanos / sortedNanos.length / operationsPerInvocation;
+    }
+
+    /**
+     * Return the time under which the given fraction of the invocations ran, in nanoseconds.
+     */
+    public long getPercentileNanos(double fraction) {
+        int index = (int) Math.ceil(fraction * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))];
+    }
+
+    /**
+     * Return the result as a single line JSON object. The times are in nanoseconds per
+     * invocation, except nanosPerOperation.
+     */
+    public String toJson() {
+        return String.format(Locale.US, "{\"benchmark\":\"%s\",\"rows\":%d,\"invocations\":%d,"
+                        + "\"operationsPerInvocation\":%d,\"nanosPerOperation\":%.1f,\"operationsPerSecond\":%.1f,"
+                        + "\"minNanos\":%d,\"p50Nanos\":%d,\"p90Nanos\":%d,\"p99Nanos\":%d,\"maxNanos\":%d}",
+                escape(name), rows, sortedNanos.length, operationsPerInvocation, getNanosPerOperation(),
+                1e9 / getNanosPerOperation(), sortedNanos[0], getPercentileNanos(0.5), getPercentileNanos(0.9),
+                getPercentileNanos(0.99), sortedNanos[sortedNanos.length - 1]);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%-28s %,10d rows %,14.1f ns/op  p50 %,12d ns  p99 %,12d ns  (%d invocations)",
+                name, rows, getNanosPerOperation(), getPercentileNanos(0.5), getPercentileNanos(0.99),
+                sortedNanos.length);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.android.inventory.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * {@link BenchmarkRunner} is a small benchmark harness in the spirit of JMH, for code that has
+ * to run inside another test runner, such as the data layer of the app under Robolectric, where
+ * JMH can't fork a JVM of its own.
+ * <p>
+ * Each benchmark is invoked for a warmup time, so the JIT compiles it, then for a measurement
+ * time. Every measured invocation is timed on its own, so the results hold the percentiles and
+ * not only the average. The results are appended to a file as one JSON object per line, which
+ * scripts can compare from one run to the next to track regressions.
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * One invocation of a benchmark.
+     */
+    public interface Operation {
+        /**
+         * Run the code measured once.
+         *
+         * @param invocation Number of the invocation, counting from 0 for the warmup then again
+         *                   for the measurement, for instance to pick a different row each time
+         */
+        void run(int invocation) throws Exception;
+    }
+
+    /**
+     * Prepares one invocation of a benchmark without being measured, like a JMH setup method at
+     * the invocation level, for instance to insert the row the invocation deletes.
+     */
+    public interface Setup {
+        /**
+         * Prepare the invocation with the given number, see {@link Operation#run}.
+         */
+        void run(int invocation) throws Exception;
+    }
+
+    /**
+     * Fewest measured invocations, even when a single one takes longer than the measurement time
+     */
+    private static final int MIN_INVOCATIONS = 5;
+
+    /**
+     * Most measured invocations, which bounds the memory holding the times
+     */
+    private static final int MAX_INVOCATIONS = 100000;
+
+    /**
+     * Written by {@link #consume} so the JIT can't drop the results of an operation as unused
+     */
+    private static volatile long sink;
+
+    private final File resultFile;
+    private final long warmupNanos;
+    private final long measurementNanos;
+    private final long[] nanos = new long[MAX_INVOCATIONS];
+
+    /**
+     * Constructs a new {@link BenchmarkRunner}.
+     *
+     * @param resultFile        The file the results are appended to, created with its directory
+     *                          if needed
+     * @param warmupMillis      How long each benchmark runs before it is measured
+     * @param measurementMillis How long each benchmark is measured, at least
+     */
+    public BenchmarkRunner(File resultFile, long warmupMillis, long measurementMillis) {
+        this.resultFile = resultFile;
+        warmupNanos = warmupMillis * 1000000L;
+        measurementNanos = measurementMillis * 1000000L;
+    }
+
+    /**
+     * Keep a value computed by an operation, so the code computing it isn't optimized away.
+     */
+    public static void consume(long value) {
+        sink += value;
+    }
+
+    /**
+     * Warm up then measure the operation, print the result and append it to the result file.
+     *
+     * @param name                    The name of the benchmark, the same from one run to the next
+     * @param rows                    Number of rows in the inventory, reported with the result
+     * @param operationsPerInvocation Number of operations, such as rows written, in each
+     *                                invocation, so batches are reported per row
+     * @param operation               The code to measure
+     */
+    public BenchmarkResult run(String name, long rows, int operationsPerInvocation, Operation operation)
+            throws Exception {
+        return run(name, rows, operationsPerInvocation, null, operation);
+    }
+
+    /**
+     * Like {@link #run(String, long, int, Operation)}, running the setup before every invocation.
+     * Only the operation is measured, and the measurement time only counts the operations.
+     */
+    public BenchmarkResult run(String name, long rows, int operationsPerInvocation, Setup setup,
+                               Operation operation) throws Exception {
+        long warmupEnd = System.nanoTime() + warmupNanos;
+        int invocation = 0;
+        do {
+            if (setup != null) {
+                setup.run(invocation);
+            }
+            operation.run(invocation++);
+        } while (System.nanoTime() < warmupEnd);
+
+        int count = 0;
+        long elapsed = 0;
+        while (count < MAX_INVOCATIONS && (count < MIN_INVOCATIONS || elapsed < measurementNanos)) {
+            if (setup != null) {
+                setup.run(count);
+            }
+            long start = System.nanoTime();
+            operation.run(count);
+            long time = System.nanoTime() - start;
+            nanos[count++] = time;
+            elapsed += time;
+        }
+
+        BenchmarkResult result = new BenchmarkResult(name, rows, operationsPerInvocation, nanos, count);
+        System.out.println(result);
+        append(result);
+        return result;
+    }
+
+    private void append(BenchmarkResult result) throws IOException {
+        File directory = resultFile.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(resultFile, true), Charset.forName("UTF-8"));
+        try {
+            writer.write(result.toJson());
+            writer.write('\n');
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.android.inventory.benchmark;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * {@link BenchmarkSettings} reads the settings of a benchmark run from the system properties,
+ * which the build passes on from the Gradle properties of the same name:
+ * <ul>
+ * <li>benchmark.rows: the table sizes to run at, separated by commas, for instance
+ * 1000,100000,1000000. Empty by default, which skips the benchmarks.</li>
+ * <li>benchmark.output: the file the results are appended to.</li>
+ * <li>benchmark.warmupMillis and benchmark.measurementMillis: how long each benchmark is warmed
+ * up and measured.</li>
+ * </ul>
+ */
+public final class BenchmarkSettings {
+
+    private static final String PROPERTY_ROWS = "benchmark.rows";
+    private static final String PROPERTY_OUTPUT = "benchmark.output";
+    private static final String PROPERTY_WARMUP_MILLIS = "benchmark.warmupMillis";
+    private static final String PROPERTY_MEASUREMENT_MILLIS = "benchmark.measurementMillis";
+
+    private static final String DEFAULT_OUTPUT = "build/outputs/benchmark/results.jsonl";
+    private static final long DEFAULT_WARMUP_MILLIS = 1000;
+    private static final long DEFAULT_MEASUREMENT_MILLIS = 2000;
+
+    // Not meant to be instantiated
+    private BenchmarkSettings() {
+    }
+
+    /**
+     * Return the table sizes to run the benchmarks at, smallest first, or an empty array if the
+     * benchmarks are not to run.
+     */
+    public static long[] getRowCounts() {
+        String rows = System.getProperty(PROPERTY_ROWS, "").trim();
+        if (rows.isEmpty()) {
+            return new long[0];
+        }
+        String[] values = rows.split(",");
+        long[] rowCounts = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            rowCounts[i] = Long.parseLong(values[i].trim());
+        }
+        Arrays.sort(rowCounts);
+        return rowCounts;
+    }
+
+    /**
+     * Return a runner writing to the output file, with the warmup and measurement times set.
+     */
+    public static BenchmarkRunner newRunner() {
+        return new BenchmarkRunner(new File(System.getProperty(PROPERTY_OUTPUT, DEFAULT_OUTPUT)),
+                Long.getLong(PROPERTY_WARMUP_MILLIS, DEFAULT_WARMUP_MILLIS),
+                Long.getLong(PROPERTY_MEASUREMENT_MILLIS, DEFAULT_MEASUREMENT_MILLIS));
+    }
+}